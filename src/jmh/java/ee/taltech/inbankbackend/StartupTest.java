@@ -0,0 +1,190 @@
+package ee.taltech.inbankbackend;
+
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup test measuring how soon a new instance answers its first /loan/decision request, which is how long an
+ * instance added during a traffic spike takes before it shares the load. Each mode launches the application in a
+ * new process, sends a decision request every few milliseconds from the moment the process is launched and stops
+ * the process after the first successful answer:<br>
+ * - eager: the application jar with every bean created at startup,<br>
+ * - lazy: the application jar as configured, with lazy bean initialization,<br>
+ * - aot: the application jar running the bean definitions generated by Spring AOT processing,<br>
+ * - cds: the application and dependency jars with the AppCDS archive of ./gradlew cdsArchive,<br>
+ * - native: the GraalVM native executable of ./gradlew nativeCompile, if it has been built.<br>
+ * The median and fastest time to the first decision are printed per mode; the output of every process is written
+ * to a log file named after the mode.<br><br>
+ * With the argument train, the application is started once with -XX:ArchiveClassesAtExit instead, so that the
+ * classes loaded up to the first decision are archived when it stops. ./gradlew cdsArchive runs this.<br><br>
+ * Run with ./gradlew startupTest. The number of starts per mode can be changed with the system property
+ * loadtest.startup.runs (5). The jars, archive, executable and working directory are passed in by the tasks as
+ * loadtest.startup.jar, loadtest.startup.classpath, loadtest.startup.archive, loadtest.startup.native and
+ * loadtest.startup.directory.
+ */
+public class StartupTest {
+
+    private static final String MAIN_CLASS = InbankBackendApplication.class.getName();
+    private static final String REQUEST_BODY = "{\"personalCode\":\"50307172740\",\"loanAmount\":4000,"
+            + "\"loanPeriod\":12,\"country\":\"ESTONIA\"}";
+    private static final String TRAIN = "train";
+    private static final long POLL_MILLIS = 5;
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private static final int RUNS = Integer.getInteger("loadtest.startup.runs", 5);
+    private static final String JAR = System.getProperty("loadtest.startup.jar");
+    private static final String CLASSPATH = System.getProperty("loadtest.startup.classpath");
+    private static final Path ARCHIVE = Path.of(System.getProperty("loadtest.startup.archive",
+            "build/cds/inbank-backend.jsa"));
+    private static final Path NATIVE = Path.of(System.getProperty("loadtest.startup.native",
+            "build/native/nativeCompile/inbank-backend"));
+    private static final Path DIRECTORY = Path.of(System.getProperty("loadtest.startup.directory",
+            "build/startup"));
+
+    private static final String JAVA = ProcessHandle.current().info().command().orElse("java");
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    public static void main(String[] args) throws Exception {
+        Files.createDirectories(DIRECTORY);
+        if (args.length > 0 && args[0].equals(TRAIN)) {
+            train();
+            return;
+        }
+
+        Map<String, List<String>> modes = new LinkedHashMap<>();
+        if (JAR != null) {
+            modes.put("eager", List.of(JAVA, "-jar", JAR, "--spring.main.lazy-initialization=false"));
+            modes.put("lazy", List.of(JAVA, "-jar", JAR));
+            modes.put("aot", List.of(JAVA, "-Dspring.aot.enabled=true", "-jar", JAR));
+        }
+        if (CLASSPATH != null && Files.exists(ARCHIVE)) {
+            modes.put("cds", List.of(JAVA, "-XX:SharedArchiveFile=" + ARCHIVE, "-cp", CLASSPATH, MAIN_CLASS));
+        } else {
+            System.out.println("Skipping cds, run ./gradlew cdsArchive to create " + ARCHIVE);
+        }
+        if (Files.isExecutable(NATIVE)) {
+            modes.put("native", List.of(NATIVE.toString()));
+        } else {
+            System.out.println("Skipping native, run ./gradlew nativeCompile on GraalVM to build " + NATIVE);
+        }
+
+        System.out.printf("%d starts per mode%n", RUNS);
+        List<String> results = new ArrayList<>();
+        for (Map.Entry<String, List<String>> mode : modes.entrySet()) {
+            long[] nanos = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                nanos[run] = timeToFirstDecision(mode.getKey(), mode.getValue());
+            }
+            Arrays.sort(nanos);
+            results.add(String.format("%-8s %12.0f %12.0f", mode.getKey(),
+                    (double) nanos[RUNS / 2] / NANOS_PER_MILLI, (double) nanos[0] / NANOS_PER_MILLI));
+        }
+        System.out.printf("%-8s %12s %12s%n", "mode", "median ms", "fastest ms");
+        results.forEach(System.out::println);
+    }
+
+    /**
+     * Starts the application once and archives the classes it loaded up to the first decision when it stops.
+     */
+    private static void train() throws Exception {
+        if (CLASSPATH == null) {
+            throw new IllegalStateException("loadtest.startup.classpath is not set");
+        }
+        Files.createDirectories(ARCHIVE.toAbsolutePath().getParent());
+        Files.deleteIfExists(ARCHIVE);
+        long nanos = timeToFirstDecision(TRAIN, List.of(JAVA, "-XX:ArchiveClassesAtExit=" + ARCHIVE, "-cp",
+                CLASSPATH, MAIN_CLASS));
+        if (!Files.exists(ARCHIVE)) {
+            throw new IllegalStateException("No archive was written, see " + DIRECTORY.resolve(TRAIN + ".log"));
+        }
+        System.out.printf("Archived the classes loaded in the first %.0f ms into %s%n",
+                (double) nanos / NANOS_PER_MILLI, ARCHIVE);
+    }
+
+    /**
+     * Launches the command and waits for the first successful decision, then stops the process.
+     *
+     * @return Nanoseconds from launching the process to the first successful decision
+     */
+    private static long timeToFirstDecision(String mode, List<String> command) throws Exception {
+        int port = freePort();
+        Path audit = DIRECTORY.resolve("audit");
+        Path store = DIRECTORY.resolve("store");
+        FileSystemUtils.deleteRecursively(audit);
+        FileSystemUtils.deleteRecursively(store);
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+        arguments.add("--decision-engine.audit.directory=" + audit.toAbsolutePath());
+        arguments.add("--spring.datasource.url=jdbc:h2:file:" + store.resolve("decisions").toAbsolutePath());
+        arguments.add("--decision-engine.store.spill-directory=" + store.resolve("spill").toAbsolutePath());
+        Path log = DIRECTORY.resolve(mode + ".log");
+        ProcessBuilder builder = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile());
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/loan/decision"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(REQUEST_BODY))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            while (!decided(request)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode + " exited with " + process.exitValue() + ", see " + log);
+                }
+                if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+                    throw new IllegalStateException(mode + " did not decide within " + TIMEOUT + ", see " + log);
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            stop(process);
+        }
+    }
+
+    private static boolean decided(HttpRequest request) throws InterruptedException {
+        try {
+            return HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // Not listening yet.
+            return false;
+        }
+    }
+
+    /**
+     * Stops the process gracefully, so that a JVM writes its class archive on exit.
+     */
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
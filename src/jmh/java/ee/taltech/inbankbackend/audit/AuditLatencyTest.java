@@ -0,0 +1,269 @@
+package ee.taltech.inbankbackend.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.zaxxer.hikari.HikariDataSource;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Latency test comparing ways of recording each decision for audit:<br>
+ * - none: the decision only,<br>
+ * - journal: the decision appended to AuditJournal,<br>
+ * - sync-log: the decision written as a JSON line to a file and forced to disk before returning, as a
+ *   synchronous audit log would,<br>
+ * - store: the decision saved in DecisionStore, on an embedded H2 database,<br>
+ * - sync-insert: the decision inserted into the same table and committed before returning, as a synchronous
+ *   decision store would.<br>
+ * Several threads make decisions back to back; the throughput and latency percentiles of a decision including
+ * its audit record are printed per mode.<br><br>
+ * Run with ./gradlew auditLatencyTest. The defaults can be changed with system properties:<br>
+ * - loadtest.audit.threads: concurrent threads (8),<br>
+ * - loadtest.audit.requests: measured decisions in total (200000).
+ */
+public class AuditLatencyTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+    private static final long LOAN_AMOUNT = 4000L;
+    private static final int LOAN_PERIOD = 12;
+    private static final String[] MODES = {"none", "journal", "sync-log", "store", "sync-insert"};
+    private static final int WARMUP_REQUESTS = 20_000;
+    private static final long NANOS_PER_MICRO = 1_000L;
+
+    private static final int THREADS = Integer.getInteger("loadtest.audit.threads", 8);
+    private static final int REQUESTS = Integer.getInteger("loadtest.audit.requests", 200_000);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%d threads, %d decisions%n", THREADS, REQUESTS);
+        DecisionEngine decisionEngine = DecisionEngine.withDefaults();
+        List<String> results = new ArrayList<>();
+        for (String mode : MODES) {
+            Path directory = Files.createTempDirectory("audit-latency-");
+            try (Recorder recorder = recorder(mode, directory)) {
+                measure(decisionEngine, recorder, WARMUP_REQUESTS);
+                results.add(measure(decisionEngine, recorder, REQUESTS).format(mode));
+            }
+        }
+        System.out.printf("%-10s %12s %10s %10s %10s%n", "audit", "decisions/s", "p50 us", "p99 us", "max us");
+        results.forEach(System.out::println);
+    }
+
+    private static Recorder recorder(String mode, Path directory) throws IOException {
+        return switch (mode) {
+            case "none" -> new Recorder() {
+                @Override
+                public void record(Decision decision) {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            case "journal" -> new JournalRecorder(directory);
+            case "sync-log" -> new SyncLogRecorder(directory);
+            case "store" -> new StoreRecorder(directory);
+            default -> new SyncInsertRecorder(directory);
+        };
+    }
+
+    /**
+     * Makes the given number of decisions, spread evenly over the threads.
+     */
+    private static Result measure(DecisionEngine decisionEngine, Recorder recorder, int requests)
+            throws Exception {
+        long[] latencies = new long[requests];
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int first = thread;
+                running.add(executor.submit(() -> {
+                    for (int i = first; i < requests; i += THREADS) {
+                        long started = System.nanoTime();
+                        recorder.record(decisionEngine.calculateApprovedLoan(PERSONAL_CODE, LOAN_AMOUNT,
+                                LOAN_PERIOD, Countries.ESTONIA));
+                        latencies[i] = System.nanoTime() - started;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> thread : running) {
+                thread.get();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(requests * 1e9 / elapsed, percentile(latencies, 0.5), percentile(latencies, 0.99),
+                latencies[latencies.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+
+    private record Result(double throughput, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        String format(String mode) {
+            return String.format("%-10s %12.0f %10.1f %10.1f %10.1f", mode, throughput,
+                    (double) p50Nanos / NANOS_PER_MICRO, (double) p99Nanos / NANOS_PER_MICRO,
+                    (double) maxNanos / NANOS_PER_MICRO);
+        }
+    }
+
+    private interface Recorder extends AutoCloseable {
+
+        void record(Decision decision);
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class JournalRecorder implements Recorder {
+
+        private final AuditJournal journal;
+
+        private JournalRecorder(Path directory) throws IOException {
+            this.journal = new AuditJournal(true, directory, DataSize.ofMegabytes(64), Duration.ofMillis(10), 65536);
+        }
+
+        @Override
+        public void record(Decision decision) {
+            journal.append(PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA, decision);
+        }
+
+        @Override
+        public void close() {
+            try {
+                journal.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class SyncLogRecorder implements Recorder {
+
+        private final FileChannel channel;
+        private final ObjectWriter writer = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writerFor(AuditEntry.class);
+
+        private SyncLogRecorder(Path directory) throws IOException {
+            this.channel = FileChannel.open(directory.resolve("audit.ndjson"), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        @Override
+        public void record(Decision decision) {
+            AuditEntry entry = new AuditEntry(Instant.now(), PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD,
+                    Countries.ESTONIA, decision.getOutcome(), decision.getLoanAmount(), decision.getLoanPeriod(),
+                    DecisionEngineConstants.RULE_VERSION);
+            try {
+                byte[] line = (writer.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+                synchronized (channel) {
+                    channel.write(ByteBuffer.wrap(line));
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static HikariDataSource dataSource(Path directory) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:file:" + directory.resolve("decisions").toAbsolutePath());
+        dataSource.setMaximumPoolSize(THREADS);
+        new JdbcTemplate(dataSource).execute(DecisionStore.CREATE_TABLE);
+        return dataSource;
+    }
+
+    private static final class StoreRecorder implements Recorder {
+
+        private final HikariDataSource dataSource;
+        private final DecisionStore store;
+
+        private StoreRecorder(Path directory) throws IOException {
+            this.dataSource = dataSource(directory);
+            this.store = new DecisionStore(new DecisionMetrics(), new JdbcTemplate(dataSource),
+                    true, 500, Duration.ofMillis(50), 65536, "block", directory.resolve("spill"),
+                    Duration.ofSeconds(5));
+        }
+
+        @Override
+        public void record(Decision decision) {
+            store.save(PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA, decision);
+        }
+
+        @Override
+        public void close() {
+            try {
+                store.close();
+                dataSource.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class SyncInsertRecorder implements Recorder {
+
+        private final HikariDataSource dataSource;
+
+        private SyncInsertRecorder(Path directory) {
+            this.dataSource = dataSource(directory);
+        }
+
+        @Override
+        public void record(Decision decision) {
+            AuditEntry entry = new AuditEntry(Instant.now(), PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD,
+                    Countries.ESTONIA, decision.getOutcome(), decision.getLoanAmount(), decision.getLoanPeriod(),
+                    DecisionEngineConstants.RULE_VERSION);
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(DecisionStore.INSERT)) {
+                DecisionStore.bind(statement, entry);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.service.Countries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the binary round trip of the request and response bodies of the decision endpoint, with the same
+ * bodies as DecisionJsonBenchmark so that the results can be compared.
+ */
+@State(Scope.Benchmark)
+public class DecisionBinaryBenchmark {
+
+    private static final int LOAN_AMOUNT_4000 = 4000;
+    private static final int LOAN_PERIOD_12 = 12;
+
+    private DecisionRequest request;
+    private DecisionResponse response;
+
+    @Setup
+    public void setUp() {
+        request = new DecisionRequest("50307172740", (long) LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        response = new DecisionResponse();
+        response.setLoanAmount(LOAN_AMOUNT_4000);
+        response.setLoanPeriod(LOAN_PERIOD_12);
+    }
+
+    @Benchmark
+    public DecisionRequest requestRoundTrip() {
+        byte[] body = DecisionBinaryFormat.encode(request);
+        return DecisionBinaryFormat.decodeRequest(body, body.length);
+    }
+
+    @Benchmark
+    public DecisionResponse responseRoundTrip() {
+        byte[] body = DecisionBinaryFormat.encode(response);
+        return DecisionBinaryFormat.decodeResponse(body, body.length);
+    }
+}
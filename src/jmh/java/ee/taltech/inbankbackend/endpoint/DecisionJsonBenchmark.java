@@ -0,0 +1,48 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import ee.taltech.inbankbackend.service.Countries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+
+/**
+ * Measures the JSON round trip of the request and response bodies of the decision endpoint.
+ */
+@State(Scope.Benchmark)
+public class DecisionJsonBenchmark {
+
+    private static final int LOAN_AMOUNT_4000 = 4000;
+    private static final int LOAN_PERIOD_12 = 12;
+
+    // Configured like the mapper Spring Boot creates, which needs parameter names to construct DecisionRequest.
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .modulesToInstall(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+            .build();
+    private DecisionRequest request;
+    private DecisionResponse response;
+
+    @Setup
+    public void setUp() {
+        request = new DecisionRequest("50307172740", (long) LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        response = new DecisionResponse();
+        response.setLoanAmount(LOAN_AMOUNT_4000);
+        response.setLoanPeriod(LOAN_PERIOD_12);
+    }
+
+    @Benchmark
+    public DecisionRequest requestRoundTrip() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(request), DecisionRequest.class);
+    }
+
+    @Benchmark
+    public DecisionResponse responseRoundTrip() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(response), DecisionResponse.class);
+    }
+}
@@ -0,0 +1,171 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.InbankBackendApplication;
+import ee.taltech.inbankbackend.config.RequestExecutionConfig;
+import jakarta.servlet.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test comparing platform and virtual request threads on /loan/decision.
+ * Every request first blocks for a fixed time, standing in for a call to an external service such as a credit
+ * registry, so the platform thread pool runs out long before the CPU does.
+ * For each mode the application is started on a random port, warmed up and then hit by many concurrent clients;
+ * the throughput and latency percentiles are printed per mode.<br><br>
+ * Run with ./gradlew loadTest. The defaults can be changed with system properties:<br>
+ * - loadtest.clients: concurrent clients (1000),<br>
+ * - loadtest.requests: measured requests in total (50000),<br>
+ * - loadtest.blocking-millis: time each request blocks (50),<br>
+ * - loadtest.max-threads: Tomcat's platform thread pool size (200).
+ */
+public class RequestThreadLoadTest {
+
+    private static final String REQUEST_BODY = "{\"personalCode\":\"50307172740\",\"loanAmount\":4000,"
+            + "\"loanPeriod\":12,\"country\":\"ESTONIA\"}";
+    private static final String[] MODES = {"platform", "virtual"};
+    private static final int WARMUP_REQUESTS = 5_000;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 1000);
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 50_000);
+    private static final long BLOCKING_MILLIS = Long.getLong("loadtest.blocking-millis", 50);
+    private static final int MAX_THREADS = Integer.getInteger("loadtest.max-threads", 200);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%d clients, %d requests, %d ms blocking dependency, %d platform request threads%n",
+                CLIENTS, REQUESTS, BLOCKING_MILLIS, MAX_THREADS);
+        List<String> results = new ArrayList<>();
+        for (String mode : MODES) {
+            results.add(run(mode));
+        }
+        System.out.printf("%-10s %12s %10s %10s %10s %10s%n", "threads", "requests/s", "p50 ms", "p99 ms",
+                "max ms", "errors");
+        results.forEach(System.out::println);
+    }
+
+    private static String run(String mode) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(InbankBackendApplication.class,
+                BlockingDependency.class)
+                .web(WebApplicationType.SERVLET)
+                // Passed as arguments, so that they take precedence over application.properties.
+                .run("--server.port=0",
+                        "--" + RequestExecutionConfig.REQUEST_THREADS_PROPERTY + "=" + mode,
+                        "--server.tomcat.threads.max=" + MAX_THREADS,
+                        // Every client is far beyond the rate and concurrency limits on purpose.
+                        "--" + RequestAdmission.ENABLED_PROPERTY + "=false",
+                        "--server.tomcat.accept-count=" + CLIENTS,
+                        "--loadtest.blocking-millis=" + BLOCKING_MILLIS,
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=warn")) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + "/loan/decision");
+
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .executor(clients)
+                        .connectTimeout(Duration.ofSeconds(30))
+                        .build();
+                measure(httpClient, clients, uri, WARMUP_REQUESTS);
+                return measure(httpClient, clients, uri, REQUESTS).format(mode);
+            }
+        }
+    }
+
+    /**
+     * Sends the given number of requests, spread evenly over the concurrent clients.
+     */
+    private static Result measure(HttpClient httpClient, ExecutorService clients, URI uri, int requests)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(REQUEST_BODY))
+                .build();
+        long[] latencies = new long[requests];
+        AtomicLong errors = new AtomicLong();
+
+        long start = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int client = 0; client < CLIENTS; client++) {
+            int first = client;
+            running.add(clients.submit(() -> {
+                for (int i = first; i < requests; i += CLIENTS) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = httpClient.send(request,
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - sent;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> client : running) {
+            client.get();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result(requests * 1e9 / elapsed, percentile(latencies, 0.5), percentile(latencies, 0.99),
+                latencies[latencies.length - 1], errors.get());
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+
+    private record Result(double throughput, long p50Nanos, long p99Nanos, long maxNanos, long errors) {
+
+        String format(String mode) {
+            return String.format("%-10s %12.0f %10.1f %10.1f %10.1f %10d", mode, throughput,
+                    (double) p50Nanos / NANOS_PER_MILLI, (double) p99Nanos / NANOS_PER_MILLI,
+                    (double) maxNanos / NANOS_PER_MILLI, errors);
+        }
+    }
+
+    /**
+     * Makes every decision request block on the request thread before it reaches the controller.
+     */
+    @Configuration
+    static class BlockingDependency {
+
+        @Bean
+        FilterRegistrationBean<Filter> blockingDependencyFilter(
+                @Value("${loadtest.blocking-millis}") long millis) {
+            FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>((request, response, chain) -> {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                chain.doFilter(request, response);
+            });
+            registration.addUrlPatterns("/loan/decision");
+            return registration;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ee.taltech.inbankbackend.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures DecisionEngine.calculateApprovedLoan for each kind of outcome, and the cost DecisionCoalescer adds
+ * to a request that has no identical request in flight.
+ */
+@State(Scope.Benchmark)
+public class DecisionEngineBenchmark {
+
+    private static final String SEGMENT_3_PERSONAL_CODE = "35006069515";
+    private static final String SEGMENT_1_PERSONAL_CODE = "50307172740";
+    private static final String DEBTOR_PERSONAL_CODE = "37605030299";
+    private static final String INVALID_PERSONAL_CODE = "12345678901";
+    private static final long LOAN_AMOUNT_4000 = 4000L;
+    private static final int LOAN_PERIOD_12 = 12;
+
+    private DecisionEngine decisionEngine;
+    private DecisionCoalescer decisionCoalescer;
+
+    @Setup
+    public void setUp() {
+        decisionEngine = DecisionEngine.withDefaults();
+        decisionCoalescer = new DecisionCoalescer(decisionEngine);
+    }
+
+    /**
+     * Requested amount is approved and raised to the maximum for the period.
+     */
+    @Benchmark
+    public Decision approved() {
+        return decisionEngine.calculateApprovedLoan(SEGMENT_3_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Requested amount is rejected and no lower amount fits, so a longer period is searched.
+     */
+    @Benchmark
+    public Decision rejectedThenExtended() {
+        return decisionEngine.calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Applicant has debt and is refused before any search.
+     */
+    @Benchmark
+    public Decision debt() {
+        return decisionEngine.calculateApprovedLoan(DEBTOR_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Personal code fails validation.
+     */
+    @Benchmark
+    public Decision invalidInput() {
+        return decisionEngine.calculateApprovedLoan(INVALID_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Same request as approved, passed through the single-flight layer.
+     */
+    @Benchmark
+    public Decision approvedCoalesced() {
+        return decisionCoalescer.calculateApprovedLoan(SEGMENT_3_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+}
@@ -0,0 +1,95 @@
+package ee.taltech.inbankbackend.service;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * Measures what tracing adds to DecisionEngine.calculateApprovedLoan, for a decision that searches and for one
+ * refused on its input, the cheapest there is:<br>
+ * - none: no OpenTelemetry at all,<br>
+ * - off: the OpenTelemetry SDK with the sampling probability at 0,<br>
+ * - unsampled: sampling on, within a request span that was not sampled, as most requests are,<br>
+ * - on: every decision sampled, with the spans dropped by the exporter.
+ */
+@State(Scope.Thread)
+public class DecisionTracingBenchmark {
+
+    private static final String SEGMENT_1_PERSONAL_CODE = "50307172740";
+    private static final String INVALID_PERSONAL_CODE = "12345678901";
+    private static final long LOAN_AMOUNT_4000 = 4000L;
+    private static final int LOAN_PERIOD_12 = 12;
+    private static final double SAMPLING_PROBABILITY = 0.1;
+
+    @Param({"none", "off", "unsampled", "on"})
+    private String tracing;
+
+    private OpenTelemetrySdk openTelemetry;
+    private io.opentelemetry.context.Scope requestScope;
+    private DecisionEngine decisionEngine;
+
+    @Setup
+    public void setUp() {
+        double samplingProbability = switch (tracing) {
+            case "none", "off" -> 0;
+            case "unsampled" -> SAMPLING_PROBABILITY;
+            default -> 1;
+        };
+        openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(samplingProbability)))
+                        .addSpanProcessor(SimpleSpanProcessor.create(SpanExporter.composite(List.of())))
+                        .build())
+                .build();
+        if (tracing.equals("unsampled")) {
+            // State of scope Thread is set up on the thread that runs the benchmark, so the span stays current.
+            requestScope = Span.wrap(SpanContext.create("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331",
+                    TraceFlags.getDefault(), TraceState.getDefault())).makeCurrent();
+        }
+        decisionEngine = DecisionEngine.builder()
+                .decisionTracing(new DecisionTracing(tracing.equals("none") ? OpenTelemetry.noop() : openTelemetry,
+                        samplingProbability))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (requestScope != null) {
+            requestScope.close();
+        }
+        openTelemetry.getSdkTracerProvider().close();
+    }
+
+    /**
+     * Requested amount is rejected and no lower amount fits, so a longer period is searched.
+     */
+    @Benchmark
+    public Decision rejectedThenExtended() {
+        return decisionEngine.calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Personal code fails validation.
+     */
+    @Benchmark
+    public Decision invalidInput() {
+        return decisionEngine.calculateApprovedLoan(INVALID_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+}
@@ -0,0 +1,46 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the offers of every loan period computed in one DecisionEngine.calculateOffers call with the same
+ * offers asked for as one decision per period, 37 under the built-in rules.
+ */
+@State(Scope.Benchmark)
+public class LoanOffersBenchmark {
+
+    private static final String SEGMENT_2_PERSONAL_CODE = "38411266610";
+    private static final long MINIMUM_LOAN_AMOUNT = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
+
+    private DecisionEngine decisionEngine;
+
+    @Setup
+    public void setUp() {
+        decisionEngine = DecisionEngine.withDefaults();
+    }
+
+    /**
+     * All offers from one call.
+     */
+    @Benchmark
+    public LoanOffers offers() {
+        return decisionEngine.calculateOffers(SEGMENT_2_PERSONAL_CODE, Countries.ESTONIA);
+    }
+
+    /**
+     * All offers from one decision per period, for the minimum amount so that each is raised to its maximum.
+     */
+    @Benchmark
+    public void singleDecisions(Blackhole blackhole) {
+        for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+             period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+            blackhole.consume(decisionEngine.calculateApprovedLoan(SEGMENT_2_PERSONAL_CODE, MINIMUM_LOAN_AMOUNT,
+                    period, Countries.ESTONIA));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ee.taltech.inbankbackend.service;
+
+import com.github.vladislavgoltjajev.personalcode.exception.PersonalCodeException;
+import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeParser;
+import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Period;
+
+/**
+ * Compares the in-house personal code parsing that DecisionEngine runs for every uncached request
+ * with the validation and age parsing of the java-personal-code library it replaced, and the Finnish parser
+ * called directly and through the format lookup of CountryRegistry.
+ */
+@State(Scope.Benchmark)
+public class PersonalCodeBenchmark {
+
+    private static final String VALID_PERSONAL_CODE = "50307172740";
+    private static final String INVALID_PERSONAL_CODE = "12345678901";
+    private static final String VALID_FINNISH_PERSONAL_CODE = "131052-308T";
+
+    private final EstonianPersonalCodeValidator validator = new EstonianPersonalCodeValidator();
+    private final EstonianPersonalCodeParser parser = new EstonianPersonalCodeParser();
+    // A field rather than a constant, so that the format lookup is not folded away.
+    private Countries finland = Countries.FINLAND;
+
+    @Benchmark
+    public long parseValidCode() {
+        return EstonianPersonalCode.parse(VALID_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public long parseInvalidCode() {
+        return EstonianPersonalCode.parse(INVALID_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public long parseValidFinnishCode() {
+        return FinnishPersonalCode.parse(VALID_FINNISH_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public long parseValidFinnishCodeOfCountry() {
+        return CountryRegistry.personalCodeFormat(finland).parse(VALID_FINNISH_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public int parseAgeInHouse() {
+        return CompactDate.yearsBetween(EstonianPersonalCode.dateOfBirth(
+                EstonianPersonalCode.parse(VALID_PERSONAL_CODE)), CompactDate.today());
+    }
+
+    @Benchmark
+    public boolean validateValidCode() {
+        return validator.isValid(VALID_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public boolean validateInvalidCode() {
+        return validator.isValid(INVALID_PERSONAL_CODE);
+    }
+
+    @Benchmark
+    public Period parseAge() throws PersonalCodeException {
+        return parser.getAge(VALID_PERSONAL_CODE);
+    }
+}
@@ -0,0 +1,27 @@
+package ee.taltech.inbankbackend.audit;
+
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Holds one recorded decision: the request as it was received, the decision and the rules it was made with.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditEntry {
+    private Instant timestamp;
+    private String personalCode;
+    private Long loanAmount;
+    private int loanPeriod;
+    private Countries country;
+    private DecisionOutcome outcome;
+    private Integer approvedLoanAmount;
+    private Integer approvedLoanPeriod;
+    private int ruleVersion;
+}
@@ -0,0 +1,361 @@
+package ee.taltech.inbankbackend.audit;
+
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only journal of every decision returned to a customer, kept for the regulator.<br><br>
+ * Request threads only put an entry on a bounded queue. A single writer thread encodes the entries as fixed-size
+ * records (see AuditRecordFormat) into a memory-mapped segment file and forces them to disk in groups: once the
+ * queue is drained, or at least every flush interval while it is not, so one disk flush covers every record that
+ * arrived in the meantime. When a segment is full, the next one is started; segments are named after the sequence
+ * number of their first record. On start the journal continues after the last valid record of the last segment.
+ * If the writer falls behind until the queue is full, requests wait for room rather than go unrecorded.
+ * A record that cannot be written is logged and counted, and the writer carries on with the next one, so that
+ * one bad record or failing write never stops the journal and leaves requests waiting for room forever.
+ */
+@Slf4j
+@Component
+public class AuditJournal {
+
+    static final String SEGMENT_SUFFIX = ".journal";
+    private static final String LOCK_FILE = "journal.lock";
+    private static final int MAX_BATCH = 1024;
+
+    private final boolean enabled;
+    private final DecisionMetrics decisionMetrics;
+    private final Path directory;
+    private final long segmentRecords;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<AuditEntry> queue;
+    private final AtomicLong appended = new AtomicLong();
+    private final Object durableMonitor = new Object();
+    private final ByteBuffer record = ByteBuffer.allocate(AuditRecordFormat.RECORD_SIZE);
+    private final Thread writer;
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long segmentFirstSequence;
+    private int segmentPosition;
+    // Records written by the writer thread, how many of them are known to be on disk, and how many entries
+    // could not be written.
+    private long written;
+    private long durable;
+    private long failed;
+    private volatile boolean running;
+
+    /**
+     * Creates a journal with in-memory metrics.
+     */
+    public AuditJournal(boolean enabled, Path directory, DataSize segmentSize, Duration flushInterval,
+                        int queueCapacity) throws IOException {
+        this(new DecisionMetrics(), enabled, directory, segmentSize, flushInterval, queueCapacity);
+    }
+
+    @Autowired
+    public AuditJournal(DecisionMetrics decisionMetrics,
+                        @Value("${decision-engine.audit.enabled:true}") boolean enabled,
+                        @Value("${decision-engine.audit.directory:audit}") Path directory,
+                        @Value("${decision-engine.audit.segment-size:64MB}") DataSize segmentSize,
+                        @Value("${decision-engine.audit.flush-interval:10ms}") Duration flushInterval,
+                        @Value("${decision-engine.audit.queue-capacity:65536}") int queueCapacity)
+            throws IOException {
+        if (segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Audit journal segments cannot be larger than 2 GB");
+        }
+        this.enabled = enabled;
+        this.decisionMetrics = decisionMetrics;
+        this.directory = directory;
+        this.segmentRecords = Math.max(1, segmentSize.toBytes() / AuditRecordFormat.RECORD_SIZE);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.queue = enabled ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        if (!enabled) {
+            this.writer = null;
+            return;
+        }
+
+        Files.createDirectories(directory);
+        acquireLock();
+        try {
+            openLastSegment();
+        } catch (IOException | RuntimeException e) {
+            releaseLock();
+            throw e;
+        }
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "decision-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Records a decision returned to a customer. Returns as soon as the entry is queued for the writer.
+     *
+     * @param personalCode Personal ID code as it was received
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country of the request
+     * @param decision     Decision returned to the customer
+     */
+    public void append(String personalCode, Long loanAmount, int loanPeriod, Countries country, Decision decision) {
+        if (!enabled) {
+            return;
+        }
+        AuditEntry entry = entry(personalCode, loanAmount, loanPeriod, country, decision);
+        // Counted before it is queued, so that sync waits for every entry queued before it is called.
+        appended.incrementAndGet();
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            appended.decrementAndGet();
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for room in the audit journal, decision was not recorded");
+        }
+    }
+
+    /**
+     * Records a decision like append if there is room in the queue, without waiting for it.
+     *
+     * @param personalCode Personal ID code as it was received
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country of the request
+     * @param decision     Decision returned to the customer
+     * @return true if the entry was queued, false if the queue is full and nothing was recorded
+     */
+    public boolean tryAppend(String personalCode, Long loanAmount, int loanPeriod, Countries country,
+                             Decision decision) {
+        if (!enabled) {
+            return true;
+        }
+        AuditEntry entry = entry(personalCode, loanAmount, loanPeriod, country, decision);
+        appended.incrementAndGet();
+        if (queue.offer(entry)) {
+            return true;
+        }
+        appended.decrementAndGet();
+        return false;
+    }
+
+    private AuditEntry entry(String personalCode, Long loanAmount, int loanPeriod, Countries country,
+                             Decision decision) {
+        return new AuditEntry(Instant.now(), personalCode, loanAmount, loanPeriod, country, decision.getOutcome(),
+                decision.getLoanAmount(), decision.getLoanPeriod(), decision.getRuleVersion());
+    }
+
+    /**
+     * Waits until every entry appended before the call is on disk, or could not be written.
+     *
+     * @param timeout Longest time to wait
+     * @return true if the entries are on disk or failed, false if the timeout passed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean sync(Duration timeout) throws InterruptedException {
+        if (!enabled) {
+            return true;
+        }
+        long target = appended.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (durableMonitor) {
+            while (durable + failed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(durableMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The directory holding the journal segments, or null if the journal is disabled
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes and flushes the queued entries and closes the journal.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled || !running) {
+            return;
+        }
+        // The writer is not interrupted: an interrupt during file I/O would close the segment channel.
+        running = false;
+        writer.join();
+        closeSegment();
+        releaseLock();
+    }
+
+    private void writeLoop() {
+        List<AuditEntry> batch = new ArrayList<>(MAX_BATCH);
+        long lastFlush = System.nanoTime();
+        while (true) {
+            try {
+                AuditEntry first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (AuditEntry entry : batch) {
+                        try {
+                            write(entry);
+                        } catch (IOException | RuntimeException e) {
+                            fail(e);
+                        }
+                    }
+                    batch.clear();
+                }
+                // Group commit: one flush for everything written since the last one.
+                if (durable < written
+                        && (queue.isEmpty() || System.nanoTime() - lastFlush >= flushIntervalNanos)) {
+                    segment.force();
+                    lastFlush = System.nanoTime();
+                    publishDurable();
+                }
+            } catch (InterruptedException e) {
+                // Nothing interrupts the writer on purpose; keep going until the journal is closed.
+            } catch (RuntimeException e) {
+                log.error("Flushing the audit journal failed", e);
+                if (!running) {
+                    return;
+                }
+            }
+            if (!running && queue.isEmpty() && durable == written) {
+                return;
+            }
+        }
+    }
+
+    private void write(AuditEntry entry) throws IOException {
+        if (segmentPosition + AuditRecordFormat.RECORD_SIZE > segment.capacity()) {
+            segment.force();
+            publishDurable();
+            closeSegment();
+            openSegment(segmentFirstSequence + segmentPosition / AuditRecordFormat.RECORD_SIZE);
+        }
+        AuditRecordFormat.encode(entry, record);
+        segment.put(segmentPosition, record.array());
+        segmentPosition += AuditRecordFormat.RECORD_SIZE;
+        written++;
+    }
+
+    /**
+     * Gives up on an entry that could not be written, so that the writer carries on with the next one.
+     */
+    private void fail(Exception e) {
+        log.error("Writing a decision to the audit journal failed, it is not recorded", e);
+        decisionMetrics.recordAuditFailure();
+        synchronized (durableMonitor) {
+            failed++;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private void publishDurable() {
+        synchronized (durableMonitor) {
+            durable = written;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Opens the last segment and positions the journal after its last valid record, or starts the first one.
+     */
+    private void openLastSegment() throws IOException {
+        List<Path> segments = AuditJournalReader.segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        String name = last.getFileName().toString();
+        openSegment(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+
+        byte[] scratch = new byte[AuditRecordFormat.RECORD_SIZE];
+        int position = 0;
+        while (position + AuditRecordFormat.RECORD_SIZE <= segment.capacity()
+                && AuditRecordFormat.decode(segment, position, scratch) != null) {
+            position += AuditRecordFormat.RECORD_SIZE;
+        }
+        segmentPosition = position;
+        log.info("Audit journal continues at record {} in {}", segmentFirstSequence
+                + position / AuditRecordFormat.RECORD_SIZE, last);
+    }
+
+    /**
+     * Maps a segment file, extending it to the segment size if it is new, and positions the journal at its start.
+     *
+     * @param firstSequence Sequence number of the first record of the segment
+     */
+    private void openSegment(long firstSequence) throws IOException {
+        Path file = directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX);
+        segmentChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // A segment written with a larger segment size keeps its size.
+        long size = Math.max(segmentChannel.size(), segmentRecords * AuditRecordFormat.RECORD_SIZE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentFirstSequence = firstSequence;
+        segmentPosition = 0;
+    }
+
+    private void closeSegment() {
+        try {
+            segmentChannel.close();
+        } catch (IOException e) {
+            log.warn("Closing audit journal segment failed", e);
+        }
+    }
+
+    private void acquireLock() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Audit journal in " + directory + " is already open");
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Releasing the audit journal lock failed", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ee.taltech.inbankbackend.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads the records of an audit journal back, segment by segment in the order they were written.
+ * Each segment is read up to its first invalid record, which is where writing stopped.
+ */
+public final class AuditJournalReader {
+
+    private AuditJournalReader() {
+    }
+
+    /**
+     * Writes every record of a journal as one line of NDJSON.
+     *
+     * @param directory    Directory holding the journal segments
+     * @param output       Stream the NDJSON lines are written to
+     * @param objectMapper Mapper used to write the entries
+     * @return Number of records written
+     * @throws IOException If reading the journal or writing the output fails
+     */
+    public static long replay(Path directory, OutputStream output, ObjectMapper objectMapper) throws IOException {
+        long[] count = new long[1];
+        try (SequenceWriter writer = objectMapper.writerFor(AuditEntry.class)
+                .withRootValueSeparator("\n").writeValues(output)) {
+            forEach(directory, entry -> {
+                try {
+                    writer.write(entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    /**
+     * Passes every record of a journal to the given action, in the order they were written.
+     *
+     * @param directory Directory holding the journal segments
+     * @param action    Action run for each entry
+     * @throws IOException If reading the journal fails
+     */
+    public static void forEach(Path directory, Consumer<AuditEntry> action) throws IOException {
+        byte[] record = new byte[AuditRecordFormat.RECORD_SIZE];
+        for (Path segment : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int position = 0; position + AuditRecordFormat.RECORD_SIZE <= buffer.capacity();
+                     position += AuditRecordFormat.RECORD_SIZE) {
+                    AuditEntry entry = AuditRecordFormat.decode(buffer, position, record);
+                    if (entry == null) {
+                        break;
+                    }
+                    action.accept(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the segment files of a journal. Segment names are zero-padded sequence numbers, so sorting them
+     * by name gives the order they were written in.
+     *
+     * @param directory Directory holding the journal segments
+     * @return The segment files, oldest first
+     * @throws IOException If listing the directory fails
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().endsWith(AuditJournal.SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
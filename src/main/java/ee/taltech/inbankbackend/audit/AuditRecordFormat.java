@@ -0,0 +1,127 @@
+package ee.taltech.inbankbackend.audit;
+
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Fixed 64-byte binary layout of a journal record, in big-endian byte order:<br>
+ * - 0: timestamp in epoch milliseconds (long),<br>
+ * - 8: requested loan amount (long, Long.MIN_VALUE if missing),<br>
+ * - 16: requested loan period (int),<br>
+ * - 20: approved loan amount (int, -1 if none),<br>
+ * - 24: approved loan period (int, -1 if none),<br>
+ * - 28: rule version (short),<br>
+ * - 30: country ordinal (byte, -1 if missing),<br>
+ * - 31: outcome ordinal (byte),<br>
+ * - 32: length of the personal code in bytes (byte, -1 if missing),<br>
+ * - 33: personal code, UTF-8, cut to 27 bytes,<br>
+ * - 60: CRC32C of bytes 0 to 59 (int).<br>
+ * A record whose checksum does not match, such as never written space or a write torn by a crash, marks the end
+ * of the journal. Enum values are stored by ordinal, so new countries and outcomes must be added at the end.
+ */
+final class AuditRecordFormat {
+
+    static final int RECORD_SIZE = 64;
+    static final int MAX_PERSONAL_CODE_BYTES = 27;
+
+    private static final int TIMESTAMP = 0;
+    private static final int LOAN_AMOUNT = 8;
+    private static final int LOAN_PERIOD = 16;
+    private static final int APPROVED_LOAN_AMOUNT = 20;
+    private static final int APPROVED_LOAN_PERIOD = 24;
+    private static final int RULE_VERSION = 28;
+    private static final int COUNTRY = 30;
+    private static final int OUTCOME = 31;
+    private static final int PERSONAL_CODE_LENGTH = 32;
+    private static final int PERSONAL_CODE = 33;
+    private static final int CHECKSUM = 60;
+    private static final long MISSING_AMOUNT = Long.MIN_VALUE;
+    private static final int MISSING = -1;
+
+    private AuditRecordFormat() {
+    }
+
+    /**
+     * Writes an entry into a record buffer.
+     *
+     * @param entry  Entry to write
+     * @param record Heap buffer of RECORD_SIZE bytes that receives the record
+     */
+    static void encode(AuditEntry entry, ByteBuffer record) {
+        record.putLong(TIMESTAMP, entry.getTimestamp().toEpochMilli());
+        record.putLong(LOAN_AMOUNT, entry.getLoanAmount() != null ? entry.getLoanAmount() : MISSING_AMOUNT);
+        record.putInt(LOAN_PERIOD, entry.getLoanPeriod());
+        record.putInt(APPROVED_LOAN_AMOUNT, entry.getApprovedLoanAmount() != null
+                ? entry.getApprovedLoanAmount() : MISSING);
+        record.putInt(APPROVED_LOAN_PERIOD, entry.getApprovedLoanPeriod() != null
+                ? entry.getApprovedLoanPeriod() : MISSING);
+        record.putShort(RULE_VERSION, (short) entry.getRuleVersion());
+        record.put(COUNTRY, (byte) (entry.getCountry() != null ? entry.getCountry().ordinal() : MISSING));
+        record.put(OUTCOME, (byte) entry.getOutcome().ordinal());
+
+        byte[] code = record.array();
+        if (entry.getPersonalCode() == null) {
+            record.put(PERSONAL_CODE_LENGTH, (byte) MISSING);
+            Arrays.fill(code, PERSONAL_CODE, CHECKSUM, (byte) 0);
+        } else {
+            byte[] personalCode = entry.getPersonalCode().getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(personalCode.length, MAX_PERSONAL_CODE_BYTES);
+            record.put(PERSONAL_CODE_LENGTH, (byte) length);
+            System.arraycopy(personalCode, 0, code, PERSONAL_CODE, length);
+            Arrays.fill(code, PERSONAL_CODE + length, CHECKSUM, (byte) 0);
+        }
+
+        record.putInt(CHECKSUM, checksum(code));
+    }
+
+    /**
+     * Reads the record at the given offset.
+     *
+     * @param buffer Buffer holding journal records
+     * @param offset Offset of the record in the buffer
+     * @param record Scratch array of RECORD_SIZE bytes
+     * @return The recorded entry, or null if there is no valid record at the offset
+     */
+    static AuditEntry decode(ByteBuffer buffer, int offset, byte[] record) {
+        buffer.get(offset, record, 0, RECORD_SIZE);
+        ByteBuffer fields = ByteBuffer.wrap(record);
+        if (fields.getInt(CHECKSUM) != checksum(record)) {
+            return null;
+        }
+
+        int country = fields.get(COUNTRY);
+        int outcome = fields.get(OUTCOME);
+        if (country < MISSING || country >= Countries.values().length
+                || outcome < 0 || outcome >= DecisionOutcome.values().length) {
+            return null;
+        }
+        long loanAmount = fields.getLong(LOAN_AMOUNT);
+        int approvedLoanAmount = fields.getInt(APPROVED_LOAN_AMOUNT);
+        int approvedLoanPeriod = fields.getInt(APPROVED_LOAN_PERIOD);
+        int personalCodeLength = fields.get(PERSONAL_CODE_LENGTH);
+
+        return new AuditEntry(
+                Instant.ofEpochMilli(fields.getLong(TIMESTAMP)),
+                personalCodeLength == MISSING ? null
+                        : new String(record, PERSONAL_CODE, personalCodeLength, StandardCharsets.UTF_8),
+                loanAmount == MISSING_AMOUNT ? null : loanAmount,
+                fields.getInt(LOAN_PERIOD),
+                country == MISSING ? null : Countries.values()[country],
+                DecisionOutcome.values()[outcome],
+                approvedLoanAmount == MISSING ? null : approvedLoanAmount,
+                approvedLoanPeriod == MISSING ? null : approvedLoanPeriod,
+                fields.getShort(RULE_VERSION));
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record, 0, CHECKSUM);
+        return (int) crc.getValue();
+    }
+}
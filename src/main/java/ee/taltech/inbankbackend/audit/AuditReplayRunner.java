@@ -0,0 +1,50 @@
+package ee.taltech.inbankbackend.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Replays an audit journal into an NDJSON file at startup, one line per recorded decision.
+ * Enabled by setting decision-engine.audit.replay.output; the journal is read from decision-engine.audit.directory
+ * unless decision-engine.audit.replay.input is set. Combine with spring.main.web-application-type=none to exit
+ * once the journal is replayed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("decision-engine.audit.replay.output")
+public class AuditReplayRunner implements ApplicationRunner {
+
+    private final ObjectMapper objectMapper;
+    private final Path input;
+    private final Path output;
+
+    @Autowired
+    AuditReplayRunner(ObjectMapper objectMapper,
+                      @Value("${decision-engine.audit.replay.input:${decision-engine.audit.directory:audit}}")
+                      Path input,
+                      @Value("${decision-engine.audit.replay.output}") Path output) {
+        this.objectMapper = objectMapper;
+        this.input = input;
+        this.output = output;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            long replayed = AuditJournalReader.replay(input, out, objectMapper);
+            log.info("Replayed {} audit records from {} into {}", replayed, input, output);
+        }
+    }
+}
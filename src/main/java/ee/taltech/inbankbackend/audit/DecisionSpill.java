@@ -0,0 +1,109 @@
+package ee.taltech.inbankbackend.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Overflow files of the decision store, holding decisions that could not be queued or written to the database.
+ * Decisions are appended as audit journal records (see AuditRecordFormat) to the open file. The store writer
+ * seals the open file before reading the spilled decisions back, so that new decisions go to a new file meanwhile;
+ * a file is deleted once its decisions are in the database. Files left by a previous run are read back too.
+ * Spilled decisions are not forced to disk, so a crash of the machine can lose the last of them.
+ */
+final class DecisionSpill {
+
+    static final String FILE_SUFFIX = ".spill";
+
+    private final Path directory;
+    private final ByteBuffer record = ByteBuffer.allocate(AuditRecordFormat.RECORD_SIZE);
+    private FileChannel channel;
+    private long nextFile;
+
+    /**
+     * @param directory Directory holding the spill files, created if missing
+     */
+    DecisionSpill(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> files = files();
+        nextFile = files.isEmpty() ? 0 : sequence(files.get(files.size() - 1)) + 1;
+    }
+
+    /**
+     * Appends decisions to the open spill file, opening a new one if needed.
+     *
+     * @param entries Decisions to spill
+     */
+    synchronized void write(List<AuditEntry> entries) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(directory.resolve(String.format("%020d", nextFile++) + FILE_SUFFIX),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        for (AuditEntry entry : entries) {
+            AuditRecordFormat.encode(entry, record);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            record.clear();
+        }
+    }
+
+    /**
+     * Closes the open spill file, so that it can be read back while new decisions go to the next file.
+     *
+     * @return Every closed spill file, oldest first
+     */
+    synchronized List<Path> seal() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        return files();
+    }
+
+    /**
+     * Reads the decisions of a closed spill file up to its first invalid record.
+     *
+     * @param file Spill file returned by seal
+     * @return The decisions, in the order they were spilled
+     */
+    static List<AuditEntry> read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        byte[] scratch = new byte[AuditRecordFormat.RECORD_SIZE];
+        List<AuditEntry> entries = new ArrayList<>();
+        for (int position = 0; position + AuditRecordFormat.RECORD_SIZE <= buffer.capacity();
+             position += AuditRecordFormat.RECORD_SIZE) {
+            AuditEntry entry = AuditRecordFormat.decode(buffer, position, scratch);
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Closes the open spill file.
+     */
+    synchronized void close() throws IOException {
+        seal();
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static long sequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+    }
+}
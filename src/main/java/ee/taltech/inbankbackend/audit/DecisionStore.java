@@ -0,0 +1,392 @@
+package ee.taltech.inbankbackend.audit;
+
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores every decision returned to a customer, with its request, in the loan_decision table for servicing and
+ * analytics. The table is created if it does not exist.<br><br>
+ * Request threads only put an entry on a bounded queue, so storing adds no database round trip to a request.
+ * A single writer thread inserts the entries with one JDBC batch and one commit per batch: a batch is written once
+ * batch-size entries are queued, or linger after its first entry arrived, whichever comes first.
+ * When the queue is full, the overflow policy decides: BLOCK makes the request wait for room, DROP loses the
+ * decision and SPILL appends it to a spill file (see DecisionSpill). A batch the database refuses is spilled too.
+ * Spilled decisions, including those left by a previous run, are inserted while the queue is idle, at most once
+ * per retry interval after a failure.
+ */
+@Slf4j
+@Component
+public class DecisionStore {
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS loan_decision ("
+            + "id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+            + "decided_at TIMESTAMP WITH TIME ZONE NOT NULL, "
+            + "personal_code VARCHAR(64), "
+            + "loan_amount BIGINT, "
+            + "loan_period INT NOT NULL, "
+            + "country VARCHAR(16), "
+            + "outcome VARCHAR(32) NOT NULL, "
+            + "approved_loan_amount INT, "
+            + "approved_loan_period INT, "
+            + "rule_version INT NOT NULL)";
+    static final String INSERT = "INSERT INTO loan_decision (decided_at, personal_code, loan_amount, "
+            + "loan_period, country, outcome, approved_loan_amount, approved_loan_period, rule_version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_PERSONAL_CODE_LENGTH = 64;
+
+    private final boolean enabled;
+    private final DecisionMetrics decisionMetrics;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long retryIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<AuditEntry> queue;
+    private final DecisionSpill spill;
+    private final AtomicLong saved = new AtomicLong();
+    private final Object settledMonitor = new Object();
+    private final Thread writer;
+
+    // Entries saved and since written, spilled or dropped.
+    private long settled;
+    // Set when decisions are spilled, cleared by the writer before it reads them back.
+    private volatile boolean spilled;
+    // Written by the writer thread only.
+    private long lastFailure;
+    private volatile boolean running;
+
+    @Autowired
+    public DecisionStore(DecisionMetrics decisionMetrics, JdbcTemplate jdbcTemplate,
+                         @Value("${decision-engine.store.enabled:true}") boolean enabled,
+                         @Value("${decision-engine.store.batch-size:500}") int batchSize,
+                         @Value("${decision-engine.store.linger:50ms}") Duration linger,
+                         @Value("${decision-engine.store.queue-capacity:65536}") int queueCapacity,
+                         @Value("${decision-engine.store.overflow:block}") String overflowPolicy,
+                         @Value("${decision-engine.store.spill-directory:store-spill}") Path spillDirectory,
+                         @Value("${decision-engine.store.retry-interval:5s}") Duration retryInterval)
+            throws IOException {
+        if (batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("decision-engine.store batch size and queue capacity must be positive");
+        }
+        this.enabled = enabled;
+        this.decisionMetrics = decisionMetrics;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.retryIntervalNanos = retryInterval.toNanos();
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT));
+        if (!enabled) {
+            this.queue = null;
+            this.spill = null;
+            this.writer = null;
+            return;
+        }
+
+        jdbcTemplate.execute(CREATE_TABLE);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.spill = new DecisionSpill(spillDirectory);
+        // Decisions spilled by a previous run are read back as soon as the queue is idle.
+        this.spilled = true;
+        this.lastFailure = System.nanoTime() - retryIntervalNanos;
+        decisionMetrics.gaugeStoreQueue(queue);
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "decision-store-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Stores a decision returned to a customer. Returns as soon as the entry is queued for the writer, or once
+     * the overflow policy has dealt with it if the queue is full.
+     *
+     * @param personalCode Personal ID code as it was received
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country of the request
+     * @param decision     Decision returned to the customer
+     */
+    public void save(String personalCode, Long loanAmount, int loanPeriod, Countries country, Decision decision) {
+        if (!enabled) {
+            return;
+        }
+        AuditEntry entry = entry(personalCode, loanAmount, loanPeriod, country, decision);
+        // Counted before it is queued, so that sync waits for every entry saved before it is called.
+        saved.incrementAndGet();
+        if (queue.offer(entry)) {
+            return;
+        }
+
+        decisionMetrics.recordStoreOverflow();
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(entry);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while waiting for room in the decision store, decision was not stored");
+            }
+        } else if (overflowPolicy == OverflowPolicy.SPILL) {
+            spill(List.of(entry));
+        }
+        settle(1);
+    }
+
+    /**
+     * Stores a decision like save, without waiting for room in the queue: under the BLOCK policy nothing is
+     * stored if the queue is full, under the other policies the overflow is dealt with as save does.
+     *
+     * @param personalCode Personal ID code as it was received
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country of the request
+     * @param decision     Decision returned to the customer
+     * @return true if the decision was dealt with, false if the queue is full and nothing was stored
+     */
+    public boolean trySave(String personalCode, Long loanAmount, int loanPeriod, Countries country,
+                           Decision decision) {
+        if (!enabled || overflowPolicy != OverflowPolicy.BLOCK) {
+            save(personalCode, loanAmount, loanPeriod, country, decision);
+            return true;
+        }
+        AuditEntry entry = entry(personalCode, loanAmount, loanPeriod, country, decision);
+        saved.incrementAndGet();
+        if (queue.offer(entry)) {
+            return true;
+        }
+        saved.decrementAndGet();
+        return false;
+    }
+
+    private AuditEntry entry(String personalCode, Long loanAmount, int loanPeriod, Countries country,
+                             Decision decision) {
+        return new AuditEntry(Instant.now(), personalCode, loanAmount, loanPeriod, country, decision.getOutcome(),
+                decision.getLoanAmount(), decision.getLoanPeriod(), decision.getRuleVersion());
+    }
+
+    /**
+     * Waits until every entry saved before the call is written to the database, spilled or dropped.
+     *
+     * @param timeout Longest time to wait
+     * @return true if the entries are settled, false if the timeout passed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean sync(Duration timeout) throws InterruptedException {
+        if (!enabled) {
+            return true;
+        }
+        long target = saved.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (settledMonitor) {
+            while (settled < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(settledMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued entries and stops the writer. Spilled decisions stay on disk for the next run.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled || !running) {
+            return;
+        }
+        running = false;
+        writer.join();
+        try {
+            spill.close();
+        } catch (IOException e) {
+            log.warn("Closing the decision store spill file failed", e);
+        }
+    }
+
+    private void writeLoop() {
+        List<AuditEntry> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                AuditEntry first = queue.poll(lingerNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fill(batch);
+                    if (!insert(batch)) {
+                        spill(batch);
+                    }
+                    settle(batch.size());
+                    batch.clear();
+                } else if (spilled && System.nanoTime() - lastFailure >= retryIntervalNanos) {
+                    insertSpilled();
+                }
+            } catch (InterruptedException e) {
+                // Nothing interrupts the writer on purpose; keep going until the store is closed.
+            }
+            if (!running && queue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds queued entries to the batch until it is full or the linger time since its first entry has passed.
+     */
+    private void fill(List<AuditEntry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == batchSize || remaining <= 0) {
+                return;
+            }
+            AuditEntry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Inserts the entries with one JDBC batch in one transaction.
+     *
+     * @return true if the entries were committed, false if the database refused them
+     */
+    private boolean insert(List<AuditEntry> entries) {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                    for (AuditEntry entry : entries) {
+                        bind(statement, entry);
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    connection.commit();
+                    return counts;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            });
+        } catch (DataAccessException e) {
+            log.error("Writing {} decisions to the decision store failed", entries.size(), e);
+            decisionMetrics.recordStoreFailure(entries.size());
+            lastFailure = System.nanoTime();
+            return false;
+        }
+        decisionMetrics.recordStoreFlush(entries.size(), System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Sets the parameters of INSERT to the fields of an entry.
+     */
+    static void bind(PreparedStatement statement, AuditEntry entry) throws SQLException {
+        String personalCode = entry.getPersonalCode();
+        statement.setObject(1, entry.getTimestamp().atOffset(ZoneOffset.UTC));
+        statement.setString(2, personalCode == null || personalCode.length() <= MAX_PERSONAL_CODE_LENGTH
+                ? personalCode : personalCode.substring(0, MAX_PERSONAL_CODE_LENGTH));
+        statement.setObject(3, entry.getLoanAmount(), Types.BIGINT);
+        statement.setInt(4, entry.getLoanPeriod());
+        statement.setString(5, entry.getCountry() == null ? null : entry.getCountry().name());
+        statement.setString(6, entry.getOutcome().name());
+        statement.setObject(7, entry.getApprovedLoanAmount(), Types.INTEGER);
+        statement.setObject(8, entry.getApprovedLoanPeriod(), Types.INTEGER);
+        statement.setInt(9, entry.getRuleVersion());
+    }
+
+    /**
+     * @return true if the entries were spilled, false if they are lost
+     */
+    private boolean spill(List<AuditEntry> entries) {
+        try {
+            spill.write(entries);
+            spilled = true;
+            return true;
+        } catch (IOException e) {
+            log.error("Spilling {} decisions failed, they are lost", entries.size(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Inserts the spilled decisions file by file, deleting each file once it is in the database.
+     * If the database refuses a batch, the rest of that file is spilled again and the remaining files are kept
+     * for the next attempt. If the rest cannot be spilled again, the whole file is kept, so that its decisions
+     * are stored twice rather than lost.
+     */
+    private void insertSpilled() {
+        spilled = false;
+        try {
+            for (Path file : spill.seal()) {
+                List<AuditEntry> entries = DecisionSpill.read(file);
+                for (int from = 0; from < entries.size(); from += batchSize) {
+                    if (!insert(entries.subList(from, Math.min(entries.size(), from + batchSize)))) {
+                        if (spill(entries.subList(from, entries.size()))) {
+                            Files.delete(file);
+                        }
+                        spilled = true;
+                        return;
+                    }
+                }
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            log.error("Reading spilled decisions back failed", e);
+            lastFailure = System.nanoTime();
+            spilled = true;
+        }
+    }
+
+    private void settle(int count) {
+        synchronized (settledMonitor) {
+            settled += count;
+            settledMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * What happens to a decision that finds the queue full.
+     */
+    public enum OverflowPolicy {
+        // The request waits for room in the queue.
+        BLOCK,
+        // The decision is not stored.
+        DROP,
+        // The decision is appended to a spill file and stored later.
+        SPILL
+    }
+}
@@ -2,6 +2,8 @@ package ee.taltech.inbankbackend.config;
 
 /**
  * Holds all necessary constants for the decision engine.
+ * The limits, segments, baseline and ages are the built-in rules, see RuleSet; the engine reads them from the
+ * rule set in force rather than from here.
  */
 public class DecisionEngineConstants {
     public static final Integer MINIMUM_LOAN_AMOUNT = 2000;
@@ -23,10 +25,19 @@ public class DecisionEngineConstants {
     public static final String AN_UNEXPECTED_ERROR_OCCURRED = "An unexpected error occurred";
     public static final String NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS = "No valid loan found for the" +
             " provided parameters.";
+    public static final String CREDIT_REGISTRY_UNAVAILABLE = "Credit registry is unavailable, please try again"
+            + " later.";
+    public static final String INVALID_REQUEST_BODY = "Invalid request body!";
+    public static final String RATE_LIMIT_EXCEEDED = "Too many requests from this client, please try again later.";
+    public static final String TOO_MANY_CONCURRENT_REQUESTS = "Too many requests in progress, please try again later.";
+    public static final String INVALID_IDEMPOTENCY_KEY = "Invalid idempotency key!";
+    public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency key was already used for another request!";
     public static final String INVALID_AGE_ERROR = "Age doesn't match requirements for this country!";
     public static final double SCORE_DIVISOR = 10.0;
     public static final int MINIMUM_AGE = 21;
     public static final int ESTONIA_MAXIMUM = 80;
     public static final int LATVIA_MAXIMUM = 75;
     public static final int LITHUANIA_MAXIMUM = 85;
+    public static final int FINLAND_MAXIMUM = 80;
+    public static final int RULE_VERSION = 1;
 }
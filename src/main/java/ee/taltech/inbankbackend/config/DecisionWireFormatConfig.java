@@ -0,0 +1,24 @@
+package ee.taltech.inbankbackend.config;
+
+import ee.taltech.inbankbackend.endpoint.DecisionBinaryMessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Lets the servlet endpoints exchange decision bodies in the compact binary format next to JSON.
+ * The converter is added after the default ones rather than declared as a bean, which Spring Boot would put first:
+ * a client that accepts any media type must still get JSON.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class DecisionWireFormatConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new DecisionBinaryMessageConverter());
+    }
+}
@@ -0,0 +1,30 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.inbankbackend.endpoint.RequestAdmission;
+import ee.taltech.inbankbackend.endpoint.RequestAdmissionFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Rate limits and sheds decision requests on the servlet stack before they reach the controller, see
+ * RequestAdmission. Only the single decision endpoint is filtered.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RequestAdmissionConfig {
+
+    /**
+     * @return Registration of the admission filter for /loan/decision
+     */
+    @Bean
+    FilterRegistrationBean<RequestAdmissionFilter> requestAdmissionFilter(RequestAdmission requestAdmission,
+                                                                          ObjectMapper objectMapper) {
+        FilterRegistrationBean<RequestAdmissionFilter> registration = new FilterRegistrationBean<>(
+                new RequestAdmissionFilter(requestAdmission, objectMapper));
+        registration.addUrlPatterns("/loan/decision");
+        return registration;
+    }
+}
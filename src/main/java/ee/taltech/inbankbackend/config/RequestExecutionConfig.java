@@ -0,0 +1,30 @@
+package ee.taltech.inbankbackend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Chooses the threads Tomcat runs requests on, set by decision-engine.request-threads:<br>
+ * - platform: Tomcat's bounded pool of platform threads (the default),<br>
+ * - virtual: a new virtual thread per request, so requests that block on I/O do not hold a pool thread.
+ */
+@Configuration
+public class RequestExecutionConfig {
+
+    public static final String REQUEST_THREADS_PROPERTY = "decision-engine.request-threads";
+
+    /**
+     * Replaces Tomcat's request thread pool with a virtual thread per request.
+     *
+     * @return Customizer setting the executor of Tomcat's protocol handler
+     */
+    @Bean
+    @ConditionalOnProperty(name = REQUEST_THREADS_PROPERTY, havingValue = "virtual")
+    TomcatProtocolHandlerCustomizer<?> virtualThreadRequestExecutor() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
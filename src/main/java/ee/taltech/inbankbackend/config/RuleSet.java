@@ -0,0 +1,163 @@
+package ee.taltech.inbankbackend.config;
+
+import ee.taltech.inbankbackend.service.Countries;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of the business rules the decision engine applies: loan limits, credit segments, the approval
+ * baseline and the age limits. The built-in rules are the values in DecisionEngineConstants; a rule set read from
+ * a file replaces them, see RuleSetHolder.
+ *
+ * @param version            Version of the rules, recorded with every audited decision
+ * @param minimumLoanAmount  Lowest loan amount that can be requested or approved
+ * @param maximumLoanAmount  Highest loan amount that can be requested or approved
+ * @param loanAmountStep     Step the approved amount is searched in
+ * @param minimumLoanPeriod  Shortest loan period in months
+ * @param maximumLoanPeriod  Longest loan period in months
+ * @param segments           Credit segments by the last four digits of the personal code, in ascending order
+ * @param approvalBaseline   Lowest credit score that is approved
+ * @param scoreDivisor       Divisor of the credit score formula
+ * @param minimumAge         Youngest age a loan is granted at, in years
+ * @param maximumAge         Oldest age a loan is granted at per country, in years; other countries are refused
+ */
+public record RuleSet(int version, int minimumLoanAmount, int maximumLoanAmount, int loanAmountStep,
+                      int minimumLoanPeriod, int maximumLoanPeriod, List<Segment> segments,
+                      double approvalBaseline, double scoreDivisor, int minimumAge,
+                      Map<Countries, Integer> maximumAge) {
+
+    // Segments are chosen by the last four digits of the personal code.
+    private static final int SEGMENT_RANGE = 10000;
+    private static final RuleSet DEFAULTS = createDefaults();
+
+    public RuleSet {
+        segments = segments == null ? null : List.copyOf(segments);
+        maximumAge = maximumAge == null ? null : byCountry(maximumAge);
+    }
+
+    /**
+     * A credit segment: applicants whose last four digits are below the ceiling, and not in an earlier segment,
+     * get its credit modifier.
+     *
+     * @param ceiling        Exclusive upper bound of the last four digits
+     * @param creditModifier Credit modifier of the segment, 0 for applicants with debt
+     */
+    public record Segment(int ceiling, int creditModifier) {
+    }
+
+    /**
+     * Copies the maximum ages into an EnumMap, so that the age limit of a country is looked up by its ordinal.
+     * Missing countries and ages are refused like by Map.copyOf.
+     */
+    private static Map<Countries, Integer> byCountry(Map<Countries, Integer> maximumAge) {
+        Map<Countries, Integer> copy = new EnumMap<>(Countries.class);
+        copy.putAll(Map.copyOf(maximumAge));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @return The built-in rules, taken from DecisionEngineConstants; always the same instance
+     */
+    public static RuleSet defaults() {
+        return DEFAULTS;
+    }
+
+    private static RuleSet createDefaults() {
+        Map<Countries, Integer> maximumAge = new EnumMap<>(Countries.class);
+        maximumAge.put(Countries.ESTONIA, DecisionEngineConstants.ESTONIA_MAXIMUM);
+        maximumAge.put(Countries.LATVIA, DecisionEngineConstants.LATVIA_MAXIMUM);
+        maximumAge.put(Countries.LITHUANIA, DecisionEngineConstants.LITHUANIA_MAXIMUM);
+        maximumAge.put(Countries.FINLAND, DecisionEngineConstants.FINLAND_MAXIMUM);
+        return new RuleSet(DecisionEngineConstants.RULE_VERSION,
+                DecisionEngineConstants.MINIMUM_LOAN_AMOUNT, DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT,
+                DecisionEngineConstants.CHANGE_AMOUNT_BY_100,
+                DecisionEngineConstants.MINIMUM_LOAN_PERIOD, DecisionEngineConstants.MAXIMUM_LOAN_PERIOD,
+                List.of(new Segment(DecisionEngineConstants.CEILING_OF_FIRST_SEGMENT, 0),
+                        new Segment(DecisionEngineConstants.CEILING_OF_SECOND_SEGMENT,
+                                DecisionEngineConstants.SEGMENT_1_CREDIT_MODIFIER),
+                        new Segment(DecisionEngineConstants.CEILING_OF_THIRD_SEGMENT,
+                                DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER),
+                        new Segment(SEGMENT_RANGE, DecisionEngineConstants.SEGMENT_3_CREDIT_MODIFIER)),
+                DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL, DecisionEngineConstants.SCORE_DIVISOR,
+                DecisionEngineConstants.MINIMUM_AGE, maximumAge);
+    }
+
+    /**
+     * Checks that the rules are complete and consistent, so that the engine can apply them to any request.
+     *
+     * @return This rule set
+     * @throws IllegalArgumentException If a rule is missing or out of range
+     */
+    public RuleSet validate() {
+        // The audit journal stores the version in two bytes.
+        require(version > 0 && version <= Short.MAX_VALUE, "version must be between 1 and " + Short.MAX_VALUE);
+        require(minimumLoanAmount > 0 && minimumLoanAmount <= maximumLoanAmount,
+                "loan amounts must be positive and the minimum cannot exceed the maximum");
+        require(loanAmountStep > 0, "loan amount step must be positive");
+        require(minimumLoanPeriod > 0 && minimumLoanPeriod <= maximumLoanPeriod,
+                "loan periods must be positive and the minimum cannot exceed the maximum");
+        require(segments != null && !segments.isEmpty(), "at least one segment is required");
+        int previousCeiling = 0;
+        for (Segment segment : segments) {
+            require(segment.ceiling() > previousCeiling, "segment ceilings must be ascending");
+            require(segment.creditModifier() >= 0, "credit modifiers cannot be negative");
+            previousCeiling = segment.ceiling();
+        }
+        require(previousCeiling >= SEGMENT_RANGE, "the last segment must reach " + SEGMENT_RANGE);
+        require(approvalBaseline > 0, "approval baseline must be positive");
+        require(scoreDivisor > 0, "score divisor must be positive");
+        require(minimumAge >= 0, "minimum age cannot be negative");
+        require(maximumAge != null, "maximum ages are required");
+        maximumAge.values().forEach(age -> require(age >= minimumAge,
+                "maximum ages cannot be below the minimum age"));
+        return this;
+    }
+
+    /**
+     * Hashes every value of the rules. Unlike hashCode, which hashes the countries of the maximum ages by identity,
+     * it is the same in every run, so it can be handed to clients to tell results derived from these rules from
+     * results of other rules, even ones that kept the same version. Any single changed value changes it.
+     *
+     * @return Hash of the values of the rules
+     */
+    public long fingerprint() {
+        long hash = version;
+        hash = 31 * hash + minimumLoanAmount;
+        hash = 31 * hash + maximumLoanAmount;
+        hash = 31 * hash + loanAmountStep;
+        hash = 31 * hash + minimumLoanPeriod;
+        hash = 31 * hash + maximumLoanPeriod;
+        for (Segment segment : segments) {
+            hash = 31 * hash + segment.ceiling();
+            hash = 31 * hash + segment.creditModifier();
+        }
+        hash = 31 * hash + Double.doubleToLongBits(approvalBaseline);
+        hash = 31 * hash + Double.doubleToLongBits(scoreDivisor);
+        hash = 31 * hash + minimumAge;
+        for (Map.Entry<Countries, Integer> age : maximumAge.entrySet()) {
+            hash = 31 * hash + age.getKey().ordinal();
+            hash = 31 * hash + age.getValue();
+        }
+        return hash;
+    }
+
+    /**
+     * @return Distinct credit modifiers of the segments that can be approved, in segment order
+     */
+    public int[] approvableCreditModifiers() {
+        return segments.stream()
+                .mapToInt(Segment::creditModifier)
+                .filter(creditModifier -> creditModifier > 0)
+                .distinct()
+                .toArray();
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException("Invalid rule set: " + message);
+        }
+    }
+}
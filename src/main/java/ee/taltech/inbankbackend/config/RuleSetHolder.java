@@ -0,0 +1,155 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Holds the rule set currently in force behind a single volatile reference, so every request reads one
+ * consistent version without locking. The rules are read from the JSON file set by decision-engine.rules.location,
+ * or are the built-in defaults if none is set.<br><br>
+ * A new version replaces the current one atomically: it is validated first, then every listener prepares the
+ * structures it derives from the rules on the updating thread, and only then is it published. Requests in flight
+ * finish on the version they started with. An invalid version is rejected and the current one stays in force,
+ * and so is a rule set that differs from the one in force but has the same version number, as the version is
+ * what decisions are recorded and cached under.
+ */
+@Slf4j
+@Component
+public class RuleSetHolder {
+
+    private final Path location;
+    private final ObjectReader ruleSetReader;
+    private final List<Consumer<RuleSet>> listeners = new CopyOnWriteArrayList<>();
+    private volatile RuleSet ruleSet;
+
+    /**
+     * Creates a holder of the built-in rules that reads no file, so the rules never change, as used by engines
+     * built by DecisionEngine.withDefaults.
+     */
+    public RuleSetHolder() {
+        this.location = null;
+        this.ruleSetReader = null;
+        this.ruleSet = RuleSet.defaults().validate();
+    }
+
+    @Autowired
+    public RuleSetHolder(@Value("${decision-engine.rules.location:}") String location, ObjectMapper objectMapper)
+            throws IOException {
+        this.location = location.isBlank() ? null : Path.of(location);
+        // Unknown and missing fields are rejected, so a typo in the file cannot silently fall back to a default.
+        this.ruleSetReader = objectMapper.readerFor(RuleSet.class)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .with(DeserializationFeature.FAIL_ON_MISSING_CREATOR_PROPERTIES)
+                .with(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES);
+        this.ruleSet = this.location == null ? RuleSet.defaults().validate() : read();
+        log.info("Rule set version {} in force{}", ruleSet.version(),
+                this.location == null ? " (built-in)" : " from " + this.location);
+    }
+
+    /**
+     * @return The rule set in force
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * @return The file the rules are read from, or null if the built-in rules are used
+     */
+    public Path getLocation() {
+        return location;
+    }
+
+    /**
+     * Registers a listener that is called with every new rule set before it is published.
+     * A listener that throws rejects the new rule set, and the listeners called before it are called again with
+     * the rule set that stays in force.
+     *
+     * @param listener Listener preparing the structures derived from the rules
+     */
+    public void addListener(Consumer<RuleSet> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Validates a new rule set, lets the listeners prepare for it and puts it in force.
+     * A rule set equal to the one in force is ignored.
+     *
+     * @param newRuleSet Rule set to put in force
+     * @throws IllegalArgumentException If the rule set is invalid, or differs from the one in force without a new
+     *                                  version number
+     */
+    public synchronized void update(RuleSet newRuleSet) {
+        newRuleSet.validate();
+        if (newRuleSet.equals(ruleSet)) {
+            return;
+        }
+        if (newRuleSet.version() == ruleSet.version()) {
+            throw new IllegalArgumentException("Rule set version " + ruleSet.version()
+                    + " is in force with other values, a changed rule set needs a new version");
+        }
+        List<Consumer<RuleSet>> prepared = new ArrayList<>();
+        try {
+            for (Consumer<RuleSet> listener : listeners) {
+                listener.accept(newRuleSet);
+                prepared.add(listener);
+            }
+        } catch (RuntimeException e) {
+            prepared.forEach(listener -> restore(listener, e));
+            throw e;
+        }
+        ruleSet = newRuleSet;
+        log.info("Rule set version {} in force", newRuleSet.version());
+    }
+
+    /**
+     * Reads the rules file again and puts it in force. If the file cannot be read or is invalid,
+     * the current rules stay in force.
+     *
+     * @return true if the file was read and is valid
+     */
+    public boolean reload() {
+        if (location == null) {
+            return false;
+        }
+        try {
+            update(read());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Rules in {} were not loaded, version {} stays in force: {}", location, ruleSet.version(),
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Lets a listener that prepared for a rejected rule set prepare for the one in force again.
+     */
+    private void restore(Consumer<RuleSet> listener, RuntimeException rejection) {
+        try {
+            listener.accept(ruleSet);
+        } catch (RuntimeException e) {
+            rejection.addSuppressed(e);
+        }
+    }
+
+    private RuleSet read() throws IOException {
+        try (InputStream in = Files.newInputStream(location)) {
+            return ruleSetReader.<RuleSet>readValue(in).validate();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ee.taltech.inbankbackend.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Reloads the rules file whenever it changes, so new rules come into force without a restart.
+ * Watches the directory of the file rather than the file itself, so that editors replacing the file are noticed too.
+ * The new rules are validated and prepared on the watcher thread, see RuleSetHolder; requests are never paused.
+ * Active when decision-engine.rules.location is set, unless decision-engine.rules.watch is false.
+ */
+@Slf4j
+@Component
+public class RuleSetWatcher {
+
+    private final RuleSetHolder ruleSetHolder;
+    private final WatchService watchService;
+
+    @Autowired
+    public RuleSetWatcher(RuleSetHolder ruleSetHolder,
+                          @Value("${decision-engine.rules.watch:true}") boolean enabled) throws IOException {
+        this.ruleSetHolder = ruleSetHolder;
+        Path location = ruleSetHolder.getLocation();
+        if (!enabled || location == null) {
+            this.watchService = null;
+            return;
+        }
+
+        Path directory = location.toAbsolutePath().getParent();
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread watcher = new Thread(() -> watch(location.getFileName()), "rule-set-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for rule changes", location);
+    }
+
+    /**
+     * Stops watching the rules file.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch(Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // An overflow means events were lost, so the file may have changed.
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+                }
+                if (changed) {
+                    ruleSetHolder.reload();
+                }
+                if (!key.reset()) {
+                    log.warn("Rules directory is no longer accessible, rule changes are not picked up");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed on shutdown.
+        }
+    }
+}
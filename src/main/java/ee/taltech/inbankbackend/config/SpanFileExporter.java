@@ -0,0 +1,108 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends finished spans to a local file, one JSON object per line, so that traces can be looked at without a
+ * tracing backend. A line holds the trace and span IDs, the ID of the parent span, the name, the start time and
+ * duration in nanoseconds, the attributes and the events with their time since the start of the span.
+ * Every batch of spans is flushed to the file before export returns.
+ */
+@Slf4j
+public class SpanFileExporter implements SpanExporter {
+
+    private final BufferedWriter writer;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Opens the file for appending, creating it and its directory if they do not exist.
+     *
+     * @param file         File the spans are appended to
+     * @param objectMapper Mapper the spans are written with
+     * @throws IOException If the file cannot be opened
+     */
+    public SpanFileExporter(Path file, ObjectMapper objectMapper) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (SpanData span : spans) {
+                writer.write(objectMapper.writeValueAsString(toJson(span)));
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Writing {} spans to the trace file failed", spans.size(), e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        // Every export is flushed already.
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Closing the trace file failed", e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private static Map<String, Object> toJson(SpanData span) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        if (span.getParentSpanContext().isValid()) {
+            json.put("parentSpanId", span.getParentSpanId());
+        }
+        json.put("name", span.getName());
+        json.put("kind", span.getKind().name());
+        json.put("startEpochNanos", span.getStartEpochNanos());
+        json.put("durationNanos", span.getEndEpochNanos() - span.getStartEpochNanos());
+        json.put("status", span.getStatus().getStatusCode().name());
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+        json.put("attributes", attributes);
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (EventData event : span.getEvents()) {
+            Map<String, Object> eventJson = new LinkedHashMap<>();
+            eventJson.put("name", event.getName());
+            eventJson.put("offsetNanos", event.getEpochNanos() - span.getStartEpochNanos());
+            events.add(eventJson);
+        }
+        json.put("events", events);
+        return json;
+    }
+}
@@ -0,0 +1,54 @@
+package ee.taltech.inbankbackend.config;
+
+import ee.taltech.inbankbackend.audit.AuditEntry;
+import ee.taltech.inbankbackend.audit.AuditJournal;
+import ee.taltech.inbankbackend.audit.DecisionStore;
+import ee.taltech.inbankbackend.endpoint.BatchDecisionResponse;
+import ee.taltech.inbankbackend.endpoint.DecisionRequest;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Settings that let a new instance take requests sooner.<br><br>
+ * Beans are created lazily (spring.main.lazy-initialization), so that framework beans no request needs are never
+ * created. The decision engine and everything it depends on, the audit journal, the decision store and the rule
+ * watcher are still created at startup: they start threads, open files and connections or precompute decisions,
+ * and failures there should stop the instance before it takes traffic rather than fail its first request.<br><br>
+ * The hints tell Spring AOT which types are read and written as JSON outside of request mappings, so that they
+ * keep working in a GraalVM native image.
+ */
+@Configuration
+@ImportRuntimeHints(StartupConfig.JsonTypeHints.class)
+public class StartupConfig {
+
+    /**
+     * Keeps the beans with side effects at startup eager when lazy initialization is enabled.
+     * Static, because it is used before the configuration class itself is created.
+     *
+     * @return Filter excluding the bean types created at startup
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerDecisionBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(DecisionEngine.class, AuditJournal.class,
+                DecisionStore.class, RuleSetWatcher.class);
+    }
+
+    /**
+     * Registers reflection hints for the rules file, audit replay and streamed batch types, which are bound with
+     * ObjectMapper directly instead of through a request mapping.
+     */
+    static class JsonTypeHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), RuleSet.class,
+                    AuditEntry.class, DecisionRequest.class, BatchDecisionResponse.class);
+        }
+    }
+}
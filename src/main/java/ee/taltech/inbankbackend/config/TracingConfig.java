@@ -0,0 +1,35 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Exports the sampled spans, see DecisionTracing. Spring Boot sets up the OpenTelemetry tracer provider, samples
+ * with management.tracing.sampling.probability and hands the finished spans in batches to every SpanExporter bean.
+ * If decision-engine.tracing.file is set, the spans are appended to that file as JSON lines, see SpanFileExporter.
+ */
+@Configuration
+public class TracingConfig {
+
+    public static final String FILE_PROPERTY = "decision-engine.tracing.file";
+
+    /**
+     * @param file         File the spans are appended to
+     * @param objectMapper Mapper the spans are written with
+     * @return Exporter appending the spans to the file
+     * @throws IOException If the file cannot be opened
+     */
+    @Bean
+    @ConditionalOnProperty(FILE_PROPERTY)
+    SpanExporter spanFileExporter(@Value("${" + FILE_PROPERTY + "}") Path file, ObjectMapper objectMapper)
+            throws IOException {
+        return new SpanFileExporter(file, objectMapper);
+    }
+}
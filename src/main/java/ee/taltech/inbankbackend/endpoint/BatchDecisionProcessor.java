@@ -0,0 +1,282 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates a stream of decision requests in parallel and writes one NDJSON result line per request.
+ * The work runs as a pipeline of three stages connected by a bounded queue:<br>
+ * - parse: a dedicated thread reads requests one by one from a JSON array or an NDJSON stream and submits them,<br>
+ * - evaluate: a fixed pool, sized to the available cores, runs the requests through the decision engine,<br>
+ * - write: the calling thread writes the results in input order.<br>
+ * When the writer falls behind, the queue fills up and the parser stops reading, so memory use does not depend
+ * on the size of the input.
+ */
+@Component
+public class BatchDecisionProcessor {
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+    // Marks the end of the input in the queue between the parse and write stages.
+    private static final Future<BatchDecisionResponse> END_OF_INPUT = CompletableFuture.completedFuture(null);
+
+    private final DecisionEvaluator decisionEvaluator;
+    private final ObjectReader requestReader;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService executor;
+    private final int queueCapacity;
+
+    @Autowired
+    BatchDecisionProcessor(DecisionEvaluator decisionEvaluator, ObjectMapper objectMapper) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.decisionEvaluator = decisionEvaluator;
+        this.objectMapper = objectMapper;
+        this.requestReader = objectMapper.readerFor(DecisionRequest.class);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "decision-batch-evaluator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queueCapacity = threads * IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * Evaluates every request of a JSON array.
+     * If the array is malformed, a 400 result is written for the first unreadable element and the batch ends.
+     *
+     * @param body   Request body holding a JSON array of decision requests
+     * @param output Stream the NDJSON results are written to
+     * @return Number of results written
+     * @throws IOException If reading the body or writing the results fails
+     */
+    public long processJsonArray(InputStream body, OutputStream output) throws IOException {
+        return run(new JsonArraySource(requestReader.readValues(body)), output);
+    }
+
+    /**
+     * Evaluates every line of an NDJSON stream. Blank lines are skipped, and a line that is not a valid
+     * request gets a 400 result without ending the batch.
+     *
+     * @param body   Request body holding one decision request per line
+     * @param output Stream the NDJSON results are written to
+     * @return Number of results written
+     * @throws IOException If reading the body or writing the results fails
+     */
+    public long processNdjson(InputStream body, OutputStream output) throws IOException {
+        return run(new NdjsonSource(body), output);
+    }
+
+    /**
+     * Evaluates every line of a local NDJSON file and writes the results to another file.
+     *
+     * @param input  File holding one decision request per line
+     * @param output File the NDJSON results are written to, replaced if it exists
+     * @return Number of results written
+     * @throws IOException If reading or writing a file fails
+     */
+    public long processFile(Path input, Path output) throws IOException {
+        try (InputStream in = Files.newInputStream(input);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            return processNdjson(in, out);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the pipeline: starts the parse stage on its own thread and writes the results on the calling thread.
+     */
+    private long run(RequestSource source, OutputStream output) throws IOException {
+        BlockingQueue<Future<BatchDecisionResponse>> pending = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<IOException> parseFailure = new AtomicReference<>();
+        Thread parser = new Thread(() -> parse(source, pending, parseFailure), "decision-batch-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        long written = 0;
+        try (SequenceWriter writer = objectMapper.writerFor(BatchDecisionResponse.class)
+                .withRootValueSeparator("\n").writeValues(output)) {
+            while (true) {
+                Future<BatchDecisionResponse> next = pending.poll();
+                if (next == null) {
+                    // Hand over what is ready before waiting on the next result.
+                    writer.flush();
+                    next = pending.take();
+                }
+                if (next == END_OF_INPUT) {
+                    break;
+                }
+                writer.write(await(next, written));
+                written++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing batch results");
+        } finally {
+            // Stops the parser if the writer gave up early, for example because the client went away.
+            parser.interrupt();
+        }
+
+        if (parseFailure.get() != null) {
+            throw parseFailure.get();
+        }
+        return written;
+    }
+
+    /**
+     * Parse stage: reads the requests and submits them for evaluation. Blocks while the queue is full.
+     */
+    private void parse(RequestSource source, BlockingQueue<Future<BatchDecisionResponse>> pending,
+                       AtomicReference<IOException> failure) {
+        try (source) {
+            long index = 0;
+            for (Callable<ResponseEntity<DecisionResponse>> task = source.next(); task != null;
+                 task = source.next()) {
+                long taskIndex = index++;
+                Callable<ResponseEntity<DecisionResponse>> evaluation = task;
+                pending.put(executor.submit(() -> toBatchResponse(taskIndex, evaluation.call())));
+            }
+        } catch (IOException e) {
+            failure.set(e);
+        } catch (InterruptedException e) {
+            // The writer has stopped, nobody is waiting for the end marker.
+            return;
+        }
+
+        try {
+            pending.put(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BatchDecisionResponse await(Future<BatchDecisionResponse> result, long index)
+            throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            // DecisionEvaluator maps every error to a response, so this is only reached if the executor fails.
+            DecisionResponse response = new DecisionResponse();
+            response.setErrorMessage(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+            return toBatchResponse(index, ResponseEntity.internalServerError().body(response));
+        }
+    }
+
+    static BatchDecisionResponse toBatchResponse(long index, ResponseEntity<DecisionResponse> result) {
+        DecisionResponse response = result.getBody();
+        return new BatchDecisionResponse(index, result.getStatusCode().value(), response.getLoanAmount(),
+                response.getLoanPeriod(), response.getErrorMessage());
+    }
+
+    static ResponseEntity<DecisionResponse> invalidRequestBody() {
+        DecisionResponse response = new DecisionResponse();
+        response.setErrorMessage(DecisionEngineConstants.INVALID_REQUEST_BODY);
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    /**
+     * Supplies the requests of a batch one at a time.
+     */
+    private interface RequestSource extends Closeable {
+
+        /**
+         * @return The evaluation of the next request, or null at the end of the input
+         * @throws IOException If reading the input fails
+         */
+        Callable<ResponseEntity<DecisionResponse>> next() throws IOException;
+    }
+
+    private final class JsonArraySource implements RequestSource {
+
+        private final MappingIterator<DecisionRequest> requests;
+        private boolean malformed;
+
+        private JsonArraySource(MappingIterator<DecisionRequest> requests) {
+            this.requests = requests;
+        }
+
+        @Override
+        public Callable<ResponseEntity<DecisionResponse>> next() throws IOException {
+            if (malformed) {
+                return null;
+            }
+            try {
+                if (!requests.hasNextValue()) {
+                    return null;
+                }
+                DecisionRequest request = requests.nextValue();
+                return () -> decisionEvaluator.evaluate(request);
+            } catch (JsonProcessingException e) {
+                // The rest of the array cannot be located reliably after a syntax error.
+                malformed = true;
+                return BatchDecisionProcessor::invalidRequestBody;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            requests.close();
+        }
+    }
+
+    private final class NdjsonSource implements RequestSource {
+
+        private final BufferedReader lines;
+
+        private NdjsonSource(InputStream body) {
+            this.lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Callable<ResponseEntity<DecisionResponse>> next() throws IOException {
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    DecisionRequest request = requestReader.readValue(line);
+                    return () -> decisionEvaluator.evaluate(request);
+                } catch (JsonProcessingException e) {
+                    return BatchDecisionProcessor::invalidRequestBody;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+}
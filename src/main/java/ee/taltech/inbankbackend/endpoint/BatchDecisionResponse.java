@@ -0,0 +1,19 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Holds the result of a single request in a batch, written as one line of the NDJSON response.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchDecisionResponse {
+    private long index;
+    private int status;
+    private Integer loanAmount;
+    private Integer loanPeriod;
+    private String errorMessage;
+}
@@ -0,0 +1,144 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.service.Countries;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of the decision endpoint bodies, media type application/vnd.inbank.decision, for
+ * high-volume internal callers. Fields are written at fixed offsets in big-endian byte order, followed by the one
+ * string of the body; there are no field names, and bodies are encoded and decoded straight from their fields.<br>
+ * Request, 14 bytes and the personal code:<br>
+ * - 0: loan amount (long, Long.MIN_VALUE if missing),<br>
+ * - 8: loan period (int),<br>
+ * - 12: country ordinal (byte, -1 if missing),<br>
+ * - 13: length of the personal code in bytes (byte, -1 if missing),<br>
+ * - 14: personal code, UTF-8, at most 127 bytes.<br>
+ * Response, 10 bytes and the error message:<br>
+ * - 0: approved loan amount (int, -1 if none),<br>
+ * - 4: approved loan period (int, -1 if none),<br>
+ * - 8: length of the error message in bytes (short, -1 if none),<br>
+ * - 10: error message, UTF-8, at most 32767 bytes.<br>
+ * Countries are sent by ordinal, so new countries must be added at the end of Countries.
+ */
+final class DecisionBinaryFormat {
+
+    static final String MEDIA_TYPE_VALUE = "application/vnd.inbank.decision";
+    static final int MAX_REQUEST_SIZE = 14 + Byte.MAX_VALUE;
+    static final int MAX_RESPONSE_SIZE = 10 + Short.MAX_VALUE;
+
+    private static final int LOAN_AMOUNT = 0;
+    private static final int LOAN_PERIOD = 8;
+    private static final int COUNTRY = 12;
+    private static final int PERSONAL_CODE_LENGTH = 13;
+    private static final int PERSONAL_CODE = 14;
+    private static final int APPROVED_LOAN_AMOUNT = 0;
+    private static final int APPROVED_LOAN_PERIOD = 4;
+    private static final int ERROR_MESSAGE_LENGTH = 8;
+    private static final int ERROR_MESSAGE = 10;
+    private static final long MISSING_AMOUNT = Long.MIN_VALUE;
+    private static final int MISSING = -1;
+    private static final Countries[] COUNTRIES = Countries.values();
+
+    private DecisionBinaryFormat() {
+    }
+
+    /**
+     * @param request Request to encode
+     * @return The encoded request
+     * @throws IllegalArgumentException If the personal code is longer than 127 bytes
+     */
+    static byte[] encode(DecisionRequest request) {
+        byte[] personalCode = request.getPersonalCode() != null
+                ? request.getPersonalCode().getBytes(StandardCharsets.UTF_8) : null;
+        if (personalCode != null && personalCode.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Personal code cannot be longer than " + Byte.MAX_VALUE + " bytes");
+        }
+        byte[] body = new byte[PERSONAL_CODE + (personalCode != null ? personalCode.length : 0)];
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        buffer.putLong(LOAN_AMOUNT, request.getLoanAmount() != null ? request.getLoanAmount() : MISSING_AMOUNT);
+        buffer.putInt(LOAN_PERIOD, request.getLoanPeriod());
+        buffer.put(COUNTRY, (byte) (request.getCountry() != null ? request.getCountry().ordinal() : MISSING));
+        buffer.put(PERSONAL_CODE_LENGTH, (byte) (personalCode != null ? personalCode.length : MISSING));
+        if (personalCode != null) {
+            System.arraycopy(personalCode, 0, body, PERSONAL_CODE, personalCode.length);
+        }
+        return body;
+    }
+
+    /**
+     * @param body   Buffer holding an encoded request
+     * @param length Number of bytes of the request in the buffer
+     * @return The decoded request
+     * @throws IllegalArgumentException If the body is not a valid request
+     */
+    static DecisionRequest decodeRequest(byte[] body, int length) {
+        require(length >= PERSONAL_CODE, "Binary decision request is shorter than " + PERSONAL_CODE + " bytes");
+        ByteBuffer buffer = ByteBuffer.wrap(body, 0, length);
+        long loanAmount = buffer.getLong(LOAN_AMOUNT);
+        int country = buffer.get(COUNTRY);
+        if (country < MISSING || country >= COUNTRIES.length) {
+            throw new IllegalArgumentException("Unknown country ordinal " + country);
+        }
+        int personalCodeLength = buffer.get(PERSONAL_CODE_LENGTH);
+        require(personalCodeLength >= MISSING && length == PERSONAL_CODE + Math.max(personalCodeLength, 0),
+                "Binary decision request length does not match its personal code length");
+        return new DecisionRequest(
+                personalCodeLength != MISSING
+                        ? new String(body, PERSONAL_CODE, personalCodeLength, StandardCharsets.UTF_8) : null,
+                loanAmount != MISSING_AMOUNT ? loanAmount : null,
+                buffer.getInt(LOAN_PERIOD),
+                country != MISSING ? COUNTRIES[country] : null);
+    }
+
+    /**
+     * @param response Response to encode
+     * @return The encoded response
+     * @throws IllegalArgumentException If the error message is longer than 32767 bytes
+     */
+    static byte[] encode(DecisionResponse response) {
+        byte[] errorMessage = response.getErrorMessage() != null
+                ? response.getErrorMessage().getBytes(StandardCharsets.UTF_8) : null;
+        if (errorMessage != null && errorMessage.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Error message cannot be longer than " + Short.MAX_VALUE + " bytes");
+        }
+        byte[] body = new byte[ERROR_MESSAGE + (errorMessage != null ? errorMessage.length : 0)];
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        buffer.putInt(APPROVED_LOAN_AMOUNT, response.getLoanAmount() != null ? response.getLoanAmount() : MISSING);
+        buffer.putInt(APPROVED_LOAN_PERIOD, response.getLoanPeriod() != null ? response.getLoanPeriod() : MISSING);
+        buffer.putShort(ERROR_MESSAGE_LENGTH, (short) (errorMessage != null ? errorMessage.length : MISSING));
+        if (errorMessage != null) {
+            System.arraycopy(errorMessage, 0, body, ERROR_MESSAGE, errorMessage.length);
+        }
+        return body;
+    }
+
+    /**
+     * @param body   Buffer holding an encoded response
+     * @param length Number of bytes of the response in the buffer
+     * @return The decoded response
+     * @throws IllegalArgumentException If the body is not a valid response
+     */
+    static DecisionResponse decodeResponse(byte[] body, int length) {
+        require(length >= ERROR_MESSAGE, "Binary decision response is shorter than " + ERROR_MESSAGE + " bytes");
+        ByteBuffer buffer = ByteBuffer.wrap(body, 0, length);
+        int errorMessageLength = buffer.getShort(ERROR_MESSAGE_LENGTH);
+        require(errorMessageLength >= MISSING && length == ERROR_MESSAGE + Math.max(errorMessageLength, 0),
+                "Binary decision response length does not match its error message length");
+        int loanAmount = buffer.getInt(APPROVED_LOAN_AMOUNT);
+        int loanPeriod = buffer.getInt(APPROVED_LOAN_PERIOD);
+        DecisionResponse response = new DecisionResponse();
+        response.setLoanAmount(loanAmount != MISSING ? loanAmount : null);
+        response.setLoanPeriod(loanPeriod != MISSING ? loanPeriod : null);
+        response.setErrorMessage(errorMessageLength != MISSING
+                ? new String(body, ERROR_MESSAGE, errorMessageLength, StandardCharsets.UTF_8) : null);
+        return response;
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
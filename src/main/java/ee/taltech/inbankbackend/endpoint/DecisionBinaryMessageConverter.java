@@ -0,0 +1,50 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes the decision endpoint bodies in the compact binary format of DecisionBinaryFormat, chosen by
+ * content negotiation: requests sent with Content-Type application/vnd.inbank.decision are read with it, and
+ * responses are written with it when the Accept header asks for it. JSON stays the default.
+ */
+public class DecisionBinaryMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.valueOf(DecisionBinaryFormat.MEDIA_TYPE_VALUE);
+
+    public DecisionBinaryMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == DecisionRequest.class || clazz == DecisionResponse.class;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        boolean request = clazz == DecisionRequest.class;
+        // One byte more than the largest valid body, so that a longer body is noticed without reading all of it.
+        byte[] body = inputMessage.getBody().readNBytes((request ? DecisionBinaryFormat.MAX_REQUEST_SIZE
+                : DecisionBinaryFormat.MAX_RESPONSE_SIZE) + 1);
+        try {
+            return request ? DecisionBinaryFormat.decodeRequest(body, body.length)
+                    : DecisionBinaryFormat.decodeResponse(body, body.length);
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        byte[] encoded = body instanceof DecisionRequest request ? DecisionBinaryFormat.encode(request)
+                : DecisionBinaryFormat.encode((DecisionResponse) body);
+        outputMessage.getHeaders().setContentLength(encoded.length);
+        outputMessage.getBody().write(encoded);
+    }
+}
@@ -1,30 +1,45 @@
 package ee.taltech.inbankbackend.endpoint;
 
-import ee.taltech.inbankbackend.exceptions.*;
-import ee.taltech.inbankbackend.service.Decision;
-import ee.taltech.inbankbackend.service.DecisionEngine;
-import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.DecisionTracing;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/loan")
 @CrossOrigin
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class DecisionEngineController {
 
-    private final DecisionEngine decisionEngine;
-    private final DecisionResponse response;
+    private final DecisionEvaluator decisionEvaluator;
+    private final BatchDecisionProcessor batchDecisionProcessor;
+    private final LoanOffersEvaluator loanOffersEvaluator;
+    private final IdempotentDecisionCache idempotentDecisionCache;
+    private final DecisionTracing decisionTracing;
 
     @Autowired
-    DecisionEngineController(DecisionEngine decisionEngine, DecisionResponse response) {
-        this.decisionEngine = decisionEngine;
-        this.response = response;
+    DecisionEngineController(DecisionEvaluator decisionEvaluator, BatchDecisionProcessor batchDecisionProcessor,
+                             LoanOffersEvaluator loanOffersEvaluator, IdempotentDecisionCache idempotentDecisionCache,
+                             DecisionTracing decisionTracing) {
+        this.decisionEvaluator = decisionEvaluator;
+        this.batchDecisionProcessor = batchDecisionProcessor;
+        this.loanOffersEvaluator = loanOffersEvaluator;
+        this.idempotentDecisionCache = idempotentDecisionCache;
+        this.decisionTracing = decisionTracing;
     }
 
     /**
@@ -38,39 +53,72 @@ public class DecisionEngineController {
      * - If an unexpected error occurs, the endpoint returns a 500 Internal Server Error
      *   with a generic error message.<br>
      * - If a valid loan is found, the endpoint returns a 200 OK with a JSON body containing:
-     *   the approved loan amount, loan period, and no error message.
+     *   the approved loan amount, loan period, and no error message.<br>
+     * - If an Idempotency-Key header is sent, a retry with the same key and body gets the response of the first
+     *   request byte for byte, see IdempotentDecisionCache.<br>
+     * - On a traced request, the time the request body was bound is marked on the span of the HTTP request, and
+     *   the decision is traced as its child, see DecisionTracing.
      *
-     * @param request The request body containing the customer's personal ID code, requested loan amount, and loan period
+     * @param request        The request body containing the customer's personal ID code, requested loan amount,
+     *                       and loan period
+     * @param idempotencyKey Key naming the request across retries, may be null
+     * @param headers        Request headers, of which Accept picks the format of a response that is kept
      * @return A ResponseEntity with a DecisionResponse body containing the approved loan amount, period,
      *         and error message if applicable
      */
     @PostMapping("/decision")
-    public ResponseEntity<DecisionResponse> requestDecision(@RequestBody DecisionRequest request) {
-        DecisionResponse response = new DecisionResponse();
-
-        try {
-            Decision decision = decisionEngine
-                    .calculateApprovedLoan(request.getPersonalCode(), request.getLoanAmount(), request.getLoanPeriod(),
-                            request.getCountry());
-
-            response.setLoanAmount(decision.getLoanAmount());
-            response.setLoanPeriod(decision.getLoanPeriod());
-            response.setErrorMessage(decision.getErrorMessage());
-
-            return ResponseEntity.ok(response);
+    public ResponseEntity<?> requestDecision(@RequestBody DecisionRequest request,
+                                             @RequestHeader(value = IdempotentDecisionCache.KEY_HEADER,
+                                                     required = false) String idempotencyKey,
+                                             @RequestHeader HttpHeaders headers) {
+        decisionTracing.addEvent(DecisionTracing.REQUEST_BOUND);
+        if (idempotencyKey == null) {
+            return decisionEvaluator.evaluate(request);
+        }
+        return idempotentDecisionCache.evaluate(idempotencyKey, request, headers.getAccept());
+    }
 
-        } catch (InvalidPersonalCodeException | InvalidLoanAmountException | InvalidLoanPeriodException |
-                 InvalidAgeException e) {
-            response.setErrorMessage(e.getMessage());
-            return ResponseEntity.badRequest().body(response);
+    /**
+     * A REST endpoint that returns the highest approvable loan amount for every loan period at once,
+     * so that a client can show all offers without asking for a decision per period.
+     * Errors are reported with the same statuses as by the decision endpoint. An approved response carries an
+     * ETag and may be cached privately; a request with a matching If-None-Match header gets 304 Not Modified.
+     *
+     * @param personalCode The customer's personal ID code
+     * @param country      Country where the customer applies for the loan
+     * @return A ResponseEntity with a LoanOffersResponse body containing the first loan period and the amounts,
+     *         or an error message
+     */
+    @GetMapping("/offers")
+    public ResponseEntity<LoanOffersResponse> requestOffers(@RequestParam String personalCode,
+                                                            @RequestParam Countries country) {
+        return loanOffersEvaluator.evaluate(personalCode, country);
+    }
 
-        } catch (NoValidLoanException e) {
-            response.setErrorMessage(e.getMessage());
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+    /**
+     * A REST endpoint that evaluates a JSON array of loan decision requests in parallel.
+     * The response is an NDJSON stream with one line per request, holding the request's index, the HTTP status
+     * the single decision endpoint would have returned for it, and the same body fields.
+     *
+     * @param body The request body containing a JSON array of decision requests
+     * @return A ResponseEntity streaming the per-request results
+     */
+    @PostMapping(value = "/decisions/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> requestBatchDecision(InputStream body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(output -> batchDecisionProcessor.processJsonArray(body, output));
+    }
 
-        } catch (Exception e) {
-            response.setErrorMessage(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
-            return ResponseEntity.internalServerError().body(response);
-        }
+    /**
+     * A REST endpoint that evaluates an NDJSON stream of loan decision requests in parallel.
+     * Works like the JSON array variant, with the index counting the non-blank lines of the request body.
+     *
+     * @param body The request body containing one decision request per line
+     * @return A ResponseEntity streaming the per-request results
+     */
+    @PostMapping(value = "/decisions/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> requestBatchDecisionStream(InputStream body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(output -> batchDecisionProcessor.processNdjson(body, output));
     }
 }
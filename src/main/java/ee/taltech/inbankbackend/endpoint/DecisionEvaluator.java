@@ -0,0 +1,200 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.audit.AuditJournal;
+import ee.taltech.inbankbackend.audit.DecisionStore;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionCoalescer;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+import ee.taltech.inbankbackend.service.DecisionTracing;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a single decision request through the decision engine and maps the outcome to an HTTP status.
+ * Requests go through DecisionCoalescer, so identical requests in flight at the same time are decided once.
+ * Every decision returned is recorded in the audit journal and saved in the decision store; on a traced request,
+ * this is traced as a span of its own, as a request thread may have to wait for room in their queues.
+ * On the asynchronous path the thread completing the decision may be an event loop, so it only records the decision
+ * if there is room right away; otherwise the audit thread waits for room and the response waits with it. That thread
+ * may not carry the trace of the request, so the audit span is started in the context the request was submitted in.
+ * A decision that cannot be recorded is logged and still returned.
+ * Shared by the single and batch decision endpoints, so both report errors the same way.
+ */
+@Slf4j
+@Component
+public class DecisionEvaluator {
+
+    private final DecisionCoalescer decisionCoalescer;
+    private final AuditJournal auditJournal;
+    private final DecisionStore decisionStore;
+    private final DecisionTracing decisionTracing;
+    // Waits for room in the audit journal and decision store queues for asynchronous requests. One thread is
+    // enough, as each queue is drained by a single writer.
+    private final ExecutorService auditExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "decision-audit-waiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    DecisionEvaluator(DecisionCoalescer decisionCoalescer, AuditJournal auditJournal, DecisionStore decisionStore,
+                      DecisionTracing decisionTracing) {
+        this.decisionCoalescer = decisionCoalescer;
+        this.auditJournal = auditJournal;
+        this.decisionStore = decisionStore;
+        this.decisionTracing = decisionTracing;
+    }
+
+    /**
+     * Evaluates a loan decision request.<br><br>
+     * - If the personal code, loan amount, or loan period is invalid, the status is 400 Bad Request
+     *   with an error message, and null loan details.<br>
+     * - If no valid loan can be calculated, the status is 404 Not Found
+     *   with an error message explaining the reason.<br>
+     * - If the credit registry cannot be reached, the status is 503 Service Unavailable
+     *   with an error message.<br>
+     * - If an unexpected error occurs, the status is 500 Internal Server Error
+     *   with a generic error message.<br>
+     * - If a valid loan is found, the status is 200 OK with the approved loan amount, loan period,
+     *   and no error message.
+     *
+     * @param request The customer's personal ID code, requested loan amount, loan period and country
+     * @return A ResponseEntity with a DecisionResponse body containing the approved loan amount, period,
+     *         and error message if applicable
+     */
+    public ResponseEntity<DecisionResponse> evaluate(DecisionRequest request) {
+        try {
+            return toResponse(audit(request, decisionCoalescer.calculateApprovedLoan(request.getPersonalCode(),
+                    request.getLoanAmount(), request.getLoanPeriod(), request.getCountry())));
+        } catch (Exception e) {
+            return unexpectedError();
+        }
+    }
+
+    /**
+     * Evaluates a loan decision request like evaluate, without waiting for the credit modifier provider,
+     * so that no thread is blocked while an external credit registry answers.
+     *
+     * @param request The customer's personal ID code, requested loan amount, loan period and country
+     * @return A future of the ResponseEntity that evaluate would return, which never completes exceptionally
+     */
+    public CompletableFuture<ResponseEntity<DecisionResponse>> evaluateAsync(DecisionRequest request) {
+        try {
+            Context context = Context.current();
+            return decisionCoalescer.calculateApprovedLoanAsync(request.getPersonalCode(), request.getLoanAmount(),
+                            request.getLoanPeriod(), request.getCountry())
+                    .thenCompose(context.wrapFunction(decision -> auditAsync(request, decision)))
+                    .handle((decision, failure) -> failure == null ? toResponse(decision) : unexpectedError());
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(unexpectedError());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        auditExecutor.shutdownNow();
+    }
+
+    /**
+     * Records a decision in the audit journal and the decision store, waiting for room in their queues.
+     *
+     * @return The decision
+     */
+    private Decision audit(DecisionRequest request, Decision decision) {
+        Span span = decisionTracing.startChild(DecisionTracing.AUDIT);
+        try {
+            auditJournal.append(request.getPersonalCode(), request.getLoanAmount(), request.getLoanPeriod(),
+                    request.getCountry(), decision);
+            decisionStore.save(request.getPersonalCode(), request.getLoanAmount(), request.getLoanPeriod(),
+                    request.getCountry(), decision);
+        } catch (RuntimeException e) {
+            log.error("Recording a decision failed", e);
+        } finally {
+            span.end();
+        }
+        return decision;
+    }
+
+    /**
+     * Records a decision like audit without blocking the calling thread. If a queue is full, the decision is
+     * recorded there on the audit thread once there is room.
+     *
+     * @return A future of the decision, completed once it is recorded
+     */
+    private CompletableFuture<Decision> auditAsync(DecisionRequest request, Decision decision) {
+        Span span = decisionTracing.startChild(DecisionTracing.AUDIT);
+        try {
+            boolean journaled = auditJournal.tryAppend(request.getPersonalCode(), request.getLoanAmount(),
+                    request.getLoanPeriod(), request.getCountry(), decision);
+            boolean stored = decisionStore.trySave(request.getPersonalCode(), request.getLoanAmount(),
+                    request.getLoanPeriod(), request.getCountry(), decision);
+            if (journaled && stored) {
+                span.end();
+                return CompletableFuture.completedFuture(decision);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    if (!journaled) {
+                        auditJournal.append(request.getPersonalCode(), request.getLoanAmount(),
+                                request.getLoanPeriod(), request.getCountry(), decision);
+                    }
+                    if (!stored) {
+                        decisionStore.save(request.getPersonalCode(), request.getLoanAmount(),
+                                request.getLoanPeriod(), request.getCountry(), decision);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Recording a decision failed", e);
+                } finally {
+                    span.end();
+                }
+                return decision;
+            }, auditExecutor);
+        } catch (RuntimeException e) {
+            log.error("Recording a decision failed", e);
+            span.end();
+            return CompletableFuture.completedFuture(decision);
+        }
+    }
+
+    private static ResponseEntity<DecisionResponse> toResponse(Decision decision) {
+        DecisionResponse response = new DecisionResponse();
+        response.setLoanAmount(decision.getLoanAmount());
+        response.setLoanPeriod(decision.getLoanPeriod());
+        response.setErrorMessage(decision.getErrorMessage());
+        return ResponseEntity.status(statusOf(decision.getOutcome())).body(response);
+    }
+
+    /**
+     * @return Response reporting an unexpected error
+     */
+    static ResponseEntity<DecisionResponse> unexpectedError() {
+        DecisionResponse response = new DecisionResponse();
+        response.setErrorMessage(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+        return ResponseEntity.internalServerError().body(response);
+    }
+
+    /**
+     * @param outcome Outcome of a decision
+     * @return HTTP status the outcome is reported with
+     */
+    static HttpStatus statusOf(DecisionOutcome outcome) {
+        if (outcome == DecisionOutcome.APPROVED) {
+            return HttpStatus.OK;
+        }
+        if (outcome == DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE) {
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        return outcome.isInvalidInput() ? HttpStatus.BAD_REQUEST : HttpStatus.NOT_FOUND;
+    }
+}
@@ -0,0 +1,44 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Re-scores a local NDJSON file of decision requests at startup, for example after a rule change.
+ * Enabled by setting decision-engine.reprocess.input and decision-engine.reprocess.output. Combine with
+ * spring.main.web-application-type=none to exit once the file is processed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty("decision-engine.reprocess.input")
+public class DecisionReprocessingRunner implements ApplicationRunner {
+
+    private final BatchDecisionProcessor batchDecisionProcessor;
+    private final Path input;
+    private final Path output;
+
+    @Autowired
+    DecisionReprocessingRunner(BatchDecisionProcessor batchDecisionProcessor,
+                               @Value("${decision-engine.reprocess.input}") Path input,
+                               @Value("${decision-engine.reprocess.output}") Path output) {
+        this.batchDecisionProcessor = batchDecisionProcessor;
+        this.input = input;
+        this.output = output;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        long start = System.nanoTime();
+        long written = batchDecisionProcessor.processFile(input, output);
+        log.info("Reprocessed {} decision requests from {} into {} in {} ms", written, input, output,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,177 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Makes the decision endpoint idempotent for requests with an Idempotency-Key header, so that a client retrying
+ * after a lost response gets the original response instead of a new decision, audit record and stored decision.
+ * <br><br>
+ * The response to the first request with a key is serialized once and kept with the request. A later request with
+ * the same key and request gets the same status and the same bytes, in the media type of the first response, with
+ * an Idempotent-Replayed header; a request with the same key and another request gets 422 Unprocessable Entity.
+ * Requests with a key whose decision is still being made wait for it instead of deciding again. Server errors are
+ * returned to the requests waiting for them but not kept, so that a later retry is decided again.
+ * The cache is bounded by size and a key can be used again decision-engine.idempotency.time-to-live after its
+ * first request.
+ */
+@Component
+public class IdempotentDecisionCache {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    // Room for a UUID with a client prefix, while bounding the memory a key can take.
+    static final int MAXIMUM_KEY_LENGTH = 255;
+
+    private final DecisionEvaluator decisionEvaluator;
+    private final DecisionMetrics decisionMetrics;
+    private final ObjectWriter responseWriter;
+    private final Cache<String, Entry> entries;
+
+    @Autowired
+    public IdempotentDecisionCache(DecisionEvaluator decisionEvaluator, DecisionMetrics decisionMetrics,
+                                   ObjectMapper objectMapper,
+                                   @Value("${decision-engine.idempotency.maximum-size:100000}") long maximumSize,
+                                   @Value("${decision-engine.idempotency.time-to-live:1h}") Duration timeToLive) {
+        this.decisionEvaluator = decisionEvaluator;
+        this.decisionMetrics = decisionMetrics;
+        this.responseWriter = objectMapper.writerFor(DecisionResponse.class);
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+    }
+
+    /**
+     * Evaluates a decision request with an idempotency key, see DecisionEvaluator.evaluate.
+     * Waits for the decision of an earlier request with the same key if it is still being made.
+     *
+     * @param key     Value of the Idempotency-Key header
+     * @param request The customer's personal ID code, requested loan amount, loan period and country
+     * @param accept  Media types accepted by the client, the binary format is used if it is preferred to JSON
+     * @return A ResponseEntity with the serialized DecisionResponse of the first request with the key,
+     *         or a DecisionResponse with an error message if the key cannot be used
+     */
+    public ResponseEntity<?> evaluate(String key, DecisionRequest request, List<MediaType> accept) {
+        return respond(key, request, preferredType(accept),
+                () -> CompletableFuture.completedFuture(decisionEvaluator.evaluate(request))).join();
+    }
+
+    /**
+     * Evaluates a decision request with an idempotency key like evaluate, without blocking a thread while the
+     * decision is made, and always in JSON.
+     *
+     * @param key     Value of the Idempotency-Key header
+     * @param request The customer's personal ID code, requested loan amount, loan period and country
+     * @return A future of the ResponseEntity that evaluate would return, which never completes exceptionally
+     */
+    public CompletableFuture<ResponseEntity<?>> evaluateAsync(String key, DecisionRequest request) {
+        return respond(key, request, MediaType.APPLICATION_JSON, () -> decisionEvaluator.evaluateAsync(request));
+    }
+
+    private CompletableFuture<ResponseEntity<?>> respond(
+            String key, DecisionRequest request, MediaType contentType,
+            Supplier<CompletableFuture<ResponseEntity<DecisionResponse>>> evaluation) {
+        if (key.isEmpty() || key.length() > MAXIMUM_KEY_LENGTH) {
+            return CompletableFuture.completedFuture(
+                    error(HttpStatus.BAD_REQUEST, DecisionEngineConstants.INVALID_IDEMPOTENCY_KEY));
+        }
+        Entry entry = new Entry(request, new CompletableFuture<>());
+        Entry first = entries.asMap().putIfAbsent(key, entry);
+        if (first != null) {
+            if (!first.request().equals(request)) {
+                decisionMetrics.recordIdempotentConflict();
+                return CompletableFuture.completedFuture(
+                        error(HttpStatus.UNPROCESSABLE_ENTITY, DecisionEngineConstants.IDEMPOTENCY_KEY_REUSED));
+            }
+            decisionMetrics.recordIdempotentReplay();
+            return toResponse(first, true);
+        }
+        evaluation.get().whenComplete((response, failure) ->
+                store(key, entry, contentType, failure == null ? response : DecisionEvaluator.unexpectedError()));
+        return toResponse(entry, false);
+    }
+
+    private void store(String key, Entry entry, MediaType contentType, ResponseEntity<DecisionResponse> response) {
+        if (response.getStatusCode().is5xxServerError()) {
+            entries.asMap().remove(key, entry);
+        }
+        try {
+            byte[] body = contentType.equals(DecisionBinaryMessageConverter.MEDIA_TYPE)
+                    ? DecisionBinaryFormat.encode(response.getBody())
+                    : responseWriter.writeValueAsBytes(response.getBody());
+            entry.response().complete(new StoredResponse(response.getStatusCode(), contentType, body));
+        } catch (IOException e) {
+            entries.asMap().remove(key, entry);
+            entry.response().completeExceptionally(e);
+        }
+    }
+
+    private static CompletableFuture<ResponseEntity<?>> toResponse(Entry entry, boolean replayed) {
+        return entry.response().handle((stored, failure) -> failure == null
+                ? stored.toResponseEntity(replayed) : DecisionEvaluator.unexpectedError());
+    }
+
+    /**
+     * Picks the format the decision endpoint would write the response in for the given Accept header:
+     * JSON unless the binary format is named and preferred, as a client accepting any media type gets JSON.
+     */
+    static MediaType preferredType(List<MediaType> accept) {
+        List<MediaType> sorted = new ArrayList<>(accept);
+        MimeTypeUtils.sortBySpecificity(sorted);
+        for (MediaType type : sorted) {
+            if (type.isWildcardSubtype() || type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON;
+            }
+            if (type.isCompatibleWith(DecisionBinaryMessageConverter.MEDIA_TYPE)) {
+                return DecisionBinaryMessageConverter.MEDIA_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String errorMessage) {
+        DecisionResponse response = new DecisionResponse();
+        response.setErrorMessage(errorMessage);
+        return ResponseEntity.status(status).body(response);
+    }
+
+    /**
+     * The first request with a key, and its response once it has been decided.
+     */
+    private record Entry(DecisionRequest request, CompletableFuture<StoredResponse> response) {
+    }
+
+    /**
+     * A response as it was written to the client.
+     */
+    private record StoredResponse(HttpStatusCode status, MediaType contentType, byte[] body) {
+
+        ResponseEntity<byte[]> toResponseEntity(boolean replayed) {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(status).contentType(contentType);
+            if (replayed) {
+                builder.header(REPLAYED_HEADER, Boolean.TRUE.toString());
+            }
+            return builder.body(body);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.LoanOffers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a loan offers request through the decision engine and maps the outcome to an HTTP status, like
+ * DecisionEvaluator does for a single decision. Offers are not audited, since no loan is decided.
+ * The offers depend only on the credit modifier of the applicant and on the rule set, so an approved response
+ * carries an ETag made of the rule set version, the fingerprint of its values and the credit modifier, and may be
+ * cached privately for max-age. The fingerprint changes the ETag even if changed rules kept their version.
+ * A request with a matching If-None-Match header is answered with 304 Not Modified and no body by Spring.
+ */
+@Component
+public class LoanOffersEvaluator {
+
+    private final DecisionEngine decisionEngine;
+    private final CacheControl cacheControl;
+
+    @Autowired
+    LoanOffersEvaluator(DecisionEngine decisionEngine,
+                        @Value("${decision-engine.offers.max-age:60s}") Duration maxAge) {
+        this.decisionEngine = decisionEngine;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePrivate();
+    }
+
+    /**
+     * Evaluates a loan offers request.<br><br>
+     * - If the personal code or the age is invalid, the status is 400 Bad Request with an error message.<br>
+     * - If no loan can be offered for any period, the status is 404 Not Found with an error message.<br>
+     * - If the credit registry cannot be reached, the status is 503 Service Unavailable with an error message.<br>
+     * - If an unexpected error occurs, the status is 500 Internal Server Error with a generic error message.<br>
+     * - Otherwise the status is 200 OK with the amounts per period, an ETag and a Cache-Control header.
+     *
+     * @param personalCode The customer's personal ID code
+     * @param country      Country where the customer applies for the loan
+     * @return A ResponseEntity with a LoanOffersResponse body
+     */
+    public ResponseEntity<LoanOffersResponse> evaluate(String personalCode, Countries country) {
+        try {
+            return toResponse(decisionEngine.calculateOffers(personalCode, country));
+        } catch (Exception e) {
+            return unexpectedError();
+        }
+    }
+
+    /**
+     * Evaluates a loan offers request like evaluate, without waiting for the credit modifier provider.
+     *
+     * @param personalCode The customer's personal ID code
+     * @param country      Country where the customer applies for the loan
+     * @return A future of the ResponseEntity that evaluate would return, which never completes exceptionally
+     */
+    public CompletableFuture<ResponseEntity<LoanOffersResponse>> evaluateAsync(String personalCode,
+                                                                              Countries country) {
+        try {
+            return decisionEngine.calculateOffersAsync(personalCode, country)
+                    .handle((offers, failure) -> failure == null ? toResponse(offers) : unexpectedError());
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(unexpectedError());
+        }
+    }
+
+    private ResponseEntity<LoanOffersResponse> toResponse(LoanOffers offers) {
+        LoanOffersResponse response = new LoanOffersResponse();
+        response.setErrorMessage(offers.getErrorMessage());
+        if (!offers.isApproved()) {
+            return ResponseEntity.status(DecisionEvaluator.statusOf(offers.getOutcome())).body(response);
+        }
+        response.setFirstLoanPeriod(offers.getFirstLoanPeriod());
+        response.setLoanAmounts(offers.getLoanAmounts());
+        return ResponseEntity.ok()
+                .eTag(offers.getRuleSetVersion() + "-" + Long.toHexString(offers.getRuleSetFingerprint()) + "-"
+                        + offers.getCreditModifier())
+                .cacheControl(cacheControl)
+                .body(response);
+    }
+
+    private static ResponseEntity<LoanOffersResponse> unexpectedError() {
+        LoanOffersResponse response = new LoanOffersResponse();
+        response.setErrorMessage(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+        return ResponseEntity.internalServerError().body(response);
+    }
+}
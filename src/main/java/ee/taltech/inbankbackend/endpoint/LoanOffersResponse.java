@@ -0,0 +1,14 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import lombok.Data;
+
+/**
+ * Holds the response data of the loan offers endpoint: the highest approvable amount for every loan period,
+ * as one array starting at firstLoanPeriod, with 0 for periods without an offer.
+ */
+@Data
+public class LoanOffersResponse {
+    private Integer firstLoanPeriod;
+    private int[] loanAmounts;
+    private String errorMessage;
+}
@@ -0,0 +1,183 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import io.micrometer.context.ContextSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reactive variant of DecisionEngineController, served by Spring WebFlux on Netty when the reactive profile
+ * is active. The endpoints, statuses and bodies are the same as in the servlet variant.
+ * Batch requests are decoded as they arrive and evaluated on the parallel scheduler, with the number of
+ * requests in flight bounded, so a slow client holds back reading of the request body instead of filling
+ * memory. No request thread waits on a connection or on the credit registry, so a single node can keep many
+ * connections open.<br><br>
+ * WebFlux keeps the observation of a request in the Reactor context rather than on a thread, so it is made current
+ * while a decision is submitted, and the decision is traced as a child of the request span as on the servlet stack.
+ */
+@RestController
+@RequestMapping("/loan")
+@CrossOrigin
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveDecisionEngineController {
+
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final DecisionEvaluator decisionEvaluator;
+    private final LoanOffersEvaluator loanOffersEvaluator;
+    private final IdempotentDecisionCache idempotentDecisionCache;
+    private final ObjectReader requestReader;
+    private final int maxInFlight;
+
+    @Autowired
+    ReactiveDecisionEngineController(DecisionEvaluator decisionEvaluator, LoanOffersEvaluator loanOffersEvaluator,
+                                     IdempotentDecisionCache idempotentDecisionCache, ObjectMapper objectMapper) {
+        this.decisionEvaluator = decisionEvaluator;
+        this.loanOffersEvaluator = loanOffersEvaluator;
+        this.idempotentDecisionCache = idempotentDecisionCache;
+        this.requestReader = objectMapper.readerFor(DecisionRequest.class);
+        this.maxInFlight = Schedulers.DEFAULT_POOL_SIZE * IN_FLIGHT_PER_THREAD;
+    }
+
+    /**
+     * A REST endpoint that handles requests for loan decisions, see DecisionEngineController.requestDecision.
+     * The request is evaluated on the thread that decoded it, or on the thread that receives the credit modifier
+     * if the credit registry has to be asked. Requests with an Idempotency-Key header that wait for the decision
+     * of an earlier request with the same key do not hold a thread meanwhile.
+     *
+     * @param request        The request body containing the customer's personal ID code, requested loan amount,
+     *                       and loan period
+     * @param idempotencyKey Key naming the request across retries, may be null
+     * @return A Mono of a ResponseEntity with a DecisionResponse body containing the approved loan amount,
+     *         period, and error message if applicable
+     */
+    @PostMapping("/decision")
+    public Mono<? extends ResponseEntity<?>> requestDecision(
+            @RequestBody Mono<DecisionRequest> request,
+            @RequestHeader(value = IdempotentDecisionCache.KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return request.flatMap(this::evaluate);
+        }
+        return request.flatMap(decisionRequest -> inRequestContext(
+                () -> idempotentDecisionCache.evaluateAsync(idempotencyKey, decisionRequest)));
+    }
+
+    /**
+     * A REST endpoint that returns the highest approvable loan amount for every loan period at once,
+     * see DecisionEngineController.requestOffers.
+     *
+     * @param personalCode The customer's personal ID code
+     * @param country      Country where the customer applies for the loan
+     * @return A Mono of a ResponseEntity with a LoanOffersResponse body containing the first loan period and
+     *         the amounts, or an error message
+     */
+    @GetMapping("/offers")
+    public Mono<ResponseEntity<LoanOffersResponse>> requestOffers(@RequestParam String personalCode,
+                                                                  @RequestParam Countries country) {
+        return Mono.fromFuture(loanOffersEvaluator.evaluateAsync(personalCode, country));
+    }
+
+    /**
+     * A REST endpoint that evaluates a JSON array of loan decision requests in parallel.
+     * If the array is malformed, a 400 result is written for the first unreadable element and the batch ends.
+     *
+     * @param requests The request body containing a JSON array of decision requests
+     * @return A Flux of per-request results, written as NDJSON in input order
+     */
+    @PostMapping(value = "/decisions/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchDecisionResponse> requestBatchDecision(@RequestBody Flux<DecisionRequest> requests) {
+        return evaluateAll(requests
+                .map(request -> Mono.defer(() -> evaluate(request)))
+                // The rest of the array cannot be located reliably after a syntax error.
+                .onErrorResume(DecodingException.class, e -> Mono.just(invalidRequestBody())));
+    }
+
+    /**
+     * A REST endpoint that evaluates an NDJSON stream of loan decision requests in parallel.
+     * Blank lines are skipped, and a line that is not a valid request gets a 400 result without ending the batch.
+     *
+     * @param lines The request body containing one decision request per line
+     * @return A Flux of per-request results, written as NDJSON in input order
+     */
+    @PostMapping(value = "/decisions/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchDecisionResponse> requestBatchDecisionStream(@RequestBody Flux<String> lines) {
+        return evaluateAll(lines
+                .filter(line -> !line.isBlank())
+                .map(this::toEvaluation));
+    }
+
+    private Mono<ResponseEntity<DecisionResponse>> toEvaluation(String line) {
+        try {
+            DecisionRequest request = requestReader.readValue(line);
+            return Mono.defer(() -> evaluate(request));
+        } catch (JsonProcessingException e) {
+            return invalidRequestBody();
+        }
+    }
+
+    private Mono<ResponseEntity<DecisionResponse>> evaluate(DecisionRequest request) {
+        return inRequestContext(() -> decisionEvaluator.evaluateAsync(request));
+    }
+
+    /**
+     * Submits an evaluation with the thread locals of the Reactor context set, the observation of the request
+     * among them, so that its spans belong to the trace of the request.
+     */
+    private static <T> Mono<T> inRequestContext(Supplier<CompletableFuture<T>> evaluation) {
+        return Mono.deferContextual(context -> {
+            ContextSnapshot.Scope scope = ContextSnapshot.setAllThreadLocalsFrom(context);
+            try {
+                return Mono.fromFuture(evaluation.get());
+            } finally {
+                scope.close();
+            }
+        });
+    }
+
+    private static Mono<ResponseEntity<DecisionResponse>> invalidRequestBody() {
+        return Mono.fromSupplier(BatchDecisionProcessor::invalidRequestBody);
+    }
+
+    /**
+     * Runs the evaluations on the parallel scheduler and emits their results in input order.
+     */
+    private Flux<BatchDecisionResponse> evaluateAll(Flux<Mono<ResponseEntity<DecisionResponse>>> evaluations) {
+        return evaluations
+                .index()
+                .flatMapSequential(indexed -> indexed.getT2()
+                        .subscribeOn(Schedulers.parallel())
+                        .onErrorResume(e -> Mono.just(unexpectedError()))
+                        .map(result -> BatchDecisionProcessor.toBatchResponse(indexed.getT1(), result)),
+                        maxInFlight);
+    }
+
+    private static ResponseEntity<DecisionResponse> unexpectedError() {
+        // DecisionEvaluator maps every error to a response, so this is only reached if the scheduler fails.
+        DecisionResponse response = new DecisionResponse();
+        response.setErrorMessage(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+        return ResponseEntity.internalServerError().body(response);
+    }
+}
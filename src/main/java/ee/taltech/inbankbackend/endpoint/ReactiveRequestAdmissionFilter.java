@@ -0,0 +1,61 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Applies RequestAdmission to decision requests on the reactive stack, like RequestAdmissionFilter does on the
+ * servlet stack. An admitted request is released when its response completes, fails or is cancelled.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRequestAdmissionFilter implements WebFilter {
+
+    private static final String DECISION_PATH = "/loan/decision";
+
+    private final RequestAdmission requestAdmission;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    ReactiveRequestAdmissionFilter(RequestAdmission requestAdmission, ObjectMapper objectMapper) {
+        this.requestAdmission = requestAdmission;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!DECISION_PATH.equals(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        RequestAdmission.Admission admission = requestAdmission.admit(
+                exchange.getRequest().getHeaders().getFirst(requestAdmission.getClientHeader()));
+        if (!admission.isAdmitted()) {
+            return refuse(exchange.getResponse(), admission);
+        }
+        return chain.filter(exchange).doFinally(signal -> requestAdmission.release());
+    }
+
+    private Mono<Void> refuse(ServerHttpResponse response, RequestAdmission.Admission admission) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(admission.toResponse());
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
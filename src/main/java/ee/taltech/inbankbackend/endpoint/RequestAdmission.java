@@ -0,0 +1,184 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a decision request may run, before its body is read and before it reaches the decision engine,
+ * so that one misbehaving API client cannot degrade the decisions of the others:<br>
+ * - Rate limit: every API client, named by the header in decision-engine.admission.client-header, has a token
+ *   bucket refilled at requests-per-second up to burst tokens. Requests without the header are not rate
+ *   limited.<br>
+ * - Load shedding: beyond max-concurrent-requests decision requests running at once, requests are refused rather
+ *   than queued.<br>
+ * Both are lock-free. A bucket is a single AtomicLong holding the time at which it would be full again
+ * (the generic cell rate algorithm), taken by one compare-and-set per request, so clients never contend with each
+ * other. A bucket idle for longer than it takes to fill is full anyway, so idle buckets are forgotten.
+ */
+@Component
+public class RequestAdmission {
+
+    public static final String ENABLED_PROPERTY = "decision-engine.admission.enabled";
+    private static final double NANOS_PER_SECOND = 1e9;
+    // Idle buckets are kept at least this long, so that clients with tiny buckets do not churn the cache.
+    private static final long MINIMUM_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final boolean enabled;
+    private final String clientHeader;
+    // Time one token takes to come back, and the time an empty bucket takes to fill up.
+    private final long tokenNanos;
+    private final long burstNanos;
+    private final int maxConcurrentRequests;
+    private final Cache<String, AtomicLong> buckets;
+    private final AtomicInteger running = new AtomicInteger();
+    private final DecisionMetrics decisionMetrics;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public RequestAdmission(DecisionMetrics decisionMetrics,
+                            @Value("${" + ENABLED_PROPERTY + ":true}") boolean enabled,
+                            @Value("${decision-engine.admission.client-header:X-Client-Id}") String clientHeader,
+                            @Value("${decision-engine.admission.requests-per-second:100}") double requestsPerSecond,
+                            @Value("${decision-engine.admission.burst:200}") int burst,
+                            @Value("${decision-engine.admission.max-clients:100000}") long maxClients,
+                            @Value("${decision-engine.admission.max-concurrent-requests:200}")
+                            int maxConcurrentRequests) {
+        this(decisionMetrics, enabled, clientHeader, requestsPerSecond, burst, maxClients, maxConcurrentRequests,
+                System::nanoTime);
+    }
+
+    RequestAdmission(DecisionMetrics decisionMetrics, boolean enabled, String clientHeader, double requestsPerSecond,
+                     int burst, long maxClients, int maxConcurrentRequests, LongSupplier nanoClock) {
+        if (requestsPerSecond <= 0 || burst < 1 || maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("decision-engine.admission limits must be positive");
+        }
+        this.decisionMetrics = decisionMetrics;
+        this.enabled = enabled;
+        this.clientHeader = clientHeader;
+        this.tokenNanos = Math.max(1, Math.round(NANOS_PER_SECOND / requestsPerSecond));
+        this.burstNanos = tokenNanos * burst;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, MINIMUM_IDLE_NANOS)))
+                .build();
+    }
+
+    /**
+     * @return Name of the header naming the API client
+     */
+    public String getClientHeader() {
+        return clientHeader;
+    }
+
+    /**
+     * Admits a request or tells why it is refused. An admitted request must be released once it is answered.
+     *
+     * @param client API client making the request, or null if it did not name itself
+     * @return ADMITTED, or the reason the request is refused and when to try again
+     */
+    public Admission admit(String client) {
+        if (!enabled) {
+            return Admission.ADMITTED;
+        }
+        if (client != null) {
+            long waitNanos = takeToken(client);
+            if (waitNanos > 0) {
+                decisionMetrics.recordThrottled();
+                return new Admission(Admission.Status.THROTTLED, toRetryAfterSeconds(waitNanos));
+            }
+        }
+        if (running.incrementAndGet() > maxConcurrentRequests) {
+            running.decrementAndGet();
+            decisionMetrics.recordShed();
+            return Admission.SHED;
+        }
+        return Admission.ADMITTED;
+    }
+
+    /**
+     * Releases a request admitted by admit, once it is answered.
+     */
+    public void release() {
+        if (enabled) {
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the client.
+     *
+     * @return 0 if a token was taken, otherwise nanoseconds until the next token
+     */
+    private long takeToken(String client) {
+        long now = nanoClock.getAsLong();
+        // A new bucket starts full.
+        AtomicLong bucket = buckets.get(client, key -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long fullAt = bucket.get();
+            // A bucket that has been full for a while is just full.
+            long fullAtAfterTaking = Math.max(fullAt, now) + tokenNanos;
+            long waitNanos = fullAtAfterTaking - now - burstNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (bucket.compareAndSet(fullAt, fullAtAfterTaking)) {
+                return 0;
+            }
+        }
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (long) Math.ceil(waitNanos / NANOS_PER_SECOND));
+    }
+
+    /**
+     * Whether a request may run, and if not, how many seconds to wait before retrying.
+     *
+     * @param status            Whether the request is admitted, or why it is refused
+     * @param retryAfterSeconds Seconds to wait before retrying, 0 if admitted
+     */
+    public record Admission(Status status, long retryAfterSeconds) {
+
+        static final Admission ADMITTED = new Admission(Status.ADMITTED, 0);
+        // Requests finish within a second, so a shed request can be retried right after.
+        static final Admission SHED = new Admission(Status.SHED, 1);
+
+        /**
+         * @return true if the request may run
+         */
+        public boolean isAdmitted() {
+            return status == Status.ADMITTED;
+        }
+
+        /**
+         * @return Body of the 429 Too Many Requests response refusing the request
+         */
+        public DecisionResponse toResponse() {
+            DecisionResponse response = new DecisionResponse();
+            response.setErrorMessage(status == Status.THROTTLED ? DecisionEngineConstants.RATE_LIMIT_EXCEEDED
+                    : DecisionEngineConstants.TOO_MANY_CONCURRENT_REQUESTS);
+            return response;
+        }
+
+        public enum Status {
+            ADMITTED,
+            // The client made more requests than its rate limit allows.
+            THROTTLED,
+            // Too many requests were running at once.
+            SHED
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies RequestAdmission to decision requests on the servlet stack. Refused requests are answered with
+ * 429 Too Many Requests, a Retry-After header and an error message, without reading their body.
+ */
+public class RequestAdmissionFilter extends OncePerRequestFilter {
+
+    private final RequestAdmission requestAdmission;
+    private final ObjectMapper objectMapper;
+
+    public RequestAdmissionFilter(RequestAdmission requestAdmission, ObjectMapper objectMapper) {
+        this.requestAdmission = requestAdmission;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestAdmission.Admission admission = requestAdmission.admit(
+                request.getHeader(requestAdmission.getClientHeader()));
+        if (!admission.isAdmitted()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), admission.toResponse());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            requestAdmission.release();
+        }
+    }
+}
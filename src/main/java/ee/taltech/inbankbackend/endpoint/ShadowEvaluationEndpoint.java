@@ -0,0 +1,50 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.service.ShadowDifference;
+import ee.taltech.inbankbackend.service.ShadowEvaluator;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing the latest requests on which the candidate rule set decided differently,
+ * at /actuator/shadow. The aggregated counts are in the decision_shadow_* metrics. It is not exposed over the web
+ * by default; operators expose it on a management port that is not public.
+ */
+@Component
+@Endpoint(id = "shadow")
+public class ShadowEvaluationEndpoint {
+
+    private final ShadowEvaluator shadowEvaluator;
+
+    @Autowired
+    ShadowEvaluationEndpoint(ShadowEvaluator shadowEvaluator) {
+        this.shadowEvaluator = shadowEvaluator;
+    }
+
+    /**
+     * @return Whether shadow evaluation is enabled, the candidate rule set and the latest differences
+     */
+    @ReadOperation
+    public ShadowReport report() {
+        return new ShadowReport(shadowEvaluator.isEnabled(), shadowEvaluator.getCandidateRuleSet(),
+                shadowEvaluator.recentDifferences());
+    }
+
+    /**
+     * Body of the shadow endpoint.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ShadowReport {
+        private boolean enabled;
+        private RuleSet candidateRuleSet;
+        private List<ShadowDifference> differences;
+    }
+}
@@ -0,0 +1,85 @@
+package ee.taltech.inbankbackend.service;
+
+import java.time.Duration;
+
+/**
+ * Stops calls to a failing dependency for a while, so that requests fail fast instead of each waiting for
+ * a timeout.<br><br>
+ * - closed: calls pass; after the given number of consecutive failures the breaker opens,<br>
+ * - open: calls are refused until the open duration has passed,<br>
+ * - half-open: a single trial call passes; its success closes the breaker and its failure opens it again.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold Consecutive failures after which the breaker opens
+     * @param openDuration     Time the breaker stays open before it lets a trial call through
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Asks for permission to make a call. A permitted call must report its result to onSuccess or onFailure.
+     *
+     * @return true if the call may be made, false if it must fail fast
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                // The trial call is still running.
+                return false;
+        }
+    }
+
+    /**
+     * Reports a successful call, which closes the breaker.
+     */
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Reports a failed call, which opens the breaker if it was a trial call or the threshold is reached.
+     */
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return The current state, without moving an expired open breaker to half-open
+     */
+    synchronized State getState() {
+        return state;
+    }
+}
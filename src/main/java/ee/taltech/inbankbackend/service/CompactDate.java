@@ -0,0 +1,87 @@
+package ee.taltech.inbankbackend.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Helpers for dates stored as a single int in the form yyyymmdd, which lets the request path
+ * compare dates and compute ages without allocating date objects.
+ */
+public final class CompactDate {
+
+    private static final int YEAR_FACTOR = 10_000;
+    private static final int MONTH_FACTOR = 100;
+
+    private static volatile Today today = Today.of(System.currentTimeMillis());
+
+    private CompactDate() {
+    }
+
+    /**
+     * @return The current date in the system time zone, as yyyymmdd
+     */
+    public static int today() {
+        Today current = today;
+        long now = System.currentTimeMillis();
+        if (now < current.startMillis || now >= current.endMillis) {
+            // Only happens once a day, or if the clock is set back.
+            current = Today.of(now);
+            today = current;
+        }
+        return current.date;
+    }
+
+    /**
+     * Returns the number of full years between two dates, the same as Period.between(from, to).getYears().
+     * Comparing month and day as part of the number takes care of birthdays that are not reached yet.
+     *
+     * @param from Earlier date, as yyyymmdd
+     * @param to   Later date, as yyyymmdd
+     * @return Number of full years from the first date to the second
+     */
+    public static int yearsBetween(int from, int to) {
+        return (to - from) / YEAR_FACTOR;
+    }
+
+    /**
+     * @param year  Year
+     * @param month Month, from 1 to 12
+     * @param day   Day of month
+     * @return The date as yyyymmdd
+     */
+    public static int of(int year, int month, int day) {
+        return year * YEAR_FACTOR + month * MONTH_FACTOR + day;
+    }
+
+    /**
+     * @param date Date as yyyymmdd
+     * @return The same date as a LocalDate
+     */
+    public static LocalDate toLocalDate(int date) {
+        return LocalDate.of(date / YEAR_FACTOR, date / MONTH_FACTOR % MONTH_FACTOR, date % MONTH_FACTOR);
+    }
+
+    /**
+     * Today's date together with the span of wall-clock time it covers.
+     */
+    private static final class Today {
+        private final int date;
+        private final long startMillis;
+        private final long endMillis;
+
+        private Today(int date, long startMillis, long endMillis) {
+            this.date = date;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        private static Today of(long nowMillis) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = Instant.ofEpochMilli(nowMillis).atZone(zone).toLocalDate();
+            return new Today(CompactDate.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth()),
+                    date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ee.taltech.inbankbackend.service;
+
+/**
+ * Tells the personal ID code format of every country, looked up by the ordinal of the country, so that the
+ * decision engine dispatches without a switch and a new country is added here rather than in the engine.
+ * The age limits of the countries are rules, see RuleSet.maximumAge.
+ */
+public final class CountryRegistry {
+
+    // Codes of requests without a country are read in this format; such requests are refused for their age.
+    private static final PersonalCodeFormat DEFAULT_FORMAT = PersonalCodeFormat.ESTONIAN;
+    private static final PersonalCodeFormat[] FORMATS = new PersonalCodeFormat[Countries.values().length];
+
+    static {
+        register(Countries.ESTONIA, PersonalCodeFormat.ESTONIAN);
+        // Latvian codes are DDMMYY-XNNNNN. Until a Latvian format is registered, Latvian requests are read in the
+        // Estonian format as they always were, a legacy stopgap.
+        register(Countries.LATVIA, PersonalCodeFormat.ESTONIAN);
+        register(Countries.LITHUANIA, PersonalCodeFormat.ESTONIAN);
+        register(Countries.FINLAND, PersonalCodeFormat.FINNISH);
+        for (Countries country : Countries.values()) {
+            if (FORMATS[country.ordinal()] == null) {
+                throw new IllegalStateException("No personal code format registered for " + country);
+            }
+        }
+    }
+
+    private CountryRegistry() {
+    }
+
+    /**
+     * @param country Country where the customer applies for the loan, may be null
+     * @return The format of the personal ID codes of the country
+     */
+    public static PersonalCodeFormat personalCodeFormat(Countries country) {
+        return country == null ? DEFAULT_FORMAT : FORMATS[country.ordinal()];
+    }
+
+    private static void register(Countries country, PersonalCodeFormat format) {
+        FORMATS[country.ordinal()] = format;
+    }
+}
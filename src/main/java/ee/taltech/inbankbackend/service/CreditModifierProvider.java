@@ -0,0 +1,37 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of the credit modifier the decision engine scores an applicant with.
+ * Implementations may answer from the personal code alone or ask an external credit registry, so the modifier
+ * is returned as a future that the caller can either wait on or continue from.
+ */
+public interface CreditModifierProvider {
+
+    /**
+     * Looks up the credit modifier of an applicant.
+     * The returned future may be shared between callers and must not be completed by them.
+     *
+     * @param personalCode Valid personal ID code of the applicant
+     * @param segment      Last four digits of the personal ID code
+     * @return A future of the credit modifier, 0 if the applicant has debt. It completes exceptionally
+     *         if the modifier cannot be determined, for example because the registry is unavailable.
+     */
+    CompletableFuture<Integer> getCreditModifier(String personalCode, int segment);
+
+    /**
+     * Looks up the credit modifier of an applicant under the rules a request read, so that a request never mixes
+     * two versions of the rules. Providers that do not derive the modifier from the rules ignore them.
+     *
+     * @param personalCode Valid personal ID code of the applicant
+     * @param segment      Last four digits of the personal ID code
+     * @param ruleSet      Rules in force when the request arrived
+     * @return A future of the credit modifier, as getCreditModifier(personalCode, segment) returns it
+     */
+    default CompletableFuture<Integer> getCreditModifier(String personalCode, int segment, RuleSet ruleSet) {
+        return getCreditModifier(personalCode, segment);
+    }
+}
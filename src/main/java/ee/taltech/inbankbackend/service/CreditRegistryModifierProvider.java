@@ -0,0 +1,136 @@
+package ee.taltech.inbankbackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credit modifier provider that asks an external credit registry, enabled with
+ * decision-engine.credit-registry.enabled=true. The registry answers GET {url}/credit-modifiers/{personalCode}
+ * with a body such as {"creditModifier": 300}.<br><br>
+ * - Requests are sent asynchronously, so no thread waits on the registry unless the caller chooses to.<br>
+ * - Concurrent lookups of the same code share one in-flight request.<br>
+ * - Answers are kept in a cache bounded by size and time since they were received; failures are not cached.<br>
+ * - Every request is bounded by a timeout.<br>
+ * - After repeated failures a circuit breaker fails lookups fast until the registry has had time to recover.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = CreditRegistryModifierProvider.ENABLED_PROPERTY, havingValue = "true")
+public class CreditRegistryModifierProvider implements CreditModifierProvider {
+
+    public static final String ENABLED_PROPERTY = "decision-engine.credit-registry.enabled";
+    static final String CREDIT_MODIFIERS_PATH = "/credit-modifiers/";
+    static final String CREDIT_MODIFIER_FIELD = "creditModifier";
+
+    private static final CompletableFuture<Integer> CIRCUIT_OPEN = CompletableFuture.failedFuture(
+            new IllegalStateException("Credit registry circuit breaker is open"));
+
+    private final String baseUrl;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+    private final ObjectReader responseReader;
+    private final AsyncCache<String, Integer> cache;
+    private final CircuitBreaker circuitBreaker;
+
+    @Autowired
+    public CreditRegistryModifierProvider(@Value("${decision-engine.credit-registry.url}") String url,
+                                          @Value("${decision-engine.credit-registry.timeout:500ms}")
+                                          Duration timeout,
+                                          @Value("${decision-engine.credit-registry.cache.maximum-size:100000}")
+                                          long cacheMaximumSize,
+                                          @Value("${decision-engine.credit-registry.cache.time-to-live:5m}")
+                                          Duration cacheTimeToLive,
+                                          @Value("${decision-engine.credit-registry.circuit-breaker"
+                                                  + ".failure-threshold:5}") int failureThreshold,
+                                          @Value("${decision-engine.credit-registry.circuit-breaker"
+                                                  + ".open-duration:30s}") Duration openDuration,
+                                          ObjectMapper objectMapper) {
+        this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+        this.responseReader = objectMapper.reader();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfterWrite(cacheTimeToLive)
+                .buildAsync();
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getCreditModifier(String personalCode, int segment) {
+        // Cached answers and requests already in flight are served even while the breaker is open.
+        CompletableFuture<Integer> cached = cache.getIfPresent(personalCode);
+        if (cached != null && cached.isCompletedExceptionally()) {
+            // The cache drops failed lookups in a callback, so a new caller may briefly still see one.
+            cache.asMap().remove(personalCode, cached);
+        } else if (cached != null) {
+            return cached;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            return CIRCUIT_OPEN;
+        }
+        return cache.get(personalCode, (code, executor) -> fetch(code));
+    }
+
+    /**
+     * @return State of the circuit breaker guarding the registry
+     */
+    CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    private CompletableFuture<Integer> fetch(String personalCode) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + CREDIT_MODIFIERS_PATH + personalCode))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(this::parse)
+                .whenComplete((creditModifier, failure) -> {
+                    if (failure == null) {
+                        circuitBreaker.onSuccess();
+                    } else {
+                        log.warn("Credit registry lookup failed: {}", failure.toString());
+                        circuitBreaker.onFailure();
+                    }
+                });
+    }
+
+    private int parse(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Credit registry answered with status " + response.statusCode());
+        }
+        JsonNode creditModifier;
+        try {
+            creditModifier = responseReader.readTree(response.body()).path(CREDIT_MODIFIER_FIELD);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Credit registry answer is not valid JSON", e);
+        }
+        if (!creditModifier.isInt() || creditModifier.intValue() < 0) {
+            throw new IllegalStateException("Credit registry answered without a valid credit modifier");
+        }
+        return creditModifier.intValue();
+    }
+}
@@ -1,15 +1,113 @@
 package ee.taltech.inbankbackend.service;
 
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
- * Holds the response data of the REST endpoint.
+ * Holds the response data of the REST endpoint, and the version of the rules the decision was made by, which is
+ * recorded with it but not part of the answer: two decisions with the same outcome, amount and period are equal.
+ * A rejection carries only its outcome and rule version, and one shared instance exists per outcome for the built-in
+ * rules and for the rule version last asked for.
  */
 @Data
-@AllArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Decision {
+
+    private static final Rejections BUILT_IN_REJECTIONS = new Rejections(DecisionEngineConstants.RULE_VERSION);
+    // Rejections of the rules in force once they replaced the built-in ones; replaced on every rule version change.
+    private static volatile Rejections latestRejections = BUILT_IN_REJECTIONS;
+
+    private final DecisionOutcome outcome;
     private final Integer loanAmount;
     private final Integer loanPeriod;
-    private final String errorMessage;
+    @EqualsAndHashCode.Exclude
+    private final int ruleVersion;
+
+    /**
+     * @param loanAmount Approved loan amount
+     * @param loanPeriod Approved loan period
+     * @return An approved decision under the built-in rules
+     */
+    public static Decision approved(int loanAmount, int loanPeriod) {
+        return approved(loanAmount, loanPeriod, DecisionEngineConstants.RULE_VERSION);
+    }
+
+    /**
+     * @param loanAmount  Approved loan amount
+     * @param loanPeriod  Approved loan period
+     * @param ruleVersion Version of the rules the loan was approved by
+     * @return An approved decision
+     */
+    public static Decision approved(int loanAmount, int loanPeriod, int ruleVersion) {
+        return new Decision(DecisionOutcome.APPROVED, loanAmount, loanPeriod, ruleVersion);
+    }
+
+    /**
+     * @param outcome Reason the loan is not granted, any outcome except APPROVED
+     * @return The shared decision for the given outcome under the built-in rules
+     */
+    public static Decision rejected(DecisionOutcome outcome) {
+        return BUILT_IN_REJECTIONS.get(outcome);
+    }
+
+    /**
+     * @param outcome     Reason the loan is not granted, any outcome except APPROVED
+     * @param ruleVersion Version of the rules the loan was refused by
+     * @return The shared decision for the given outcome and rule version
+     */
+    public static Decision rejected(DecisionOutcome outcome, int ruleVersion) {
+        Rejections rejections = latestRejections;
+        if (rejections.ruleVersion != ruleVersion) {
+            rejections = ruleVersion == BUILT_IN_REJECTIONS.ruleVersion
+                    ? BUILT_IN_REJECTIONS : new Rejections(ruleVersion);
+            latestRejections = rejections;
+        }
+        return rejections.get(outcome);
+    }
+
+    /**
+     * @return true if a loan was approved
+     */
+    public boolean isApproved() {
+        return outcome == DecisionOutcome.APPROVED;
+    }
+
+    /**
+     * @return The error message of the outcome, or null for an approved loan
+     */
+    public String getErrorMessage() {
+        return outcome.getErrorMessage();
+    }
+
+    /**
+     * The rejections of one rule version, one per outcome.
+     */
+    private static final class Rejections {
+
+        private final int ruleVersion;
+        private final Map<DecisionOutcome, Decision> decisions = new EnumMap<>(DecisionOutcome.class);
+
+        private Rejections(int ruleVersion) {
+            this.ruleVersion = ruleVersion;
+            for (DecisionOutcome outcome : DecisionOutcome.values()) {
+                if (outcome != DecisionOutcome.APPROVED) {
+                    decisions.put(outcome, new Decision(outcome, null, null, ruleVersion));
+                }
+            }
+        }
+
+        private Decision get(DecisionOutcome outcome) {
+            Decision decision = decisions.get(outcome);
+            if (decision == null) {
+                throw new IllegalArgumentException("Not a rejection: " + outcome);
+            }
+            return decision;
+        }
+    }
 }
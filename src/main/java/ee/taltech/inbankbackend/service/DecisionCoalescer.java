@@ -0,0 +1,145 @@
+package ee.taltech.inbankbackend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Single-flight layer in front of the decision engine. Identical requests, with the same personal code, amount,
+ * period and country, that arrive while one of them is being decided share its decision instead of being
+ * decided again, so bursts of retries and double-clicks cost a single evaluation.
+ * Requests are only shared while in flight: once a decision is made, the next identical request is decided
+ * anew, so a decision never outlives the rules and data it was made with.
+ * In-flight requests are tracked in a concurrent map, so unrelated requests never wait on each other.
+ */
+@Component
+public class DecisionCoalescer {
+
+    private final DecisionEngine decisionEngine;
+    private final DecisionMetrics decisionMetrics;
+    private final boolean enabled;
+    private final ConcurrentMap<DecisionKey, CompletableFuture<Decision>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an enabled coalescer with in-memory metrics in front of the given engine.
+     *
+     * @param decisionEngine Engine that decides the requests
+     */
+    public DecisionCoalescer(DecisionEngine decisionEngine) {
+        this(decisionEngine, new DecisionMetrics(), true);
+    }
+
+    @Autowired
+    public DecisionCoalescer(DecisionEngine decisionEngine, DecisionMetrics decisionMetrics,
+                             @Value("${decision-engine.request-coalescing.enabled:true}") boolean enabled) {
+        this.decisionEngine = decisionEngine;
+        this.decisionMetrics = decisionMetrics;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Decides a request like DecisionEngine.calculateApprovedLoan, or waits for an identical request that is
+     * already being decided and returns its decision.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country where the customer applies for the loan
+     * @return A Decision object containing the approved loan amount and period, or the reason it was rejected
+     */
+    public Decision calculateApprovedLoan(String personalCode, Long loanAmount, int loanPeriod, Countries country) {
+        if (!enabled) {
+            return decisionEngine.calculateApprovedLoan(personalCode, loanAmount, loanPeriod, country);
+        }
+
+        DecisionKey key = new DecisionKey(personalCode, loanAmount, loanPeriod, country);
+        CompletableFuture<Decision> pending = new CompletableFuture<>();
+        CompletableFuture<Decision> leader = inFlight.putIfAbsent(key, pending);
+        if (leader != null) {
+            decisionMetrics.recordCoalesced();
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                // Rethrown as the leader saw it, so every waiting caller fails the same way.
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            Decision decision = decisionEngine.calculateApprovedLoan(personalCode, loanAmount, loanPeriod, country);
+            inFlight.remove(key, pending);
+            pending.complete(decision);
+            return decision;
+        } catch (Throwable e) {
+            // Errors too, or identical requests arriving later would wait for this one forever.
+            inFlight.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Decides a request like DecisionEngine.calculateApprovedLoanAsync, or continues from an identical request
+     * that is already being decided.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country where the customer applies for the loan
+     * @return A future of the Decision object containing the approved loan amount and period, or the reason
+     *         it was rejected
+     */
+    public CompletableFuture<Decision> calculateApprovedLoanAsync(String personalCode, Long loanAmount,
+                                                                 int loanPeriod, Countries country) {
+        if (!enabled) {
+            return decisionEngine.calculateApprovedLoanAsync(personalCode, loanAmount, loanPeriod, country);
+        }
+
+        DecisionKey key = new DecisionKey(personalCode, loanAmount, loanPeriod, country);
+        CompletableFuture<Decision> pending = new CompletableFuture<>();
+        CompletableFuture<Decision> leader = inFlight.putIfAbsent(key, pending);
+        if (leader != null) {
+            decisionMetrics.recordCoalesced();
+            // A dependent copy, so that a caller cancelling its future does not cancel the others.
+            return leader.thenApply(decision -> decision);
+        }
+
+        CompletableFuture<Decision> decision;
+        try {
+            decision = decisionEngine.calculateApprovedLoanAsync(personalCode, loanAmount, loanPeriod, country);
+        } catch (Throwable e) {
+            decision = CompletableFuture.failedFuture(e);
+        }
+        decision.whenComplete((result, failure) -> {
+            // Removed before completing, so that a request arriving afterwards is decided anew.
+            inFlight.remove(key, pending);
+            if (failure == null) {
+                pending.complete(result);
+            } else {
+                pending.completeExceptionally(failure);
+            }
+        });
+        return pending.thenApply(result -> result);
+    }
+
+    /**
+     * @return Number of distinct requests being decided right now
+     */
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Identifies requests that are certain to get the same decision.
+     */
+    private record DecisionKey(String personalCode, Long loanAmount, int loanPeriod, Countries country) {
+    }
+}
@@ -1,244 +1,696 @@
 package ee.taltech.inbankbackend.service;
 
-import com.github.vladislavgoltjajev.personalcode.exception.PersonalCodeException;
-import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeParser;
-import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeValidator;
-import ee.taltech.inbankbackend.config.DecisionEngineConstants;
-import ee.taltech.inbankbackend.exceptions.*;
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import io.opentelemetry.api.trace.Span;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.time.Period;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A service class that provides a method for calculating an approved loan amount and period for a customer.
- * The loan amount is calculated based on the customer's credit modifier,
- * which is determined by the last four digits of their ID code.
+ * The loan amount is calculated based on the customer's credit modifier, which comes from a
+ * CreditModifierProvider: by default the last four digits of their ID code, optionally an external credit registry.
+ * The engine keeps no per-request state, so a single instance can serve concurrent requests.
+ * The limits, segments and baseline come from the rule set in force, read once per request from RuleSetHolder.
+ * Optionally every decision on the amount grid is precomputed at startup and looked up instead of searched;
+ * the table is rebuilt for every new rule set before the rule set comes into force.
+ * Rejections, including invalid input, are returned as a Decision with a reason code rather than thrown.
+ * The offers for every loan period can also be computed for an applicant at once, see calculateOffers.
+ * If shadow evaluation is enabled, every decision is also handed to ShadowEvaluator once it is made.
+ * The phases of a decision are traced with DecisionTracing.
  */
+@Slf4j
 @Service
 public class DecisionEngine {
 
-    // Used to check for the validity of the presented ID code.
-    private final EstonianPersonalCodeValidator validator = new EstonianPersonalCodeValidator();
-    private final EstonianPersonalCodeParser parser = new EstonianPersonalCodeParser();
-    private int creditModifier = 0;
+    // Used to check for the validity of the presented ID code in the format of the country, and to get its
+    // date of birth and segment.
+    private final PersonalCodeCache personalCodeCache;
+    private final DecisionMetrics decisionMetrics;
+    private final CreditModifierProvider creditModifierProvider;
+    private final RuleSetHolder ruleSetHolder;
+    private final ShadowEvaluator shadowEvaluator;
+    private final DecisionTracing decisionTracing;
+
+    @Value("${decision-engine.precomputed-table.enabled:false}")
+    private boolean precomputedTableEnabled;
+    private volatile DecisionTable decisionTable;
+
+    @Autowired
+    public DecisionEngine(PersonalCodeCache personalCodeCache, DecisionMetrics decisionMetrics,
+                          CreditModifierProvider creditModifierProvider, RuleSetHolder ruleSetHolder,
+                          ShadowEvaluator shadowEvaluator, DecisionTracing decisionTracing) {
+        this.personalCodeCache = personalCodeCache;
+        this.decisionMetrics = decisionMetrics;
+        this.creditModifierProvider = creditModifierProvider;
+        this.ruleSetHolder = ruleSetHolder;
+        this.shadowEvaluator = shadowEvaluator;
+        this.decisionTracing = decisionTracing;
+    }
+
+    /**
+     * Creates an engine deciding by the built-in rules, with credit modifiers derived from the personal code, its
+     * own personal code cache of the default size and metrics that are not exported.
+     *
+     * @return The engine, without shadow evaluation or tracing
+     */
+    public static DecisionEngine withDefaults() {
+        return builder().build();
+    }
+
+    /**
+     * @return A builder of an engine, such as the candidate engine of ShadowEvaluator, with the collaborators of
+     *         withDefaults unless they are set
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Follows new rule sets, and builds the precomputed decision table if it is enabled in the application
+     * properties.
+     */
+    @PostConstruct
+    void initDecisionTable() {
+        ruleSetHolder.addListener(this::rebuildDecisionTable);
+        if (precomputedTableEnabled) {
+            setDecisionTable(buildDecisionTable());
+        }
+    }
+
+    /**
+     * Computes the decision for every amount on the grid, loan period and approvable credit modifier
+     * under the rules in force.
+     *
+     * @return The decision table, which also reports its build time and estimated size
+     */
+    DecisionTable buildDecisionTable() {
+        return buildDecisionTable(ruleSetHolder.getRuleSet());
+    }
+
+    /**
+     * Computes the decision for every amount on the grid, loan period and approvable credit modifier.
+     *
+     * @param ruleSet Rules the decisions are made by
+     * @return The decision table, which also reports its build time and estimated size
+     */
+    DecisionTable buildDecisionTable(RuleSet ruleSet) {
+        DecisionTable table = new DecisionTable(ruleSet, (creditModifier, amount, period) ->
+                search(new EvaluationContext(ruleSet, creditModifier), amount, period));
+        log.info("Built decision table for rule set version {} with {} entries in {} ms, estimated size {} KiB",
+                ruleSet.version(), table.size(), table.getBuildTimeNanos() / 1_000_000,
+                table.getEstimatedSizeBytes() / 1024);
+        return table;
+    }
+
+    /**
+     * Builds the table for a new rule set before it comes into force, if a table is in use.
+     * Until the rule set is published, requests still on the previous rules see a table for other rules
+     * and search instead.
+     *
+     * @param ruleSet Rule set about to come into force
+     */
+    private void rebuildDecisionTable(RuleSet ruleSet) {
+        if (decisionTable != null) {
+            setDecisionTable(buildDecisionTable(ruleSet));
+        }
+    }
+
+    /**
+     * Sets the table used to look up decisions for amounts on the grid, or null to always search.
+     *
+     * @param decisionTable Precomputed decision table
+     */
+    void setDecisionTable(DecisionTable decisionTable) {
+        this.decisionTable = decisionTable;
+    }
 
     /**
      * Calculates the maximum loan amount and period for the customer based on their ID code,
      * the requested loan amount and the loan period.
-     * The loan period must be between 12 and 48 months (inclusive).
-     * The loan amount must be between 2000 and 10000€ months (inclusive).
+     * The loan period must be between 12 and 48 months (inclusive) under the built-in rules.
+     * The loan amount must be between 2000 and 10000€ months (inclusive) under the built-in rules.
+     * Waits for the credit modifier provider if it has not answered yet.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @return A Decision object containing the approved loan amount and period, or the reason it was rejected
+     */
+    public Decision calculateApprovedLoan(String personalCode, Long loanAmount, int loanPeriod, Countries country) {
+        Decision decision = calculate(personalCode, loanAmount, loanPeriod, country);
+        shadowEvaluator.submit(personalCode, loanAmount, loanPeriod, country, decision);
+        return decision;
+    }
+
+    private Decision calculate(String personalCode, Long loanAmount, int loanPeriod, Countries country) {
+        long start = System.nanoTime();
+        Span span = decisionTracing.startDecision(country);
+        RuleSet ruleSet = ruleSetHolder.getRuleSet();
+        Span parse = decisionTracing.startPhase(span, DecisionTracing.PARSE);
+        ParsedPersonalCode parsedCode = personalCodeCache.get(personalCode, country);
+        parse.end();
+        Span verify = decisionTracing.startPhase(span, DecisionTracing.VERIFY);
+        DecisionOutcome invalidInput = verifyInputs(ruleSet, parsedCode, loanAmount, loanPeriod, country);
+        verify.end();
+        if (invalidInput != null) {
+            return record(country, loanAmount, loanPeriod, Decision.rejected(invalidInput, ruleSet.version()), 0,
+                    start, span);
+        }
+
+        Span lookup = decisionTracing.startPhase(span, DecisionTracing.CREDIT_MODIFIER);
+        Integer creditModifier = awaitCreditModifier(personalCode, parsedCode.getSegment(), ruleSet);
+        lookup.end();
+        if (creditModifier == null) {
+            return registryUnavailable(ruleSet, loanAmount, loanPeriod, country, start, span);
+        }
+        return decide(ruleSet, creditModifier, loanAmount, loanPeriod, country, start, span);
+    }
+
+    /**
+     * Waits for the credit modifier provider.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param segment      Segment of the personal code
+     * @param ruleSet      Rules in force when the request arrived
+     * @return The credit modifier, or null if the provider failed or the thread was interrupted
+     */
+    private Integer awaitCreditModifier(String personalCode, int segment, RuleSet ruleSet) {
+        try {
+            return creditModifierProvider.getCreditModifier(personalCode, segment, ruleSet).get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the decision like calculateApprovedLoan, without waiting for the credit modifier provider.
+     * The search runs on the thread that completes the credit modifier, or on the calling thread if it is
+     * already known.
      *
      * @param personalCode ID code of the customer that made the request.
      * @param loanAmount   Requested loan amount
      * @param loanPeriod   Requested loan period
-     * @return A Decision object containing the approved loan amount and period, and an error message (if any)
-     * @throws InvalidPersonalCodeException If the provided personal ID code is invalid
-     * @throws InvalidLoanAmountException If the requested loan amount is invalid
-     * @throws InvalidLoanPeriodException If the requested loan period is invalid
-     * @throws NoValidLoanException If there is no valid loan found for the given ID code, loan amount and loan period
+     * @return A future of the Decision object containing the approved loan amount and period, or the reason
+     *         it was rejected
      */
-    public Decision calculateApprovedLoan(String personalCode, Long loanAmount, int loanPeriod, Countries country)
-            throws InvalidPersonalCodeException, InvalidLoanAmountException, InvalidLoanPeriodException,
-            NoValidLoanException {
+    public CompletableFuture<Decision> calculateApprovedLoanAsync(String personalCode, Long loanAmount,
+                                                                 int loanPeriod, Countries country) {
+        return calculateAsync(personalCode, loanAmount, loanPeriod, country).thenApply(decision -> {
+            shadowEvaluator.submit(personalCode, loanAmount, loanPeriod, country, decision);
+            return decision;
+        });
+    }
+
+    private CompletableFuture<Decision> calculateAsync(String personalCode, Long loanAmount, int loanPeriod,
+                                                       Countries country) {
+        long start = System.nanoTime();
+        Span span = decisionTracing.startDecision(country);
+        RuleSet ruleSet = ruleSetHolder.getRuleSet();
+        Span parse = decisionTracing.startPhase(span, DecisionTracing.PARSE);
+        ParsedPersonalCode parsedCode = personalCodeCache.get(personalCode, country);
+        parse.end();
+        Span verify = decisionTracing.startPhase(span, DecisionTracing.VERIFY);
+        DecisionOutcome invalidInput = verifyInputs(ruleSet, parsedCode, loanAmount, loanPeriod, country);
+        verify.end();
+        if (invalidInput != null) {
+            return CompletableFuture.completedFuture(
+                    record(country, loanAmount, loanPeriod, Decision.rejected(invalidInput, ruleSet.version()), 0,
+                            start, span));
+        }
+
+        Span lookup = decisionTracing.startPhase(span, DecisionTracing.CREDIT_MODIFIER);
+        return creditModifierProvider.getCreditModifier(personalCode, parsedCode.getSegment(), ruleSet)
+                .handle((creditModifier, failure) -> {
+                    lookup.end();
+                    return failure == null
+                            ? decide(ruleSet, creditModifier, loanAmount, loanPeriod, country, start, span)
+                            : registryUnavailable(ruleSet, loanAmount, loanPeriod, country, start, span);
+                });
+    }
+
+    /**
+     * Calculates the highest approvable loan amount for every loan period from the minimum to the maximum,
+     * with the same credit score as calculateApprovedLoan. The amount for a period is the one a request for the
+     * minimum loan amount and that period would be approved with, or 0 if that request would not be approved
+     * for that period. The personal code is checked and the credit modifier obtained once for all periods.
+     * Waits for the credit modifier provider if it has not answered yet.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param country      Country where the customer applies for the loan
+     * @return The offers, or the reason no loan is offered
+     */
+    public LoanOffers calculateOffers(String personalCode, Countries country) {
+        RuleSet ruleSet = ruleSetHolder.getRuleSet();
+        ParsedPersonalCode parsedCode = personalCodeCache.get(personalCode, country);
+        DecisionOutcome invalidInput = verifyApplicant(ruleSet, parsedCode, country);
+        if (invalidInput != null) {
+            return LoanOffers.rejected(invalidInput);
+        }
 
         try {
-            verifyInputs(personalCode, loanAmount, loanPeriod, country);
-        } catch (Exception e) {
-            return new Decision(null, null, e.getMessage());
+            return offers(ruleSet,
+                    creditModifierProvider.getCreditModifier(personalCode, parsedCode.getSegment(), ruleSet).get());
+        } catch (ExecutionException e) {
+            return LoanOffers.rejected(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return LoanOffers.rejected(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Calculates the offers like calculateOffers, without waiting for the credit modifier provider.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param country      Country where the customer applies for the loan
+     * @return A future of the offers, or of the reason no loan is offered
+     */
+    public CompletableFuture<LoanOffers> calculateOffersAsync(String personalCode, Countries country) {
+        RuleSet ruleSet = ruleSetHolder.getRuleSet();
+        ParsedPersonalCode parsedCode = personalCodeCache.get(personalCode, country);
+        DecisionOutcome invalidInput = verifyApplicant(ruleSet, parsedCode, country);
+        if (invalidInput != null) {
+            return CompletableFuture.completedFuture(LoanOffers.rejected(invalidInput));
+        }
+
+        return creditModifierProvider.getCreditModifier(personalCode, parsedCode.getSegment(), ruleSet)
+                .handle((creditModifier, failure) -> failure == null
+                        ? offers(ruleSet, creditModifier)
+                        : LoanOffers.rejected(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE));
+    }
+
+    /**
+     * Finds the highest approved amount on the grid minimumLoanAmount, minimumLoanAmount + step, ... for every
+     * period, taking the maximum loan amount if the whole grid passes, as handleApprovedRequest does.
+     * A longer period never gives a lower score, so the highest approved amount never goes down from one period
+     * to the next: it is walked up once over all periods instead of searched for each, which takes at most
+     * one score per period plus one per amount step.
+     *
+     * @param ruleSet        Rules in force when the request arrived
+     * @param creditModifier Credit modifier of the applicant, 0 if they have debt
+     * @return The offers, or the reason no loan is offered
+     */
+    private LoanOffers offers(RuleSet ruleSet, int creditModifier) {
+        if (creditModifier == 0) {
+            return LoanOffers.rejected(DecisionOutcome.APPLICANT_HAS_DEBT);
         }
 
-        creditModifier = getCreditModifier(personalCode);
+        EvaluationContext context = new EvaluationContext(ruleSet, creditModifier);
+        int step = ruleSet.loanAmountStep();
+        int lastStep = (ruleSet.maximumLoanAmount() - ruleSet.minimumLoanAmount()) / step;
+        int[] loanAmounts = new int[ruleSet.maximumLoanPeriod() - ruleSet.minimumLoanPeriod() + 1];
+        // Highest approved step so far, -1 while not even the minimum loan amount is approved.
+        int approvedStep = -1;
+        for (int i = 0; i < loanAmounts.length; i++) {
+            int period = ruleSet.minimumLoanPeriod() + i;
+            while (approvedStep < lastStep
+                    && isApproved(context, ruleSet.minimumLoanAmount() + (approvedStep + 1) * step, period)) {
+                approvedStep++;
+            }
+            if (approvedStep == lastStep) {
+                loanAmounts[i] = ruleSet.maximumLoanAmount();
+            } else if (approvedStep >= 0) {
+                loanAmounts[i] = ruleSet.minimumLoanAmount() + approvedStep * step;
+            }
+        }
+
+        if (approvedStep < 0) {
+            return LoanOffers.rejected(DecisionOutcome.NO_VALID_LOAN);
+        }
+        return LoanOffers.approved(ruleSet.version(), ruleSet.fingerprint(), creditModifier,
+                ruleSet.minimumLoanPeriod(), loanAmounts);
+    }
+
+    /**
+     * Decides on valid inputs once the credit modifier of the applicant is known.
+     *
+     * @param ruleSet        Rules in force when the request arrived
+     * @param creditModifier Credit modifier of the applicant, 0 if they have debt
+     * @param loanAmount     Requested loan amount
+     * @param loanPeriod     Requested loan period
+     * @param country        Country of the request
+     * @param start          System.nanoTime() at the start of the request
+     * @param span           Span of the decision
+     * @return A Decision object containing the approved loan amount and period, or the reason it was rejected
+     */
+    private Decision decide(RuleSet ruleSet, int creditModifier, Long loanAmount, int loanPeriod, Countries country,
+                            long start, Span span) {
         if (creditModifier == 0) {
-            throw new NoValidLoanException(DecisionEngineConstants.APPLICANT_HAS_DEBT);
+            return record(country, loanAmount, loanPeriod,
+                    Decision.rejected(DecisionOutcome.APPLICANT_HAS_DEBT, ruleSet.version()), 0, start, span);
+        }
+
+        Span search = decisionTracing.startPhase(span, DecisionTracing.SEARCH);
+        DecisionTable table = decisionTable;
+        Decision decision;
+        int scoreEvaluations = 0;
+        if (table != null && table.getRuleSet() == ruleSet && table.covers(creditModifier, loanAmount.intValue())) {
+            decision = table.lookup(creditModifier, loanAmount.intValue(), loanPeriod);
+        } else {
+            EvaluationContext context = new EvaluationContext(ruleSet, creditModifier);
+            decision = search(context, loanAmount.intValue(), loanPeriod);
+            scoreEvaluations = context.getScoreEvaluations();
         }
+        search.end();
+        return record(country, loanAmount, loanPeriod, decision, scoreEvaluations, start, span);
+    }
 
-        double initialScore = calculateCreditScore(loanAmount.intValue(), loanPeriod);
+    private Decision registryUnavailable(RuleSet ruleSet, Long loanAmount, int loanPeriod, Countries country,
+                                         long start, Span span) {
+        return record(country, loanAmount, loanPeriod,
+                Decision.rejected(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE, ruleSet.version()), 0, start, span);
+    }
 
-        if (initialScore >= DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
-            return handleApprovedRequest(loanAmount.intValue(), loanPeriod);
+    /**
+     * Reports a finished decision to the metrics, ends its span and returns it.
+     *
+     * @param country          Country of the request
+     * @param loanAmount       Requested loan amount
+     * @param loanPeriod       Requested loan period
+     * @param decision         Decision to report
+     * @param scoreEvaluations Number of credit scores computed for the decision
+     * @param start            System.nanoTime() at the start of the request
+     * @param span             Span of the decision
+     * @return The given decision
+     */
+    private Decision record(Countries country, Long loanAmount, int loanPeriod, Decision decision,
+                            int scoreEvaluations, long start, Span span) {
+        decisionMetrics.record(country, loanAmount, loanPeriod, decision, scoreEvaluations,
+                System.nanoTime() - start);
+        decisionTracing.endDecision(span, loanAmount, loanPeriod, decision, scoreEvaluations);
+        return decision;
+    }
+
+    /**
+     * Searches for the maximum approvable loan, starting from the requested amount and period.
+     *
+     * @param context    Per-request evaluation state
+     * @param loanAmount Requested loan amount
+     * @param loanPeriod Requested loan period
+     * @return A Decision object containing the approved loan amount and period, or NO_VALID_LOAN
+     */
+    private Decision search(EvaluationContext context, int loanAmount, int loanPeriod) {
+        double initialScore = calculateCreditScore(context, loanAmount, loanPeriod);
+
+        if (initialScore >= context.getRuleSet().approvalBaseline()) {
+            return handleApprovedRequest(context, loanAmount, loanPeriod);
         } else {
-            return handleRejectedRequest(loanAmount.intValue(), loanPeriod);
+            return handleRejectedRequest(context, loanAmount, loanPeriod);
         }
     }
 
     /**
      * Handles the case where the initial loan request is approved.
-     * Tries increasing the loan amount (by increments of 100) until the score drops below the approval baseline.
-     * Returns the highest approved amount for the given loan period.
+     * Looks for the highest amount on the grid startingAmount, startingAmount + step, ... that still passes
+     * the approval baseline. If every amount on that grid passes, the maximum loan amount is returned.
+     * Since a higher amount never gives a higher score, the grid is binary searched instead of walked.
      *
+     * @param context        Per-request evaluation state
      * @param startingAmount The initially approved loan amount
      * @param period         The requested loan period
      * @return Decision object with the maximum approvable loan amount for the given period
      */
-    private Decision handleApprovedRequest(int startingAmount, int period) {
-        for (int amount = startingAmount + DecisionEngineConstants.CHANGE_AMOUNT_BY_100;
-             amount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT;
-             amount += DecisionEngineConstants.CHANGE_AMOUNT_BY_100) {
+    private Decision handleApprovedRequest(EvaluationContext context, int startingAmount, int period) {
+        RuleSet ruleSet = context.getRuleSet();
+        int lastStep = (ruleSet.maximumLoanAmount() - startingAmount) / ruleSet.loanAmountStep();
 
-            double score = calculateCreditScore(amount, period);
-            if (score < DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
-                // last approvable loan for given period.
-                return new Decision(amount - DecisionEngineConstants.CHANGE_AMOUNT_BY_100,
-                        period, null);
+        // Step 0 is the approved starting amount, so the approved steps form a non-empty prefix.
+        int low = 0;
+        int high = lastStep;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            int amount = startingAmount + middle * ruleSet.loanAmountStep();
+            if (isApproved(context, amount, period)) {
+                low = middle;
+            } else {
+                high = middle - 1;
             }
         }
-        // if ceiling was not found then return the max amount.
-        return new Decision(DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT, period, null);
+
+        if (low == lastStep) {
+            // if ceiling was not found then return the max amount.
+            return Decision.approved(ruleSet.maximumLoanAmount(), period, ruleSet.version());
+        }
+        return Decision.approved(startingAmount + low * ruleSet.loanAmountStep(), period, ruleSet.version());
     }
 
 
     /**
      * Handles the case where the initial request is rejected.
      * Tries decreasing the loan amount until a valid one is found.
-     * If none is found, the method tries increasing the loan period and repeating the process.
+     * If none is found, the method looks for the shortest longer period for which the lowest amount on the
+     * amount grid below the maximum loan amount is approved and returns the highest approvable amount for it.
      *
+     * @param context        Per-request evaluation state
      * @param startingAmount Initial requested amount
      * @param startingPeriod Initial requested period
-     * @return A Decision object if a valid loan is found
-     * @throws NoValidLoanException If no loan can be approved even after fallback attempts
+     * @return A Decision object if a valid loan is found, NO_VALID_LOAN if none can be approved even after
+     *         fallback attempts
      */
-    private Decision handleRejectedRequest(int startingAmount, int startingPeriod) throws NoValidLoanException {
+    private Decision handleRejectedRequest(EvaluationContext context, int startingAmount, int startingPeriod) {
+        RuleSet ruleSet = context.getRuleSet();
         // Try decreasing amount with original period
-        Decision result = tryFindValidAmount(startingPeriod,
-                startingAmount - DecisionEngineConstants.CHANGE_AMOUNT_BY_100);
+        Decision result = tryFindValidAmount(context, startingPeriod, startingAmount - ruleSet.loanAmountStep());
         if (result != null) return result;
 
-        // Try longer periods with max amount
-        for (int period = startingPeriod + 1; period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
-            result = tryFindValidAmount(period, DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT);
-            if (result != null) return result;
+        // A longer period only raises the score, so the approvable periods form a suffix of the range.
+        int lowestAmount = lowestGridAmount(ruleSet, ruleSet.maximumLoanAmount());
+        int low = startingPeriod + 1;
+        int high = ruleSet.maximumLoanPeriod();
+        if (low > high || !isApproved(context, lowestAmount, high)) {
+            // Cannot be tested at the moment because of constraints and hard coded credit scores.
+            return Decision.rejected(DecisionOutcome.NO_VALID_LOAN, ruleSet.version());
+        }
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isApproved(context, lowestAmount, middle)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
         }
 
-        // Cannot be tested at the moment because of constraints and hard coded credit scores.
-        throw new NoValidLoanException(DecisionEngineConstants.NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS);
+        // Try the shortest longer period with max amount
+        return tryFindValidAmount(context, low, ruleSet.maximumLoanAmount());
     }
 
     /**
      * Tries to find the highest valid loan amount for a given period.
-     * Starts from the given amount and decreases by 100 until the minimum loan amount is reached.
-     * Returns the first amount that passes the approval score.
+     * Considers the amounts from the given amount down to the minimum loan amount in amount steps
+     * and returns the highest one that passes the approval score, found by binary search.
      *
+     * @param context     Per-request evaluation state
      * @param period      Loan period in months
      * @param startAmount Starting amount to evaluate
      * @return Decision object if a valid loan is found, otherwise null
      */
-    private Decision tryFindValidAmount(int period, int startAmount) {
-        for (int amount = Math.min(startAmount, DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT);
-             amount >= DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
-             amount -= DecisionEngineConstants.CHANGE_AMOUNT_BY_100) {
+    private Decision tryFindValidAmount(EvaluationContext context, int period, int startAmount) {
+        RuleSet ruleSet = context.getRuleSet();
+        int firstAmount = Math.min(startAmount, ruleSet.maximumLoanAmount());
+        if (firstAmount < ruleSet.minimumLoanAmount()
+                || !isApproved(context, lowestGridAmount(ruleSet, firstAmount), period)) {
+            return null;
+        }
 
-            double score = calculateCreditScore(amount, period);
-            if (score >= DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
-                return new Decision(amount, period, null);
+        // Step 0 is the highest amount; the approved steps form a non-empty suffix.
+        int low = 0;
+        int high = (firstAmount - ruleSet.minimumLoanAmount()) / ruleSet.loanAmountStep();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int amount = firstAmount - middle * ruleSet.loanAmountStep();
+            if (isApproved(context, amount, period)) {
+                high = middle;
+            } else {
+                low = middle + 1;
             }
         }
-        return null;
+        return Decision.approved(firstAmount - low * ruleSet.loanAmountStep(), period, ruleSet.version());
+    }
+
+    /**
+     * Returns the lowest amount that is reached from the given amount in amount steps
+     * without going below the minimum loan amount.
+     *
+     * @param ruleSet     Rules in force for the request
+     * @param firstAmount Amount to step down from, not below the minimum loan amount
+     * @return The lowest amount on the grid of the given amount
+     */
+    private int lowestGridAmount(RuleSet ruleSet, int firstAmount) {
+        return ruleSet.minimumLoanAmount() + (firstAmount - ruleSet.minimumLoanAmount()) % ruleSet.loanAmountStep();
+    }
+
+    /**
+     * Checks whether the given loan amount and period pass the approval baseline.
+     *
+     * @param context    Per-request evaluation state
+     * @param loanAmount Loan amount to be evaluated
+     * @param loanPeriod Loan period in months
+     * @return true if the credit score is at least the approval baseline
+     */
+    private boolean isApproved(EvaluationContext context, int loanAmount, int loanPeriod) {
+        return calculateCreditScore(context, loanAmount, loanPeriod) >= context.getRuleSet().approvalBaseline();
     }
 
     /**
      * Calculates the credit score based on the given loan amount and period.
-     * Formula: ((creditModifier / loanAmount) * loanPeriod) / 10
+     * Formula: ((creditModifier / loanAmount) * loanPeriod) / scoreDivisor, where the divisor is 10 by default
      *
+     * @param context    Per-request evaluation state
      * @param loanAmount Loan amount to be evaluated
      * @param loanPeriod Loan period in months
      * @return The credit score as a decimal number
      * */
-    private double calculateCreditScore(int loanAmount, int loanPeriod) {
-        return ((double) creditModifier / loanAmount) * loanPeriod / DecisionEngineConstants.SCORE_DIVISOR;
+    private double calculateCreditScore(EvaluationContext context, int loanAmount, int loanPeriod) {
+        context.countScoreEvaluation();
+        return ((double) context.getCreditModifier() / loanAmount) * loanPeriod
+                / context.getRuleSet().scoreDivisor();
     }
 
     /**
-     * Calculates the credit modifier of the customer to according to the last four digits of their ID code.
-     * Debt - 0000...2499
-     * Segment 1 - 2500...4999
-     * Segment 2 - 5000...7499
-     * Segment 3 - 7500...9999
+     * Verify that all inputs are valid according to business rules.
      *
-     * @param personalCode ID code of the customer that made the request.
-     * @return Segment to which the customer belongs.
+     * @param ruleSet    Rules in force for the request
+     * @param parsedCode Provided personal ID code, parsed
+     * @param loanAmount Requested loan amount
+     * @param loanPeriod Requested loan period
+     * @param country    Country where the customer applies for the loan
+     * @return The outcome describing the first invalid input, or null if all inputs are valid
      */
-    private int getCreditModifier(String personalCode) {
-        int segment = Integer.parseInt(personalCode.substring(personalCode.length() - 4));
-
-        if (segment < DecisionEngineConstants.CEILING_OF_FIRST_SEGMENT) {
-            return 0;
-        } else if (segment < DecisionEngineConstants.CEILING_OF_SECOND_SEGMENT) {
-            return DecisionEngineConstants.SEGMENT_1_CREDIT_MODIFIER;
-        } else if (segment < DecisionEngineConstants.CEILING_OF_THIRD_SEGMENT) {
-            return DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER;
+    private DecisionOutcome verifyInputs(RuleSet ruleSet, ParsedPersonalCode parsedCode, Long loanAmount,
+                                         int loanPeriod, Countries country) {
+        DecisionOutcome invalidApplicant = verifyApplicant(ruleSet, parsedCode, country);
+        if (invalidApplicant != null) {
+            return invalidApplicant;
         }
 
-        return DecisionEngineConstants.SEGMENT_3_CREDIT_MODIFIER;
+        if (loanAmount == null || !(ruleSet.minimumLoanAmount() <= loanAmount)
+                || !(loanAmount <= ruleSet.maximumLoanAmount())) {
+            return DecisionOutcome.INVALID_LOAN_AMOUNT;
+        }
+        if (!(ruleSet.minimumLoanPeriod() <= loanPeriod) || !(loanPeriod <= ruleSet.maximumLoanPeriod())) {
+            return DecisionOutcome.INVALID_LOAN_PERIOD;
+        }
+        return null;
     }
 
     /**
-     * Verify that all inputs are valid according to business rules.
-     * If inputs are invalid, then throws corresponding exceptions.
+     * Verify that the personal code is valid and the applicant's age is accepted in the country.
      *
-     * @param personalCode Provided personal ID code
-     * @param loanAmount   Requested loan amount
-     * @param loanPeriod   Requested loan period
-     * @param country
-     * @throws InvalidPersonalCodeException If the provided personal ID code is invalid
-     * @throws InvalidLoanAmountException   If the requested loan amount is invalid
-     * @throws InvalidLoanPeriodException   If the requested loan period is invalid
+     * @param ruleSet    Rules in force for the request
+     * @param parsedCode Provided personal ID code, parsed
+     * @param country    Country where the customer applies for the loan
+     * @return The outcome describing the invalid input, or null if the applicant is valid
      */
-    private void verifyInputs(String personalCode, Long loanAmount, int loanPeriod, Countries country)
-            throws InvalidPersonalCodeException, InvalidLoanAmountException, InvalidLoanPeriodException,
-            PersonalCodeException {
-
-        if (!validator.isValid(personalCode)) {
-            throw new InvalidPersonalCodeException(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
-        }
-        if (!checkAge(personalCode, country)) {
-            throw new InvalidAgeException(DecisionEngineConstants.INVALID_AGE_ERROR);
+    private DecisionOutcome verifyApplicant(RuleSet ruleSet, ParsedPersonalCode parsedCode, Countries country) {
+        int today = CompactDate.today();
+        // A date of birth in the future cannot belong to a real person.
+        if (!parsedCode.isValid() || parsedCode.getDateOfBirth() > today) {
+            return DecisionOutcome.INVALID_PERSONAL_CODE;
         }
-
-        if (!(DecisionEngineConstants.MINIMUM_LOAN_AMOUNT <= loanAmount)
-                || !(loanAmount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT)) {
-            throw new InvalidLoanAmountException(DecisionEngineConstants.INVALID_LOAN_AMOUNT);
-        }
-        if (!(DecisionEngineConstants.MINIMUM_LOAN_PERIOD <= loanPeriod)
-                || !(loanPeriod <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD)) {
-            throw new InvalidLoanPeriodException(DecisionEngineConstants.INVALID_LOAN_PERIOD);
+        if (country == null || !checkAge(ruleSet, parsedCode.getDateOfBirth(), today, country)) {
+            return DecisionOutcome.INVALID_AGE;
         }
+        return null;
     }
 
     /**
-     * Checks if the applicant's age is valid based on their personal code.
-     * The age must be at least the minimum required age (21), and not older than the country-specific maximum:
+     * Checks if the applicant's age is valid based on their date of birth.
+     * The age is always evaluated against the current date, even if the personal code was parsed earlier.
+     * The age must be at least the minimum required age, and not older than the country-specific maximum
+     * of the rule set. The built-in rules require 21 years and allow at most:
      * - Estonia: 80
      * - Latvia: 75
      * - Lithuania: 85
+     * - Finland: 80
+     * Countries without a maximum age in the rule set are refused.
      *
-     * @param personalCode The user's personal ID code.
-     * @param country The selected country ("estonia", "latvia", or "lithuania").
+     * @param ruleSet     Rules in force for the request
+     * @param dateOfBirth The user's date of birth from their personal ID code, as yyyymmdd, not after today.
+     * @param today The current date, as yyyymmdd.
+     * @param country The selected country ("estonia", "latvia", "lithuania" or "finland").
      * @return true if the age is within the valid range, false otherwise.
-     * @throws PersonalCodeException If the personal code is invalid.
      */
-    private boolean checkAge(String personalCode, Countries country) throws PersonalCodeException {
-        try {
-            Period age = parser.getAge(personalCode);
-            int years = age.getYears();
-            int maxAge;
-
-            switch (country) {
-                case ESTONIA:
-                    maxAge = DecisionEngineConstants.ESTONIA_MAXIMUM;
-                    break;
-                case LATVIA:
-                    maxAge = DecisionEngineConstants.LATVIA_MAXIMUM;
-                    break;
-                case LITHUANIA:
-                    maxAge = DecisionEngineConstants.LITHUANIA_MAXIMUM;
-                    break;
-                default:
-                    return false;
-            }
+    private boolean checkAge(RuleSet ruleSet, int dateOfBirth, int today, Countries country) {
+        Integer maxAge = ruleSet.maximumAge().get(country);
+        if (maxAge == null) {
+            return false;
+        }
+
+        int years = CompactDate.yearsBetween(dateOfBirth, today);
+        return years >= ruleSet.minimumAge() && years <= maxAge;
+    }
+
+    /**
+     * Builds an engine that is not a bean, and follows its rule set as the PostConstruct initialization of a bean
+     * would.
+     */
+    static final class Builder {
+
+        // Unset collaborators are created by build, so that those that are set are not created for nothing.
+        private PersonalCodeCache personalCodeCache;
+        private DecisionMetrics decisionMetrics;
+        private CreditModifierProvider creditModifierProvider;
+        private RuleSetHolder ruleSetHolder;
+        private ShadowEvaluator shadowEvaluator;
+        private DecisionTracing decisionTracing;
+
+        private Builder() {
+        }
+
+        Builder personalCodeCache(PersonalCodeCache personalCodeCache) {
+            this.personalCodeCache = personalCodeCache;
+            return this;
+        }
+
+        Builder decisionMetrics(DecisionMetrics decisionMetrics) {
+            this.decisionMetrics = decisionMetrics;
+            return this;
+        }
+
+        /**
+         * @param creditModifierProvider Provider of the credit modifiers; by default they are derived from the
+         *                               personal code under the rules of the engine
+         */
+        Builder creditModifierProvider(CreditModifierProvider creditModifierProvider) {
+            this.creditModifierProvider = creditModifierProvider;
+            return this;
+        }
 
-            return years >= DecisionEngineConstants.MINIMUM_AGE && years <= maxAge;
+        Builder ruleSetHolder(RuleSetHolder ruleSetHolder) {
+            this.ruleSetHolder = ruleSetHolder;
+            return this;
+        }
+
+        Builder shadowEvaluator(ShadowEvaluator shadowEvaluator) {
+            this.shadowEvaluator = shadowEvaluator;
+            return this;
+        }
+
+        Builder decisionTracing(DecisionTracing decisionTracing) {
+            this.decisionTracing = decisionTracing;
+            return this;
+        }
 
-        } catch (PersonalCodeException e) {
-            throw new PersonalCodeException(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
+        DecisionEngine build() {
+            RuleSetHolder rules = ruleSetHolder != null ? ruleSetHolder : new RuleSetHolder();
+            DecisionEngine engine = new DecisionEngine(
+                    personalCodeCache != null ? personalCodeCache : new PersonalCodeCache(),
+                    decisionMetrics != null ? decisionMetrics : new DecisionMetrics(),
+                    creditModifierProvider != null ? creditModifierProvider : new SegmentCreditModifierProvider(rules),
+                    rules, shadowEvaluator != null ? shadowEvaluator : new ShadowEvaluator(),
+                    decisionTracing != null ? decisionTracing : new DecisionTracing());
+            engine.initDecisionTable();
+            return engine;
         }
     }
 }
@@ -0,0 +1,333 @@
+package ee.taltech.inbankbackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency, outcome and number of credit score evaluations of every decision, tagged by country,
+ * the number of requests that shared the decision of an identical request, the results of shadow evaluation,
+ * the requests refused by rate limiting and load shedding, the batches written to the decision store, the
+ * decisions that could not be written to the audit journal and the requests answered from the idempotency cache.
+ * The hits, misses, evictions and size of the personal code cache of every format are bound as cache metrics.
+ * All meters are registered up front and looked up by index, so recording a decision does not allocate.
+ */
+@Component
+public class DecisionMetrics {
+
+    static final String LATENCY = "decision.engine.latency";
+    static final String OUTCOMES = "decision.outcomes";
+    static final String SCORE_EVALUATIONS = "decision.score.evaluations";
+    static final String COALESCED = "decision.coalesced";
+    static final String SHADOW_COMPARISONS = "decision.shadow.comparisons";
+    static final String SHADOW_SHED = "decision.shadow.shed";
+    static final String THROTTLED = "decision.requests.throttled";
+    static final String SHED = "decision.requests.shed";
+    static final String STORE_QUEUE_DEPTH = "decision.store.queue.depth";
+    static final String STORE_FLUSHES = "decision.store.flushes";
+    static final String STORE_FLUSH_ROWS = "decision.store.flush.rows";
+    static final String STORE_OVERFLOW = "decision.store.overflow";
+    static final String STORE_FAILED_ROWS = "decision.store.failed.rows";
+    static final String AUDIT_FAILED = "decision.audit.failed";
+    static final String IDEMPOTENT_REPLAYS = "decision.idempotent.replays";
+    static final String IDEMPOTENT_CONFLICTS = "decision.idempotent.conflicts";
+    static final String PERSONAL_CODE_CACHE = "personal-code";
+    static final String DIFFERENCE_TAG = "difference";
+    static final String COUNTRY_TAG = "country";
+    static final String OUTCOME_TAG = "outcome";
+    static final String FORMAT_TAG = "format";
+    // Used for requests without a country.
+    static final String UNKNOWN_COUNTRY = "unknown";
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private static final int COUNTRY_COUNT = Countries.values().length + 1;
+
+    private final Timer[] latency = new Timer[COUNTRY_COUNT];
+    private final DistributionSummary[] scoreEvaluations = new DistributionSummary[COUNTRY_COUNT];
+    private final Counter[][] outcomes = new Counter[COUNTRY_COUNT][Result.values().length];
+    private final Counter coalesced;
+    private final Counter[] shadowComparisons = new Counter[ShadowDifference.Kind.values().length];
+    private final Counter shadowShed;
+    private final Counter throttled;
+    private final Counter shed;
+    private final Timer storeFlushes;
+    private final DistributionSummary storeFlushRows;
+    private final Counter storeOverflow;
+    private final Counter storeFailedRows;
+    private final Counter auditFailed;
+    private final Counter idempotentReplays;
+    private final Counter idempotentConflicts;
+    private final MeterRegistry registry;
+
+    /**
+     * Creates metrics in a registry of their own that is not exported, so that the decisions they count are not
+     * counted as decisions made, as for the candidate engine of ShadowEvaluator.
+     */
+    public DecisionMetrics() {
+        this(new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public DecisionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (int country = 0; country < COUNTRY_COUNT; country++) {
+            String countryTag = country < Countries.values().length
+                    ? Countries.values()[country].name().toLowerCase() : UNKNOWN_COUNTRY;
+            latency[country] = Timer.builder(LATENCY)
+                    .description("Time taken by the decision engine to decide on a loan request")
+                    .tag(COUNTRY_TAG, countryTag)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            scoreEvaluations[country] = DistributionSummary.builder(SCORE_EVALUATIONS)
+                    .description("Credit scores computed per decision, zero for table lookups and invalid input")
+                    .tag(COUNTRY_TAG, countryTag)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            for (Result result : Result.values()) {
+                outcomes[country][result.ordinal()] = Counter.builder(OUTCOMES)
+                        .description("Decisions by outcome")
+                        .tag(COUNTRY_TAG, countryTag)
+                        .tag(OUTCOME_TAG, result.tag)
+                        .register(registry);
+            }
+        }
+        coalesced = Counter.builder(COALESCED)
+                .description("Requests answered with the result of an identical request already in flight")
+                .register(registry);
+        for (ShadowDifference.Kind kind : ShadowDifference.Kind.values()) {
+            shadowComparisons[kind.ordinal()] = Counter.builder(SHADOW_COMPARISONS)
+                    .description("Decisions compared with the candidate rule set, by how the candidate differed")
+                    .tag(DIFFERENCE_TAG, kind.getTag())
+                    .register(registry);
+        }
+        shadowShed = Counter.builder(SHADOW_SHED)
+                .description("Decisions not compared with the candidate rule set because the shadow queue was full")
+                .register(registry);
+        throttled = Counter.builder(THROTTLED)
+                .description("Decision requests refused because the API client exceeded its rate limit")
+                .register(registry);
+        shed = Counter.builder(SHED)
+                .description("Decision requests refused because too many requests were running at once")
+                .register(registry);
+        storeFlushes = Timer.builder(STORE_FLUSHES)
+                .description("Time taken to write one batch of decisions to the decision store")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        storeFlushRows = DistributionSummary.builder(STORE_FLUSH_ROWS)
+                .description("Decisions written to the decision store per batch")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        storeOverflow = Counter.builder(STORE_OVERFLOW)
+                .description("Decisions that found the decision store queue full and were blocked, dropped or "
+                        + "spilled to disk")
+                .register(registry);
+        storeFailedRows = Counter.builder(STORE_FAILED_ROWS)
+                .description("Decisions whose batch could not be written to the decision store")
+                .register(registry);
+        auditFailed = Counter.builder(AUDIT_FAILED)
+                .description("Decisions whose record could not be written to the audit journal")
+                .register(registry);
+        idempotentReplays = Counter.builder(IDEMPOTENT_REPLAYS)
+                .description("Decision requests answered with the stored response of an earlier request "
+                        + "with the same idempotency key")
+                .register(registry);
+        idempotentConflicts = Counter.builder(IDEMPOTENT_CONFLICTS)
+                .description("Decision requests refused because their idempotency key was used for another request")
+                .register(registry);
+    }
+
+    /**
+     * Reports the number of decisions waiting for the decision store writer.
+     *
+     * @param queue Queue of the decision store
+     */
+    public void gaugeStoreQueue(Collection<?> queue) {
+        Gauge.builder(STORE_QUEUE_DEPTH, queue, Collection::size)
+                .description("Decisions waiting to be written to the decision store")
+                .register(registry);
+    }
+
+    /**
+     * Reports the hits, misses, evictions and size of the personal code cache of one format.
+     *
+     * @param cache  Cache of parsed personal codes, recording its statistics
+     * @param format Personal code format the cache holds
+     */
+    void monitorPersonalCodeCache(Cache<?, ?> cache, PersonalCodeFormat format) {
+        CaffeineCacheMetrics.monitor(registry, cache, PERSONAL_CODE_CACHE, FORMAT_TAG, format.name().toLowerCase());
+    }
+
+    /**
+     * Records a batch of decisions written to the decision store.
+     *
+     * @param rows         Number of decisions in the batch
+     * @param elapsedNanos Time taken to write and commit the batch, in nanoseconds
+     */
+    public void recordStoreFlush(int rows, long elapsedNanos) {
+        storeFlushes.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        storeFlushRows.record(rows);
+    }
+
+    /**
+     * Records a decision that found the decision store queue full.
+     */
+    public void recordStoreOverflow() {
+        storeOverflow.increment();
+    }
+
+    /**
+     * Records a batch of decisions that could not be written to the decision store.
+     *
+     * @param rows Number of decisions in the batch
+     */
+    public void recordStoreFailure(int rows) {
+        storeFailedRows.increment(rows);
+    }
+
+    /**
+     * Records a decision whose record could not be written to the audit journal.
+     */
+    public void recordAuditFailure() {
+        auditFailed.increment();
+    }
+
+    /**
+     * Records a decision request answered with the stored response of an earlier request with the same
+     * idempotency key.
+     */
+    public void recordIdempotentReplay() {
+        idempotentReplays.increment();
+    }
+
+    /**
+     * Records a decision request refused because its idempotency key was used for another request.
+     */
+    public void recordIdempotentConflict() {
+        idempotentConflicts.increment();
+    }
+
+    /**
+     * Records a decision request refused because its API client exceeded its rate limit.
+     */
+    public void recordThrottled() {
+        throttled.increment();
+    }
+
+    /**
+     * Records a decision request refused because too many requests were running at once.
+     */
+    public void recordShed() {
+        shed.increment();
+    }
+
+    /**
+     * Records a request that shared the decision of an identical request instead of being decided itself.
+     */
+    void recordCoalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * Records a decision compared with the candidate rule set.
+     *
+     * @param kind How the candidate decision differed from the decision returned
+     */
+    void recordShadowComparison(ShadowDifference.Kind kind) {
+        shadowComparisons[kind.ordinal()].increment();
+    }
+
+    /**
+     * Records a decision that was not compared with the candidate rule set because the shadow queue was full.
+     */
+    void recordShadowShed() {
+        shadowShed.increment();
+    }
+
+    /**
+     * Records a finished decision.
+     *
+     * @param country          Country of the request, may be null
+     * @param loanAmount       Requested loan amount, may be null
+     * @param loanPeriod       Requested loan period
+     * @param decision         Decision returned to the customer
+     * @param scoreEvaluations Number of credit scores computed for the decision
+     * @param elapsedNanos     Time taken to decide, in nanoseconds
+     */
+    void record(Countries country, Long loanAmount, int loanPeriod, Decision decision, int scoreEvaluations,
+                long elapsedNanos) {
+        int index = country == null ? COUNTRY_COUNT - 1 : country.ordinal();
+        latency[index].record(elapsedNanos, TimeUnit.NANOSECONDS);
+        this.scoreEvaluations[index].record(scoreEvaluations);
+        outcomes[index][classify(loanAmount, loanPeriod, decision).ordinal()].increment();
+    }
+
+    /**
+     * @param loanAmount Requested loan amount, may be null
+     * @param loanPeriod Requested loan period
+     * @param decision   Decision returned to the customer
+     * @return The outcome tag the decision is counted under
+     */
+    static String outcomeTag(Long loanAmount, int loanPeriod, Decision decision) {
+        return classify(loanAmount, loanPeriod, decision).getTag();
+    }
+
+    private static Result classify(Long loanAmount, int loanPeriod, Decision decision) {
+        switch (decision.getOutcome()) {
+            case APPROVED:
+                if (decision.getLoanPeriod() > loanPeriod) {
+                    return Result.EXTENDED_PERIOD;
+                }
+                int compared = Long.compare(decision.getLoanAmount(), loanAmount);
+                return compared == 0 ? Result.APPROVED_REQUESTED
+                        : compared > 0 ? Result.APPROVED_HIGHER : Result.APPROVED_LOWER;
+            case APPLICANT_HAS_DEBT:
+                return Result.DEBT;
+            case NO_VALID_LOAN:
+                return Result.NO_VALID_LOAN;
+            case CREDIT_REGISTRY_UNAVAILABLE:
+                return Result.REGISTRY_UNAVAILABLE;
+            case INVALID_PERSONAL_CODE:
+                return Result.INVALID_CODE;
+            case INVALID_AGE:
+                return Result.INVALID_AGE;
+            default:
+                return Result.INVALID_AMOUNT_OR_PERIOD;
+        }
+    }
+
+    /**
+     * Outcome tag of a decision. Approvals are split by how the approved loan relates to the requested one.
+     */
+    enum Result {
+        APPROVED_REQUESTED("approved_requested"),
+        APPROVED_HIGHER("approved_higher"),
+        APPROVED_LOWER("approved_lower"),
+        EXTENDED_PERIOD("extended_period"),
+        DEBT("debt"),
+        NO_VALID_LOAN("no_valid_loan"),
+        REGISTRY_UNAVAILABLE("registry_unavailable"),
+        INVALID_CODE("invalid_code"),
+        INVALID_AGE("invalid_age"),
+        INVALID_AMOUNT_OR_PERIOD("invalid_amount_or_period");
+
+        private final String tag;
+
+        Result(String tag) {
+            this.tag = tag;
+        }
+
+        String getTag() {
+            return tag;
+        }
+    }
+}
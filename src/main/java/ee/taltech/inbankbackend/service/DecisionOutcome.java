@@ -0,0 +1,39 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+
+/**
+ * Reason code of a decision. Expected rejections are reported through these codes instead of exceptions,
+ * so refusing invalid input costs no more than approving a loan.
+ */
+public enum DecisionOutcome {
+    APPROVED(null),
+    INVALID_PERSONAL_CODE(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE),
+    INVALID_AGE(DecisionEngineConstants.INVALID_AGE_ERROR),
+    INVALID_LOAN_AMOUNT(DecisionEngineConstants.INVALID_LOAN_AMOUNT),
+    INVALID_LOAN_PERIOD(DecisionEngineConstants.INVALID_LOAN_PERIOD),
+    APPLICANT_HAS_DEBT(DecisionEngineConstants.APPLICANT_HAS_DEBT),
+    NO_VALID_LOAN(DecisionEngineConstants.NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS),
+    CREDIT_REGISTRY_UNAVAILABLE(DecisionEngineConstants.CREDIT_REGISTRY_UNAVAILABLE);
+
+    private final String errorMessage;
+
+    DecisionOutcome(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @return The error message shown to the customer, or null for an approved loan
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return true if the request itself was invalid, false if it was evaluated
+     */
+    public boolean isInvalidInput() {
+        return this == INVALID_PERSONAL_CODE || this == INVALID_AGE || this == INVALID_LOAN_AMOUNT
+                || this == INVALID_LOAN_PERIOD;
+    }
+}
@@ -0,0 +1,148 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable lookup table holding the decision for every amount on the grid between the minimum and maximum
+ * loan amount, every loan period and every credit modifier that can be approved.
+ * The table is built for one rule set; a new rule set needs a new table.
+ */
+class DecisionTable {
+
+    // Rough HotSpot sizes with compressed references, used for the memory estimate.
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int OBJECT_ALIGNMENT_BYTES = 8;
+
+    private final RuleSet ruleSet;
+    private final int amountCount;
+    private final int periodCount;
+    private final int[] creditModifiers;
+    private final Decision[] decisions;
+    private final long buildTimeNanos;
+    private final long estimatedSizeBytes;
+
+    /**
+     * Computes the decision for every combination of approvable credit modifier, loan period and grid amount.
+     *
+     * @param ruleSet Rules the decisions are made by
+     * @param search  Computes a single decision
+     */
+    DecisionTable(RuleSet ruleSet, DecisionSearch search) {
+        long start = System.nanoTime();
+        this.ruleSet = ruleSet;
+        this.amountCount = (ruleSet.maximumLoanAmount() - ruleSet.minimumLoanAmount()) / ruleSet.loanAmountStep() + 1;
+        this.periodCount = ruleSet.maximumLoanPeriod() - ruleSet.minimumLoanPeriod() + 1;
+        this.creditModifiers = ruleSet.approvableCreditModifiers();
+        this.decisions = new Decision[creditModifiers.length * periodCount * amountCount];
+
+        // Neighbouring cells often share a result, so equal decisions are stored only once.
+        Map<Decision, Decision> distinct = new HashMap<>();
+        for (int segment = 0; segment < creditModifiers.length; segment++) {
+            for (int period = ruleSet.minimumLoanPeriod(); period <= ruleSet.maximumLoanPeriod(); period++) {
+                for (int amount = ruleSet.minimumLoanAmount(); amount <= ruleSet.maximumLoanAmount();
+                     amount += ruleSet.loanAmountStep()) {
+                    Decision decision = search.decide(creditModifiers[segment], amount, period);
+                    decisions[index(segment, amount, period)] = distinct.computeIfAbsent(decision, d -> d);
+                }
+            }
+        }
+
+        this.estimatedSizeBytes = estimateSize(distinct.size());
+        this.buildTimeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Checks whether the given credit modifier is in the table and the amount lies on the grid.
+     *
+     * @param creditModifier Credit modifier of the applicant, which a credit registry may report outside the segments
+     * @param loanAmount     Requested loan amount, already validated to be within limits
+     * @return true if the decision for this modifier and amount can be looked up
+     */
+    boolean covers(int creditModifier, int loanAmount) {
+        return segmentOf(creditModifier) >= 0
+                && (loanAmount - ruleSet.minimumLoanAmount()) % ruleSet.loanAmountStep() == 0;
+    }
+
+    /**
+     * Looks up the decision for an amount covered by the table.
+     *
+     * @param creditModifier Credit modifier of the applicant, one of those in the table
+     * @param loanAmount     Requested loan amount on the grid
+     * @param loanPeriod     Requested loan period
+     * @return The precomputed decision, NO_VALID_LOAN if there is no valid loan for the given parameters
+     */
+    Decision lookup(int creditModifier, int loanAmount, int loanPeriod) {
+        int segment = segmentOf(creditModifier);
+        if (segment < 0) {
+            throw new IllegalArgumentException("Unknown credit modifier " + creditModifier);
+        }
+        return decisions[index(segment, loanAmount, loanPeriod)];
+    }
+
+    /**
+     * @return Rule set the table was built for
+     */
+    RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    /**
+     * @return Number of cells in the table
+     */
+    int size() {
+        return decisions.length;
+    }
+
+    /**
+     * @return Time it took to build the table, in nanoseconds
+     */
+    long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+
+    /**
+     * @return Estimated heap usage of the table and the decisions it references, in bytes
+     */
+    long getEstimatedSizeBytes() {
+        return estimatedSizeBytes;
+    }
+
+    private int segmentOf(int creditModifier) {
+        for (int segment = 0; segment < creditModifiers.length; segment++) {
+            if (creditModifiers[segment] == creditModifier) {
+                return segment;
+            }
+        }
+        return -1;
+    }
+
+    private int index(int segment, int loanAmount, int loanPeriod) {
+        int amountIndex = (loanAmount - ruleSet.minimumLoanAmount()) / ruleSet.loanAmountStep();
+        int periodIndex = loanPeriod - ruleSet.minimumLoanPeriod();
+        return (segment * periodCount + periodIndex) * amountCount + amountIndex;
+    }
+
+    private long estimateSize(int distinctDecisions) {
+        long references = align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + (long) REFERENCE_BYTES * decisions.length);
+        // Each decision holds three references, plus a boxed amount outside the Integer cache.
+        long decision = align(OBJECT_HEADER_BYTES + 3L * REFERENCE_BYTES);
+        long boxedInteger = align(OBJECT_HEADER_BYTES + Integer.BYTES);
+        return references + distinctDecisions * (decision + boxedInteger);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + OBJECT_ALIGNMENT_BYTES - 1) / OBJECT_ALIGNMENT_BYTES * OBJECT_ALIGNMENT_BYTES;
+    }
+
+    /**
+     * Computes a single decision while the table is being built.
+     */
+    @FunctionalInterface
+    interface DecisionSearch {
+        Decision decide(int creditModifier, int loanAmount, int loanPeriod);
+    }
+}
@@ -0,0 +1,136 @@
+package ee.taltech.inbankbackend.service;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Traces decisions with OpenTelemetry spans. A decision span carries the country, the outcome and the number of
+ * credit scores computed, and has a child span per phase: parsing the personal code, verifying the inputs and the
+ * age, waiting for the credit modifier and searching for the loan. The decision span is a child of the span of the
+ * HTTP request, on which the servlet controller marks when the request body was bound.<br><br>
+ * Spans are sampled with management.tracing.sampling.probability and exported by the SpanExporter beans, see
+ * TracingConfig. A decision is traced if its parent span is recorded, or if it has none and sampling is on.
+ * Otherwise no span is created at all and the phases are skipped, so that a decision that is not traced costs a
+ * lookup of the current span. Without a tracer provider, or with tracing disabled, nothing is traced.
+ */
+@Component
+public class DecisionTracing {
+
+    public static final String DECISION = "decision";
+    public static final String PARSE = "decision.parse";
+    public static final String VERIFY = "decision.verify";
+    public static final String CREDIT_MODIFIER = "decision.credit-modifier";
+    public static final String SEARCH = "decision.search";
+    public static final String AUDIT = "decision.audit";
+    public static final String REQUEST_BOUND = "decision.request.bound";
+    public static final AttributeKey<String> COUNTRY = AttributeKey.stringKey("decision.country");
+    public static final AttributeKey<String> OUTCOME = AttributeKey.stringKey("decision.outcome");
+    public static final AttributeKey<Long> SCORE_EVALUATIONS = AttributeKey.longKey("decision.score_evaluations");
+    static final String INSTRUMENTATION_SCOPE = "ee.taltech.inbankbackend";
+
+    private final Tracer tracer;
+    private final boolean sampling;
+
+    /**
+     * Creates tracing without a tracer provider, which never starts a span, as for the candidate engine of
+     * ShadowEvaluator, whose decisions are not part of any request.
+     */
+    public DecisionTracing() {
+        this(OpenTelemetry.noop(), 0);
+    }
+
+    @Autowired
+    DecisionTracing(ObjectProvider<OpenTelemetry> openTelemetry,
+                    @Value("${management.tracing.sampling.probability:0.1}") double samplingProbability) {
+        this(openTelemetry.getIfAvailable(OpenTelemetry::noop), samplingProbability);
+    }
+
+    /**
+     * @param openTelemetry       OpenTelemetry whose tracer provider samples and exports the spans
+     * @param samplingProbability Probability with which the sampler of the tracer provider samples a decision
+     *                            without a parent span; 0 if it never does
+     */
+    public DecisionTracing(OpenTelemetry openTelemetry, double samplingProbability) {
+        this.tracer = openTelemetry.getTracer(INSTRUMENTATION_SCOPE);
+        this.sampling = samplingProbability > 0;
+    }
+
+    /**
+     * Starts the span of a decision as a child of the current span.
+     *
+     * @param country Country of the request, may be null
+     * @return The decision span, or an invalid span that records nothing if the decision is not traced
+     */
+    public Span startDecision(Countries country) {
+        Span parent = Span.current();
+        if (!parent.isRecording() && (parent.getSpanContext().isValid() || !sampling)) {
+            return Span.getInvalid();
+        }
+        return tracer.spanBuilder(DECISION)
+                .setAttribute(COUNTRY, country == null ? DecisionMetrics.UNKNOWN_COUNTRY : country.name().toLowerCase())
+                .startSpan();
+    }
+
+    /**
+     * Starts the span of a phase of a decision.
+     *
+     * @param decision Span returned by startDecision
+     * @param phase    Name of the phase
+     * @return The phase span, or an invalid span that records nothing if the decision is not traced
+     */
+    public Span startPhase(Span decision, String phase) {
+        if (!decision.isRecording()) {
+            return Span.getInvalid();
+        }
+        return tracer.spanBuilder(phase).setParent(Context.current().with(decision)).startSpan();
+    }
+
+    /**
+     * Starts a span as a child of the current span, if that is recorded.
+     *
+     * @param name Name of the span
+     * @return The span, or an invalid span that records nothing if the current span is not recorded
+     */
+    public Span startChild(String name) {
+        if (!Span.current().isRecording()) {
+            return Span.getInvalid();
+        }
+        return tracer.spanBuilder(name).startSpan();
+    }
+
+    /**
+     * Marks an event on the current span, if that is recorded.
+     *
+     * @param name Name of the event
+     */
+    public void addEvent(String name) {
+        Span current = Span.current();
+        if (current.isRecording()) {
+            current.addEvent(name);
+        }
+    }
+
+    /**
+     * Records the outcome of a decision on its span and ends it.
+     *
+     * @param decisionSpan     Span returned by startDecision
+     * @param loanAmount       Requested loan amount, may be null
+     * @param loanPeriod       Requested loan period
+     * @param decision         Decision returned to the customer
+     * @param scoreEvaluations Number of credit scores computed for the decision
+     */
+    void endDecision(Span decisionSpan, Long loanAmount, int loanPeriod, Decision decision, int scoreEvaluations) {
+        if (decisionSpan.isRecording()) {
+            decisionSpan.setAttribute(OUTCOME, DecisionMetrics.outcomeTag(loanAmount, loanPeriod, decision));
+            decisionSpan.setAttribute(SCORE_EVALUATIONS, scoreEvaluations);
+            decisionSpan.end();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ee.taltech.inbankbackend.service;
+
+/**
+ * Allocation-free parser for the 11-digit Estonian personal ID code GYYMMDDSSSC, where G gives the gender
+ * and the century of birth, YYMMDD is the date of birth, SSS is a serial number and C is a check digit.
+ * A single pass over the characters validates the code and extracts the date of birth and the segment,
+ * which is the number formed by the last four digits. Invalid codes are reported by a return value,
+ * never by an exception.
+ * The rules match the java-personal-code library, including the rejection of a February 29
+ * in a year that is not a leap year.
+ */
+public final class EstonianPersonalCode {
+
+    /**
+     * Returned by parse for a code that is not valid.
+     */
+    public static final long INVALID = -1L;
+
+    /**
+     * Number of characters in a code.
+     */
+    public static final int LENGTH = 11;
+
+    private static final int CHECK_DIGIT_INDEX = 10;
+    private static final int SEGMENT_START_INDEX = 7;
+    private static final int SEGMENT_FACTOR = 10_000;
+    private static final int CHECKSUM_MODULUS = 11;
+    private static final int[] FIRST_WEIGHTS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 1};
+    private static final int[] SECOND_WEIGHTS = {3, 4, 5, 6, 7, 8, 9, 1, 2, 3};
+    // Days per month as accepted by the code format, February always allows 29.
+    private static final int[] MAX_DAYS = {0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int FEBRUARY = 2;
+    private static final int LEAP_DAY = 29;
+
+    private EstonianPersonalCode() {
+    }
+
+    /**
+     * Validates a personal ID code and extracts its date of birth and segment.
+     *
+     * @param code Personal ID code, may be null
+     * @return The date of birth as yyyymmdd multiplied by 10000 plus the segment, or INVALID
+     */
+    public static long parse(CharSequence code) {
+        if (code == null || code.length() != LENGTH) {
+            return INVALID;
+        }
+
+        int firstSum = 0;
+        int secondSum = 0;
+        int centuryDigit = 0;
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int segment = 0;
+        for (int i = 0; i < CHECK_DIGIT_INDEX; i++) {
+            int digit = code.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            firstSum += digit * FIRST_WEIGHTS[i];
+            secondSum += digit * SECOND_WEIGHTS[i];
+            if (i == 0) {
+                centuryDigit = digit;
+            } else if (i < 3) {
+                year = year * 10 + digit;
+            } else if (i < 5) {
+                month = month * 10 + digit;
+            } else if (i < SEGMENT_START_INDEX) {
+                day = day * 10 + digit;
+            } else {
+                segment = segment * 10 + digit;
+            }
+        }
+        int checkDigit = code.charAt(CHECK_DIGIT_INDEX) - '0';
+        if (checkDigit < 0 || checkDigit > 9) {
+            return INVALID;
+        }
+        segment = segment * 10 + checkDigit;
+
+        if (centuryDigit < 1 || centuryDigit > 6 || month < 1 || month > 12 || day < 1 || day > MAX_DAYS[month]) {
+            return INVALID;
+        }
+        if (checkDigit != checkDigit(firstSum, secondSum)) {
+            return INVALID;
+        }
+
+        // 1 and 2 are born in the 1800s, 3 and 4 in the 1900s, 5 and 6 in the 2000s.
+        year += 1800 + (centuryDigit - 1) / 2 * 100;
+        if (month == FEBRUARY && day == LEAP_DAY && !isLeapYear(year)) {
+            return INVALID;
+        }
+        return (long) CompactDate.of(year, month, day) * SEGMENT_FACTOR + segment;
+    }
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The date of birth as yyyymmdd
+     */
+    public static int dateOfBirth(long parsed) {
+        return (int) (parsed / SEGMENT_FACTOR);
+    }
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The number formed by the last four digits of the code
+     */
+    public static int segment(long parsed) {
+        return (int) (parsed % SEGMENT_FACTOR);
+    }
+
+    private static int checkDigit(int firstSum, int secondSum) {
+        int remainder = firstSum % CHECKSUM_MODULUS;
+        if (remainder == 10) {
+            remainder = secondSum % CHECKSUM_MODULUS;
+        }
+        return remainder == 10 ? 0 : remainder;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
@@ -0,0 +1,26 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Holds the per-request state of a single loan evaluation.
+ * A new instance is created for every call of the decision engine, so the engine itself stays stateless.
+ */
+@Data
+@RequiredArgsConstructor
+class EvaluationContext {
+    // Rules in force when the request arrived, used for the whole evaluation even if a new version comes in.
+    private final RuleSet ruleSet;
+    private final int creditModifier;
+    // Number of credit scores computed for this request, reported as a metric.
+    private int scoreEvaluations;
+
+    /**
+     * Counts one credit score computation.
+     */
+    void countScoreEvaluation() {
+        scoreEvaluations++;
+    }
+}
@@ -0,0 +1,115 @@
+package ee.taltech.inbankbackend.service;
+
+/**
+ * Allocation-free parser for the 11-character Finnish personal identity code DDMMYYCZZZQ, where DDMMYY is the date
+ * of birth, C is the century sign, ZZZ is the individual number and Q is the control character.
+ * A single pass over the characters validates the code and extracts the date of birth and the segment,
+ * which is the number formed by the last four digits once the century sign and the control character are left
+ * out. Invalid codes are reported by a return value, never by an exception.
+ * The century signs are + for the 1800s, - and Y, X, W, V, U for the 1900s and A to F for the 2000s. Individual
+ * numbers from 900 on are temporary identities and are refused.
+ */
+public final class FinnishPersonalCode {
+
+    /**
+     * Returned by parse for a code that is not valid.
+     */
+    public static final long INVALID = -1L;
+
+    /**
+     * Number of characters in a code.
+     */
+    public static final int LENGTH = 11;
+
+    private static final int CENTURY_SIGN_INDEX = 6;
+    private static final int CONTROL_CHARACTER_INDEX = 10;
+    private static final int SEGMENT_FACTOR = 10_000;
+    private static final int MINIMUM_INDIVIDUAL_NUMBER = 2;
+    private static final int MAXIMUM_INDIVIDUAL_NUMBER = 899;
+    private static final String CONTROL_CHARACTERS = "0123456789ABCDEFHJKLMNPRSTUVWXY";
+    // Days per month as accepted by the code format, February always allows 29.
+    private static final int[] MAX_DAYS = {0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int FEBRUARY = 2;
+    private static final int LEAP_DAY = 29;
+
+    private FinnishPersonalCode() {
+    }
+
+    /**
+     * Validates a personal identity code and extracts its date of birth and segment.
+     *
+     * @param code Personal identity code, may be null
+     * @return The date of birth as yyyymmdd multiplied by 10000 plus the segment, or INVALID
+     */
+    public static long parse(CharSequence code) {
+        if (code == null || code.length() != LENGTH) {
+            return INVALID;
+        }
+        int century = century(code.charAt(CENTURY_SIGN_INDEX));
+        if (century < 0) {
+            return INVALID;
+        }
+
+        // The date of birth and the individual number as one number; the control character stands for its remainder.
+        int number = 0;
+        for (int i = 0; i < CONTROL_CHARACTER_INDEX; i++) {
+            if (i == CENTURY_SIGN_INDEX) {
+                continue;
+            }
+            int digit = code.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            number = number * 10 + digit;
+        }
+        if (code.charAt(CONTROL_CHARACTER_INDEX) != CONTROL_CHARACTERS.charAt(number % CONTROL_CHARACTERS.length())) {
+            return INVALID;
+        }
+
+        int individualNumber = number % 1000;
+        int dateDigits = number / 1000;
+        int day = dateDigits / 10_000;
+        int month = dateDigits / 100 % 100;
+        int year = century + dateDigits % 100;
+        if (individualNumber < MINIMUM_INDIVIDUAL_NUMBER || individualNumber > MAXIMUM_INDIVIDUAL_NUMBER
+                || month < 1 || month > 12 || day < 1 || day > MAX_DAYS[month]) {
+            return INVALID;
+        }
+        if (month == FEBRUARY && day == LEAP_DAY && !isLeapYear(year)) {
+            return INVALID;
+        }
+        return (long) CompactDate.of(year, month, day) * SEGMENT_FACTOR + number % SEGMENT_FACTOR;
+    }
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The date of birth as yyyymmdd
+     */
+    public static int dateOfBirth(long parsed) {
+        return (int) (parsed / SEGMENT_FACTOR);
+    }
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The number formed by the last four digits of the code
+     */
+    public static int segment(long parsed) {
+        return (int) (parsed % SEGMENT_FACTOR);
+    }
+
+    /**
+     * @return The first year of the century a century sign stands for, or -1 if it is not a century sign
+     */
+    private static int century(char sign) {
+        return switch (sign) {
+            case '+' -> 1800;
+            case '-', 'Y', 'X', 'W', 'V', 'U' -> 1900;
+            case 'A', 'B', 'C', 'D', 'E', 'F' -> 2000;
+            default -> -1;
+        };
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
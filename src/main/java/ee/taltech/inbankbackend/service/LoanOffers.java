@@ -0,0 +1,63 @@
+package ee.taltech.inbankbackend.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The highest approvable loan amount for every loan period of the rule set, for one applicant.
+ * The amounts depend only on the rule set and the credit modifier of the applicant, so both are kept to tell
+ * whether two offer matrices are the same.
+ */
+@Data
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class LoanOffers {
+
+    private final DecisionOutcome outcome;
+    // Version and fingerprint of the rules the offers were computed by, 0 for a rejection.
+    private final int ruleSetVersion;
+    private final long ruleSetFingerprint;
+    private final int creditModifier;
+    private final Integer firstLoanPeriod;
+    // Highest approvable amount for the periods firstLoanPeriod, firstLoanPeriod + 1, ..., 0 if none.
+    private final int[] loanAmounts;
+
+    /**
+     * @param ruleSetVersion     Version of the rules the offers were computed by
+     * @param ruleSetFingerprint Fingerprint of the rules the offers were computed by, see RuleSet.fingerprint
+     * @param creditModifier     Credit modifier of the applicant
+     * @param firstLoanPeriod    Loan period of the first amount
+     * @param loanAmounts        Highest approvable amount per loan period, 0 if none
+     * @return Approved offers
+     */
+    public static LoanOffers approved(int ruleSetVersion, long ruleSetFingerprint, int creditModifier,
+                                      int firstLoanPeriod, int[] loanAmounts) {
+        return new LoanOffers(DecisionOutcome.APPROVED, ruleSetVersion, ruleSetFingerprint, creditModifier,
+                firstLoanPeriod, loanAmounts);
+    }
+
+    /**
+     * @param outcome Reason no loan is offered, any outcome except APPROVED
+     * @return Offers holding only the outcome
+     */
+    public static LoanOffers rejected(DecisionOutcome outcome) {
+        if (outcome == DecisionOutcome.APPROVED) {
+            throw new IllegalArgumentException("Not a rejection: " + outcome);
+        }
+        return new LoanOffers(outcome, 0, 0, 0, null, null);
+    }
+
+    /**
+     * @return true if a loan is offered for at least one period
+     */
+    public boolean isApproved() {
+        return outcome == DecisionOutcome.APPROVED;
+    }
+
+    /**
+     * @return The error message of the outcome, or null if loans are offered
+     */
+    public String getErrorMessage() {
+        return outcome.getErrorMessage();
+    }
+}
@@ -0,0 +1,19 @@
+package ee.taltech.inbankbackend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Holds what the decision engine needs from a personal ID code: whether it is valid, the date of birth
+ * as yyyymmdd and the segment number formed by its last four digits.
+ * The age is not stored, as it depends on the current date.
+ */
+@Data
+@AllArgsConstructor
+public class ParsedPersonalCode {
+    public static final ParsedPersonalCode INVALID = new ParsedPersonalCode(false, 0, 0);
+
+    private final boolean valid;
+    private final int dateOfBirth;
+    private final int segment;
+}
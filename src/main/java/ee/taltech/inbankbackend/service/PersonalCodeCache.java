@@ -0,0 +1,123 @@
+package ee.taltech.inbankbackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded cache of parsed personal ID codes, so that repeat applicants adjusting the amount or period
+ * skip validation and parsing. Entries are evicted by size and by time since they were written.
+ * Every personal code format has its own cache, looked up by the ordinal of the format, as the same characters
+ * can be valid in one format and not in another. The statistics of every cache are reported through DecisionMetrics.
+ * Only valid codes are cached: codes of the wrong length are rejected before the lookup and other invalid codes
+ * are parsed every time, so that requests with made-up codes cannot fill the cache and evict real applicants.
+ */
+@Component
+public class PersonalCodeCache {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private final List<Cache<String, ParsedPersonalCode>> caches = new ArrayList<>();
+
+    /**
+     * Creates a cache with the default size and time to live, whose statistics are not exported.
+     */
+    public PersonalCodeCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, new DecisionMetrics());
+    }
+
+    /**
+     * @param maximumSize     Most codes cached per personal code format
+     * @param timeToLive      Time a parsed code is kept after it was parsed
+     * @param decisionMetrics Metrics the statistics of the caches are reported to
+     */
+    @Autowired
+    public PersonalCodeCache(@Value("${decision-engine.personal-code-cache.maximum-size:100000}") long maximumSize,
+                             @Value("${decision-engine.personal-code-cache.time-to-live:10m}")
+                             Duration timeToLive, DecisionMetrics decisionMetrics) {
+        for (PersonalCodeFormat format : PersonalCodeFormat.values()) {
+            Cache<String, ParsedPersonalCode> cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(timeToLive)
+                    .recordStats()
+                    .build();
+            decisionMetrics.monitorPersonalCodeCache(cache, format);
+            caches.add(cache);
+        }
+    }
+
+    /**
+     * Returns the parsed form of a personal ID code in the Estonian format, parsing it only if it is not cached yet.
+     *
+     * @param personalCode Provided personal ID code
+     * @return The parsed code, or ParsedPersonalCode.INVALID if the code is not valid
+     */
+    public ParsedPersonalCode get(String personalCode) {
+        return get(personalCode, PersonalCodeFormat.ESTONIAN);
+    }
+
+    /**
+     * Returns the parsed form of a personal ID code in the format of the country, parsing it only if it is not
+     * cached yet.
+     *
+     * @param personalCode Provided personal ID code
+     * @param country      Country where the customer applies for the loan, may be null
+     * @return The parsed code, or ParsedPersonalCode.INVALID if the code is not valid
+     */
+    public ParsedPersonalCode get(String personalCode, Countries country) {
+        return get(personalCode, CountryRegistry.personalCodeFormat(country));
+    }
+
+    private ParsedPersonalCode get(String personalCode, PersonalCodeFormat format) {
+        if (personalCode == null || personalCode.length() != format.length()) {
+            return ParsedPersonalCode.INVALID;
+        }
+        Cache<String, ParsedPersonalCode> cache = caches.get(format.ordinal());
+        ParsedPersonalCode cached = cache.getIfPresent(personalCode);
+        if (cached != null) {
+            return cached;
+        }
+        ParsedPersonalCode parsed = parse(personalCode, format);
+        if (parsed.isValid()) {
+            cache.put(personalCode, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return Hit, miss and eviction counters of the caches of all formats since they were created
+     */
+    public CacheStats stats() {
+        return caches.stream().map(Cache::stats).reduce(CacheStats.empty(), CacheStats::plus);
+    }
+
+    /**
+     * @return Approximate number of cached codes of all formats
+     */
+    public long size() {
+        return caches.stream().mapToLong(Cache::estimatedSize).sum();
+    }
+
+    /**
+     * Performs pending evictions right away instead of during later cache operations.
+     */
+    void cleanUp() {
+        caches.forEach(Cache::cleanUp);
+    }
+
+    private static ParsedPersonalCode parse(String personalCode, PersonalCodeFormat format) {
+        long parsed = format.parse(personalCode);
+        if (parsed == PersonalCodeFormat.INVALID) {
+            return ParsedPersonalCode.INVALID;
+        }
+        return new ParsedPersonalCode(true, format.dateOfBirth(parsed), format.segment(parsed));
+    }
+}
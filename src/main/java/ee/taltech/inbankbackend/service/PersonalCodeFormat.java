@@ -0,0 +1,88 @@
+package ee.taltech.inbankbackend.service;
+
+/**
+ * Format of the personal ID codes of a country: how a code is validated and parsed, and how the date of birth and
+ * the segment are extracted from the result. Parsing runs the allocation-free parser of the format, which returns
+ * the date of birth and the segment packed into a long, or -1 for a code that is not valid.
+ * CountryRegistry tells the format of every country.
+ */
+public enum PersonalCodeFormat {
+
+    /**
+     * GYYMMDDSSSC, used in Estonia and Lithuania, see EstonianPersonalCode.
+     */
+    ESTONIAN(EstonianPersonalCode.LENGTH) {
+        @Override
+        public long parse(CharSequence code) {
+            return EstonianPersonalCode.parse(code);
+        }
+
+        @Override
+        public int dateOfBirth(long parsed) {
+            return EstonianPersonalCode.dateOfBirth(parsed);
+        }
+
+        @Override
+        public int segment(long parsed) {
+            return EstonianPersonalCode.segment(parsed);
+        }
+    },
+
+    /**
+     * DDMMYYCZZZQ, used in Finland, see FinnishPersonalCode.
+     */
+    FINNISH(FinnishPersonalCode.LENGTH) {
+        @Override
+        public long parse(CharSequence code) {
+            return FinnishPersonalCode.parse(code);
+        }
+
+        @Override
+        public int dateOfBirth(long parsed) {
+            return FinnishPersonalCode.dateOfBirth(parsed);
+        }
+
+        @Override
+        public int segment(long parsed) {
+            return FinnishPersonalCode.segment(parsed);
+        }
+    };
+
+    /**
+     * Returned by parse for a code that is not valid.
+     */
+    public static final long INVALID = -1L;
+
+    private final int length;
+
+    PersonalCodeFormat(int length) {
+        this.length = length;
+    }
+
+    /**
+     * @return Number of characters in a code of the format; codes of any other length are not valid
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Validates a personal ID code and extracts its date of birth and segment.
+     *
+     * @param code Personal ID code, may be null
+     * @return The parsed code, or INVALID
+     */
+    public abstract long parse(CharSequence code);
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The date of birth as yyyymmdd
+     */
+    public abstract int dateOfBirth(long parsed);
+
+    /**
+     * @param parsed Valid result of parse
+     * @return The segment the credit modifier is derived from, between 0 and 9999
+     */
+    public abstract int segment(long parsed);
+}
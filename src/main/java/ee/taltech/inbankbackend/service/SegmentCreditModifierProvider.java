@@ -0,0 +1,96 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Default credit modifier provider, which derives the segment of the applicant from the last four digits of
+ * their ID code and the segments of the rule set in force. Used unless the credit registry is enabled.
+ */
+@Component
+@ConditionalOnProperty(name = CreditRegistryModifierProvider.ENABLED_PROPERTY, havingValue = "false",
+        matchIfMissing = true)
+public class SegmentCreditModifierProvider implements CreditModifierProvider {
+
+    private final RuleSetHolder ruleSetHolder;
+    // The answer is known immediately, so every request shares one completed future per segment.
+    // Rebuilt for every new rule set before it comes into force, and only used by requests on that rule set.
+    private volatile Segments segments;
+
+    /**
+     * Creates a provider using the built-in segments.
+     */
+    public SegmentCreditModifierProvider() {
+        this(new RuleSetHolder());
+    }
+
+    @Autowired
+    public SegmentCreditModifierProvider(RuleSetHolder ruleSetHolder) {
+        this.ruleSetHolder = ruleSetHolder;
+        this.segments = new Segments(ruleSetHolder.getRuleSet());
+        ruleSetHolder.addListener(ruleSet -> segments = new Segments(ruleSet));
+    }
+
+    /**
+     * Calculates the credit modifier of the customer to according to the last four digits of their ID code.
+     * The built-in segments are:
+     * Debt - 0000...2499
+     * Segment 1 - 2500...4999
+     * Segment 2 - 5000...7499
+     * Segment 3 - 7500...9999
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param segment      Last four digits of the ID code of the customer that made the request.
+     * @return An already completed future of the credit modifier of the segment the customer belongs to.
+     */
+    @Override
+    public CompletableFuture<Integer> getCreditModifier(String personalCode, int segment) {
+        return getCreditModifier(personalCode, segment, ruleSetHolder.getRuleSet());
+    }
+
+    /**
+     * Calculates the credit modifier like getCreditModifier(personalCode, segment), from the segments of the
+     * given rules. A request still on the previous rules while a new rule set is prepared or put in force gets the
+     * segments of the previous rules, worked out for the request.
+     *
+     * @param personalCode ID code of the customer that made the request.
+     * @param segment      Last four digits of the ID code of the customer that made the request.
+     * @param ruleSet      Rules in force when the request arrived
+     * @return A completed future of the credit modifier of the segment the customer belongs to under the rules
+     */
+    @Override
+    public CompletableFuture<Integer> getCreditModifier(String personalCode, int segment, RuleSet ruleSet) {
+        Segments current = segments;
+        return (current.ruleSet == ruleSet ? current : new Segments(ruleSet)).creditModifierOf(segment);
+    }
+
+    private static final class Segments {
+
+        private final RuleSet ruleSet;
+        private final int[] ceilings;
+        private final List<CompletableFuture<Integer>> creditModifiers;
+
+        private Segments(RuleSet ruleSet) {
+            this.ruleSet = ruleSet;
+            this.ceilings = ruleSet.segments().stream().mapToInt(RuleSet.Segment::ceiling).toArray();
+            this.creditModifiers = ruleSet.segments().stream()
+                    .map(segment -> CompletableFuture.completedFuture(segment.creditModifier()))
+                    .toList();
+        }
+
+        private CompletableFuture<Integer> creditModifierOf(int lastFourDigits) {
+            for (int segment = 0; segment < ceilings.length - 1; segment++) {
+                if (lastFourDigits < ceilings[segment]) {
+                    return creditModifiers.get(segment);
+                }
+            }
+            return creditModifiers.get(ceilings.length - 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ee.taltech.inbankbackend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A request on which the candidate rule set decided differently from the rules in force. The personal code is
+ * masked down to its last four digits, which choose the credit segment.
+ */
+@Data
+@AllArgsConstructor
+public class ShadowDifference {
+    // Trailing digits of the personal code kept by mask, the ones credit segments are chosen by.
+    private static final int SEGMENT_DIGITS = 4;
+
+    private Instant timestamp;
+    private String personalCode;
+    private Long loanAmount;
+    private int loanPeriod;
+    private Countries country;
+    private Decision primary;
+    private Decision candidate;
+    private Kind kind;
+
+    /**
+     * @param personalCode ID code of the customer, may be null
+     * @return The personal code with all but its last four characters replaced by '*', entirely if it is no
+     * longer than four characters, null if it is null
+     */
+    static String mask(String personalCode) {
+        if (personalCode == null) {
+            return null;
+        }
+        int length = personalCode.length();
+        int hidden = length > SEGMENT_DIGITS ? length - SEGMENT_DIGITS : length;
+        return "*".repeat(hidden) + personalCode.substring(hidden);
+    }
+
+    /**
+     * How a candidate decision differs from the primary one.
+     */
+    public enum Kind {
+        MATCH("match"),
+        // One decision approves a loan and the other does not.
+        APPROVAL("approval"),
+        // Both reject, for different reasons.
+        OUTCOME("outcome"),
+        AMOUNT("amount"),
+        PERIOD("period"),
+        AMOUNT_AND_PERIOD("amount_and_period");
+
+        private final String tag;
+
+        Kind(String tag) {
+            this.tag = tag;
+        }
+
+        String getTag() {
+            return tag;
+        }
+
+        /**
+         * @param primary   Decision returned to the customer
+         * @param candidate Decision of the candidate rule set
+         * @return How the candidate decision differs, MATCH if it does not
+         */
+        static Kind of(Decision primary, Decision candidate) {
+            if (primary.isApproved() != candidate.isApproved()) {
+                return APPROVAL;
+            }
+            if (!primary.isApproved()) {
+                return primary.getOutcome() == candidate.getOutcome() ? MATCH : OUTCOME;
+            }
+            boolean amount = !Objects.equals(primary.getLoanAmount(), candidate.getLoanAmount());
+            boolean period = !Objects.equals(primary.getLoanPeriod(), candidate.getLoanPeriod());
+            return amount && period ? AMOUNT_AND_PERIOD : amount ? AMOUNT : period ? PERIOD : MATCH;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ee.taltech.inbankbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import ee.taltech.inbankbackend.config.RuleSetWatcher;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides every request a second time under a candidate rule set, so a new rule set can be compared with the one
+ * in force on live traffic before it is rolled out. The candidate decision is never returned to the customer.<br><br>
+ * The comparison runs on a small pool of its own behind a bounded queue. The request thread only hands the request
+ * over; if the queue is full the comparison is skipped and counted as shed, so shadow work never delays a response.
+ * Every comparison is counted by kind of difference, and the latest differences are kept in a fixed-size ring
+ * buffer. The candidate rules are read from decision-engine.shadow.rules-location and reloaded when it changes.
+ */
+@Slf4j
+@Component
+public class ShadowEvaluator {
+
+    private final boolean enabled;
+    private final RuleSetHolder candidateRules;
+    private final RuleSetWatcher candidateWatcher;
+    private final DecisionEngine candidateEngine;
+    private final DecisionMetrics decisionMetrics;
+    private final ThreadPoolExecutor executor;
+    // Ring buffer of the latest differences; next is the total number ever recorded.
+    private final ShadowDifference[] differences;
+    private long next;
+
+    /**
+     * Creates a disabled evaluator that compares nothing, the one of the candidate engine, whose decisions are not
+     * compared again.
+     */
+    public ShadowEvaluator() {
+        this.enabled = false;
+        this.candidateRules = null;
+        this.candidateWatcher = null;
+        this.candidateEngine = null;
+        this.decisionMetrics = null;
+        this.executor = null;
+        this.differences = new ShadowDifference[0];
+    }
+
+    @Autowired
+    ShadowEvaluator(PersonalCodeCache personalCodeCache, CreditModifierProvider creditModifierProvider,
+                    DecisionMetrics decisionMetrics, ObjectMapper objectMapper,
+                    @Value("${decision-engine.shadow.enabled:false}") boolean enabled,
+                    @Value("${decision-engine.shadow.rules-location:}") String rulesLocation,
+                    @Value("${decision-engine.shadow.threads:1}") int threads,
+                    @Value("${decision-engine.shadow.queue-capacity:1000}") int queueCapacity,
+                    @Value("${decision-engine.shadow.history-size:1000}") int historySize) throws IOException {
+        this(enabled ? candidateRules(rulesLocation, objectMapper) : null, personalCodeCache,
+                creditModifierProvider, decisionMetrics, threads, queueCapacity, historySize);
+    }
+
+    /**
+     * Creates an evaluator comparing the rules in force with the given candidate rules.
+     *
+     * @param candidateRules         Candidate rules, or null to create a disabled evaluator
+     * @param personalCodeCache      Cache shared with the primary engine
+     * @param creditModifierProvider Provider of the primary engine
+     * @param decisionMetrics        Metrics the comparisons are counted in
+     * @param threads                Threads deciding under the candidate rules
+     * @param queueCapacity          Requests waiting for a shadow thread before further requests are shed
+     * @param historySize            Number of latest differences kept
+     */
+    ShadowEvaluator(RuleSetHolder candidateRules, PersonalCodeCache personalCodeCache,
+                    CreditModifierProvider creditModifierProvider, DecisionMetrics decisionMetrics, int threads,
+                    int queueCapacity, int historySize) throws IOException {
+        if (candidateRules != null && historySize < 1) {
+            throw new IllegalArgumentException("decision-engine.shadow.history-size must be positive");
+        }
+        this.enabled = candidateRules != null;
+        this.candidateRules = candidateRules;
+        this.decisionMetrics = decisionMetrics;
+        this.differences = new ShadowDifference[enabled ? historySize : 0];
+        if (!enabled) {
+            this.candidateWatcher = null;
+            this.candidateEngine = null;
+            this.executor = null;
+            return;
+        }
+
+        this.candidateWatcher = new RuleSetWatcher(candidateRules, true);
+        // Segments are part of the rules, so the default provider has to follow the candidate rules as well.
+        CreditModifierProvider candidateProvider = creditModifierProvider instanceof SegmentCreditModifierProvider
+                ? new SegmentCreditModifierProvider(candidateRules) : creditModifierProvider;
+        // Metrics of its own, so that candidate decisions are not counted as decisions made.
+        this.candidateEngine = DecisionEngine.builder().personalCodeCache(personalCodeCache)
+                .decisionMetrics(new DecisionMetrics()).creditModifierProvider(candidateProvider)
+                .ruleSetHolder(candidateRules).build();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "decision-shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, pool) -> decisionMetrics.recordShadowShed());
+        log.info("Shadow evaluation against candidate rule set version {}", candidateRules.getRuleSet().version());
+    }
+
+    private static RuleSetHolder candidateRules(String location, ObjectMapper objectMapper) throws IOException {
+        if (location.isBlank()) {
+            throw new IllegalArgumentException("decision-engine.shadow.rules-location is required when shadow "
+                    + "evaluation is enabled");
+        }
+        return new RuleSetHolder(location, objectMapper);
+    }
+
+    /**
+     * Hands a decided request over for comparison under the candidate rules. Never blocks: if the shadow queue
+     * is full, the comparison is skipped.
+     *
+     * @param personalCode ID code of the customer that made the request
+     * @param loanAmount   Requested loan amount
+     * @param loanPeriod   Requested loan period
+     * @param country      Country of the request
+     * @param primary      Decision returned to the customer
+     */
+    void submit(String personalCode, Long loanAmount, int loanPeriod, Countries country, Decision primary) {
+        if (!enabled) {
+            return;
+        }
+        executor.execute(() -> compare(personalCode, loanAmount, loanPeriod, country, primary));
+    }
+
+    /**
+     * @return true if requests are compared with a candidate rule set
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The candidate rule set, or null if shadow evaluation is disabled
+     */
+    public RuleSet getCandidateRuleSet() {
+        return enabled ? candidateRules.getRuleSet() : null;
+    }
+
+    /**
+     * @return The latest differences, oldest first
+     */
+    public synchronized List<ShadowDifference> recentDifferences() {
+        int count = (int) Math.min(next, differences.length);
+        List<ShadowDifference> recent = new ArrayList<>(count);
+        for (long i = next - count; i < next; i++) {
+            recent.add(differences[(int) (i % differences.length)]);
+        }
+        return recent;
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (enabled) {
+            executor.shutdownNow();
+            candidateWatcher.close();
+        }
+    }
+
+    private void compare(String personalCode, Long loanAmount, int loanPeriod, Countries country,
+                         Decision primary) {
+        Decision candidate;
+        try {
+            candidate = candidateEngine.calculateApprovedLoan(personalCode, loanAmount, loanPeriod, country);
+        } catch (RuntimeException e) {
+            log.warn("Shadow evaluation failed", e);
+            return;
+        }
+        ShadowDifference.Kind kind = ShadowDifference.Kind.of(primary, candidate);
+        decisionMetrics.recordShadowComparison(kind);
+        if (kind != ShadowDifference.Kind.MATCH) {
+            record(new ShadowDifference(Instant.now(), ShadowDifference.mask(personalCode), loanAmount, loanPeriod,
+                    country, primary, candidate, kind));
+        }
+    }
+
+    private synchronized void record(ShadowDifference difference) {
+        differences[(int) (next % differences.length)] = difference;
+        next++;
+    }
+}
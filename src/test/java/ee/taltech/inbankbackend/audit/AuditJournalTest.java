@@ -0,0 +1,274 @@
+package ee.taltech.inbankbackend.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * This class holds tests for writing, reopening and replaying the audit journal.
+ */
+class AuditJournalTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+    private static final Duration FLUSH_INTERVAL = Duration.ofMillis(5);
+    private static final Duration SYNC_TIMEOUT = Duration.ofSeconds(10);
+    private static final int SEGMENT_RECORDS = 10;
+    private static final int CONCURRENT_WRITERS = 8;
+    private static final int RECORDS_PER_WRITER = 500;
+
+    @TempDir
+    Path directory;
+    private final List<AuditJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AuditJournal journal : journals) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void testRecordsAreReadBackWithAllFields() throws Exception {
+        AuditJournal journal = open(DataSize.ofMegabytes(1));
+        Instant before = Instant.now().minusMillis(1);
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        // Decided under later rules than the built-in ones, whatever rules are in force when it is appended.
+        journal.append(null, null, 0, null, Decision.rejected(DecisionOutcome.INVALID_PERSONAL_CODE, 2));
+        journal.append("a personal code far longer than a record holds", 2000L, 48, Countries.LITHUANIA,
+                Decision.rejected(DecisionOutcome.NO_VALID_LOAN));
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+
+        List<AuditEntry> entries = read();
+        assertEquals(3, entries.size());
+
+        AuditEntry approved = entries.get(0);
+        assertFalse(approved.getTimestamp().isBefore(before));
+        assertEquals(PERSONAL_CODE, approved.getPersonalCode());
+        assertEquals(4000L, approved.getLoanAmount());
+        assertEquals(12, approved.getLoanPeriod());
+        assertEquals(Countries.ESTONIA, approved.getCountry());
+        assertEquals(DecisionOutcome.APPROVED, approved.getOutcome());
+        assertEquals(3600, approved.getApprovedLoanAmount());
+        assertEquals(12, approved.getApprovedLoanPeriod());
+        assertEquals(DecisionEngineConstants.RULE_VERSION, approved.getRuleVersion());
+
+        AuditEntry invalid = entries.get(1);
+        assertNull(invalid.getPersonalCode());
+        assertNull(invalid.getLoanAmount());
+        assertNull(invalid.getCountry());
+        assertEquals(DecisionOutcome.INVALID_PERSONAL_CODE, invalid.getOutcome());
+        assertNull(invalid.getApprovedLoanAmount());
+        assertNull(invalid.getApprovedLoanPeriod());
+        assertEquals(2, invalid.getRuleVersion());
+
+        assertEquals(AuditRecordFormat.MAX_PERSONAL_CODE_BYTES, entries.get(2).getPersonalCode().length());
+        assertEquals(DecisionOutcome.NO_VALID_LOAN, entries.get(2).getOutcome());
+    }
+
+    @Test
+    void testSegmentsRollOver() throws Exception {
+        AuditJournal journal = open(DataSize.ofBytes(SEGMENT_RECORDS * AuditRecordFormat.RECORD_SIZE));
+        int records = SEGMENT_RECORDS * 2 + 5;
+        for (int period = 0; period < records; period++) {
+            journal.append(PERSONAL_CODE, 4000L, period, Countries.LATVIA, Decision.approved(4000, period));
+        }
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+
+        assertEquals(List.of("00000000000000000000.journal", "00000000000000000010.journal",
+                "00000000000000000020.journal"), segmentNames());
+        List<AuditEntry> entries = read();
+        assertEquals(records, entries.size());
+        for (int period = 0; period < records; period++) {
+            assertEquals(period, entries.get(period).getLoanPeriod());
+        }
+    }
+
+    @Test
+    void testReopenedJournalContinuesAfterLastRecord() throws Exception {
+        DataSize segmentSize = DataSize.ofBytes(SEGMENT_RECORDS * AuditRecordFormat.RECORD_SIZE);
+        AuditJournal first = open(segmentSize);
+        for (int period = 0; period < SEGMENT_RECORDS - 2; period++) {
+            first.append(PERSONAL_CODE, 4000L, period, Countries.ESTONIA, Decision.approved(4000, period));
+        }
+        first.close();
+
+        AuditJournal second = open(segmentSize);
+        for (int period = SEGMENT_RECORDS - 2; period < SEGMENT_RECORDS + 2; period++) {
+            second.append(PERSONAL_CODE, 4000L, period, Countries.ESTONIA, Decision.approved(4000, period));
+        }
+        assertTrue(second.sync(SYNC_TIMEOUT));
+
+        assertEquals(2, segmentNames().size());
+        List<AuditEntry> entries = read();
+        assertEquals(SEGMENT_RECORDS + 2, entries.size());
+        for (int period = 0; period < entries.size(); period++) {
+            assertEquals(period, entries.get(period).getLoanPeriod());
+        }
+    }
+
+    @Test
+    void testTornRecordEndsJournalAndIsOverwritten() throws Exception {
+        AuditJournal first = open(DataSize.ofMegabytes(1));
+        for (int period = 0; period < 3; period++) {
+            first.append(PERSONAL_CODE, 4000L, period, Countries.ESTONIA, Decision.approved(4000, period));
+        }
+        first.close();
+
+        // Simulates a crash in the middle of writing the third record.
+        try (FileChannel channel = FileChannel.open(directory.resolve(segmentNames().get(0)),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 2L * AuditRecordFormat.RECORD_SIZE + 10);
+        }
+        assertEquals(2, read().size());
+
+        AuditJournal second = open(DataSize.ofMegabytes(1));
+        second.append(PERSONAL_CODE, 4000L, 42, Countries.ESTONIA, Decision.approved(4000, 42));
+        assertTrue(second.sync(SYNC_TIMEOUT));
+
+        List<AuditEntry> entries = read();
+        assertEquals(3, entries.size());
+        assertEquals(42, entries.get(2).getLoanPeriod());
+    }
+
+    @Test
+    void testConcurrentAppendsAreAllRecorded() throws Exception {
+        AuditJournal journal = open(DataSize.ofKilobytes(64));
+        try (ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_WRITERS)) {
+            for (int writer = 0; writer < CONCURRENT_WRITERS; writer++) {
+                int period = writer;
+                executor.submit(() -> {
+                    for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+                        journal.append(PERSONAL_CODE, (long) i, period, Countries.ESTONIA,
+                                Decision.approved(4000, period));
+                    }
+                });
+            }
+        }
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+
+        int[] perWriter = new int[CONCURRENT_WRITERS];
+        long[] lastAmount = new long[CONCURRENT_WRITERS];
+        Arrays.fill(lastAmount, -1);
+        for (AuditEntry entry : read()) {
+            int writer = entry.getLoanPeriod();
+            perWriter[writer]++;
+            // Records of a single writer keep their order.
+            assertTrue(entry.getLoanAmount() > lastAmount[writer]);
+            lastAmount[writer] = entry.getLoanAmount();
+        }
+        for (int count : perWriter) {
+            assertEquals(RECORDS_PER_WRITER, count);
+        }
+    }
+
+    @Test
+    void testReplayWritesOneJsonLinePerRecord() throws Exception {
+        AuditJournal journal = open(DataSize.ofMegabytes(1));
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA,
+                Decision.rejected(DecisionOutcome.APPLICANT_HAS_DEBT));
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(2, AuditJournalReader.replay(directory, output, objectMapper));
+
+        String[] lines = output.toString().split("\n");
+        assertEquals(2, lines.length);
+        AuditEntry first = objectMapper.readValue(lines[0], AuditEntry.class);
+        assertEquals(3600, first.getApprovedLoanAmount());
+        assertTrue(lines[0].contains("\"outcome\":\"APPROVED\""));
+        assertTrue(lines[1].contains("\"outcome\":\"APPLICANT_HAS_DEBT\""));
+    }
+
+    @Test
+    void testWriterCarriesOnAfterFailedWrite() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AuditJournal journal = new AuditJournal(new DecisionMetrics(meterRegistry), true, directory,
+                DataSize.ofMegabytes(1), FLUSH_INTERVAL, 2);
+        journals.add(journal);
+
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        // A decision without an outcome cannot be encoded, so writing its record fails on the writer thread.
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, mock(Decision.class));
+        // With room for two entries in the queue, these would wait forever if the writer had stopped.
+        assertTimeoutPreemptively(SYNC_TIMEOUT, () -> {
+            for (int i = 0; i < SEGMENT_RECORDS; i++) {
+                journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA,
+                        Decision.rejected(DecisionOutcome.APPLICANT_HAS_DEBT));
+            }
+        });
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+
+        assertEquals(SEGMENT_RECORDS + 1, read().size());
+        assertEquals(1, meterRegistry.get("decision.audit.failed").counter().count());
+    }
+
+    @Test
+    void testDirectoryCanOnlyBeOpenedOnce() throws Exception {
+        open(DataSize.ofMegabytes(1));
+        assertThrows(IllegalStateException.class, () -> open(DataSize.ofMegabytes(1)));
+    }
+
+    @Test
+    void testDisabledJournalWritesNothing() throws Exception {
+        Path disabledDirectory = directory.resolve("disabled");
+        AuditJournal journal = new AuditJournal(false, disabledDirectory, DataSize.ofMegabytes(1), FLUSH_INTERVAL,
+                16);
+        journal.append(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        assertTrue(journal.sync(SYNC_TIMEOUT));
+        journal.close();
+        assertFalse(Files.exists(disabledDirectory));
+    }
+
+    private AuditJournal open(DataSize segmentSize) throws IOException {
+        AuditJournal journal = new AuditJournal(true, directory, segmentSize, FLUSH_INTERVAL, 1024);
+        journals.add(journal);
+        return journal;
+    }
+
+    private List<AuditEntry> read() throws IOException {
+        List<AuditEntry> entries = new ArrayList<>();
+        AuditJournalReader.forEach(directory, entries::add);
+        return entries;
+    }
+
+    private List<String> segmentNames() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(AuditJournal.SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ee.taltech.inbankbackend.audit;
+
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class holds tests for batching, overflow and spilling of the decision store, on an in-memory H2 database.
+ */
+class DecisionStoreTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+    private static final Duration SYNC_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration SHORT_LINGER = Duration.ofMillis(10);
+    private static final Duration RETRY_INTERVAL = Duration.ofMillis(20);
+    private static final int QUEUE_CAPACITY = 2;
+
+    @TempDir
+    Path spillDirectory;
+    private final List<DecisionStore> stores = new ArrayList<>();
+    private GatedDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    // An in-memory database is dropped when its last connection closes, so this one keeps it for the test.
+    private Connection keepAlive;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DriverManagerDataSource database = new DriverManagerDataSource("jdbc:h2:mem:store-" + UUID.randomUUID());
+        keepAlive = database.getConnection();
+        dataSource = new GatedDataSource(database);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dataSource.open();
+        for (DecisionStore store : stores) {
+            store.close();
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    void testDecisionsAreStoredWithAllFields() throws Exception {
+        DecisionStore store = open(10, SHORT_LINGER, 100, "block");
+        store.save(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        // Decided under later rules than the built-in ones, whatever rules are in force when it is saved.
+        store.save(null, null, 0, null, Decision.rejected(DecisionOutcome.INVALID_PERSONAL_CODE, 2));
+        assertTrue(store.sync(SYNC_TIMEOUT));
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT * FROM loan_decision ORDER BY id");
+        assertEquals(2, rows.size());
+        Map<String, Object> approved = rows.get(0);
+        assertNotNull(approved.get("DECIDED_AT"));
+        assertEquals(PERSONAL_CODE, approved.get("PERSONAL_CODE"));
+        assertEquals(4000L, approved.get("LOAN_AMOUNT"));
+        assertEquals(12, approved.get("LOAN_PERIOD"));
+        assertEquals("ESTONIA", approved.get("COUNTRY"));
+        assertEquals("APPROVED", approved.get("OUTCOME"));
+        assertEquals(3600, approved.get("APPROVED_LOAN_AMOUNT"));
+        assertEquals(12, approved.get("APPROVED_LOAN_PERIOD"));
+        assertEquals(DecisionEngineConstants.RULE_VERSION, approved.get("RULE_VERSION"));
+
+        Map<String, Object> invalid = rows.get(1);
+        assertNull(invalid.get("PERSONAL_CODE"));
+        assertNull(invalid.get("LOAN_AMOUNT"));
+        assertNull(invalid.get("COUNTRY"));
+        assertEquals("INVALID_PERSONAL_CODE", invalid.get("OUTCOME"));
+        assertEquals(2, invalid.get("RULE_VERSION"));
+        assertNull(invalid.get("APPROVED_LOAN_AMOUNT"));
+    }
+
+    @Test
+    void testDecisionsAreWrittenInBatchesOfBatchSize() throws Exception {
+        // The linger is long enough for every decision to be queued before a batch is cut short.
+        DecisionStore store = open(10, Duration.ofSeconds(1), 100, "block");
+        for (int i = 0; i < 25; i++) {
+            store.save(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        }
+        assertTrue(store.sync(SYNC_TIMEOUT));
+
+        assertEquals(25, rowCount());
+        DistributionSummary flushRows = meterRegistry.get("decision.store.flush.rows").summary();
+        assertEquals(3, flushRows.count());
+        assertEquals(10, flushRows.max());
+        assertEquals(3, meterRegistry.get("decision.store.flushes").timer().count());
+    }
+
+    @Test
+    void testOverflowIsDroppedWithDropPolicy() throws Exception {
+        DecisionStore store = open(1, SHORT_LINGER, QUEUE_CAPACITY, "drop");
+        fillWhileWriterIsStuck(store, 5);
+        dataSource.open();
+        assertTrue(store.sync(SYNC_TIMEOUT));
+
+        assertEquals(1 + QUEUE_CAPACITY, rowCount());
+        assertEquals(2, meterRegistry.get("decision.store.overflow").counter().count());
+    }
+
+    @Test
+    void testOverflowIsSpilledAndStoredLaterWithSpillPolicy() throws Exception {
+        DecisionStore store = open(1, SHORT_LINGER, QUEUE_CAPACITY, "spill");
+        fillWhileWriterIsStuck(store, 5);
+        dataSource.open();
+        assertTrue(store.sync(SYNC_TIMEOUT));
+
+        waitFor(() -> rowCount() == 5);
+        assertEquals(2, meterRegistry.get("decision.store.overflow").counter().count());
+        waitFor(() -> spillDirectory.toFile().list().length == 0);
+    }
+
+    @Test
+    void testRefusedBatchesAreSpilledAndRetried() throws Exception {
+        DecisionStore store = open(10, SHORT_LINGER, 100, "block");
+        jdbcTemplate.execute("DROP TABLE loan_decision");
+        for (int i = 0; i < 3; i++) {
+            store.save(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        }
+        assertTrue(store.sync(SYNC_TIMEOUT));
+        // Retries may have failed again since.
+        assertTrue(meterRegistry.get("decision.store.failed.rows").counter().count() >= 3);
+
+        jdbcTemplate.execute(DecisionStore.CREATE_TABLE);
+        waitFor(() -> rowCount() == 3);
+    }
+
+    @Test
+    void testSpilledDecisionsOfPreviousRunAreStored() throws Exception {
+        DecisionSpill spill = new DecisionSpill(spillDirectory);
+        spill.write(List.of(new AuditEntry(Instant.now(), PERSONAL_CODE, 4000L, 12, Countries.LATVIA,
+                DecisionOutcome.NO_VALID_LOAN, null, null, DecisionEngineConstants.RULE_VERSION)));
+        spill.close();
+
+        open(10, SHORT_LINGER, 100, "block");
+        waitFor(() -> rowCount() == 1);
+        assertEquals("LATVIA", jdbcTemplate.queryForObject("SELECT country FROM loan_decision", String.class));
+    }
+
+    /**
+     * Saves decisions while the writer waits for a connection with the first of them, so that the queue fills up.
+     */
+    private void fillWhileWriterIsStuck(DecisionStore store, int decisions) throws Exception {
+        dataSource.close();
+        store.save(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        waitFor(() -> meterRegistry.get("decision.store.queue.depth").gauge().value() == 0);
+        for (int i = 1; i < decisions; i++) {
+            store.save(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA, Decision.approved(3600, 12));
+        }
+    }
+
+    private DecisionStore open(int batchSize, Duration linger, int queueCapacity, String overflowPolicy)
+            throws Exception {
+        DecisionStore store = new DecisionStore(new DecisionMetrics(meterRegistry), jdbcTemplate, true, batchSize,
+                linger, queueCapacity, overflowPolicy, spillDirectory, RETRY_INTERVAL);
+        stores.add(store);
+        return store;
+    }
+
+    private int rowCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM loan_decision", Integer.class);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + SYNC_TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Data source whose connections can be held back, to keep the store writer busy.
+     */
+    private static final class GatedDataSource extends DelegatingDataSource {
+
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        private GatedDataSource(DriverManagerDataSource target) {
+            super(target);
+        }
+
+        void close() {
+            gate = new CountDownLatch(1);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ee.taltech.inbankbackend.config;
+
+import ee.taltech.inbankbackend.endpoint.DecisionRequest;
+import ee.taltech.inbankbackend.endpoint.DecisionResponse;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class holds tests for running requests on virtual threads.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = RequestExecutionConfig.REQUEST_THREADS_PROPERTY + "=virtual")
+class RequestExecutionConfigTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @MockBean
+    private DecisionEngine decisionEngine;
+
+    @Test
+    void givenVirtualRequestThreads_whenRequestDecision_thenRunsOnVirtualThread() {
+        AtomicReference<Thread> requestThread = new AtomicReference<>();
+        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
+                .thenAnswer(invocation -> {
+                    requestThread.set(Thread.currentThread());
+                    return Decision.approved(4000, 12);
+                });
+
+        ResponseEntity<DecisionResponse> response = restTemplate.postForEntity("/loan/decision",
+                new DecisionRequest("50307172740", 4000L, 12, Countries.ESTONIA), DecisionResponse.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(requestThread.get().isVirtual());
+    }
+}
@@ -0,0 +1,176 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class holds tests for loading, validating and hot-reloading the rule set.
+ */
+class RuleSetHolderTest {
+
+    private static final Path EXAMPLE_RULES = Path.of("rules.json");
+    private static final long WATCH_TIMEOUT_MILLIS = 10_000;
+    private static final long POLL_MILLIS = 20;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testExampleRulesMatchBuiltInRules() throws IOException {
+        RuleSetHolder holder = new RuleSetHolder(EXAMPLE_RULES.toString(), objectMapper);
+
+        assertEquals(RuleSet.defaults(), holder.getRuleSet());
+    }
+
+    @Test
+    void testNoLocationUsesBuiltInRules() throws IOException {
+        RuleSetHolder holder = new RuleSetHolder("", objectMapper);
+
+        assertNull(holder.getLocation());
+        assertEquals(RuleSet.defaults(), holder.getRuleSet());
+        assertFalse(holder.reload());
+    }
+
+    @Test
+    void testInvalidRulesFailStartup() throws IOException {
+        Path rules = writeRules(directory.resolve("rules.json"), "\"maximumLoanAmount\": 10000",
+                "\"maximumLoanAmount\": 1000");
+
+        assertThrows(IllegalArgumentException.class, () -> new RuleSetHolder(rules.toString(), objectMapper));
+    }
+
+    @Test
+    void testUnknownOrMissingFieldsAreRejected() throws IOException {
+        Path misspelled = writeRules(directory.resolve("misspelled.json"), "\"minimumAge\"", "\"minimalAge\"");
+        Path missing = writeRules(directory.resolve("missing.json"), "\"scoreDivisor\": 10.0,", "");
+
+        assertThrows(IOException.class, () -> new RuleSetHolder(misspelled.toString(), objectMapper));
+        assertThrows(IOException.class, () -> new RuleSetHolder(missing.toString(), objectMapper));
+    }
+
+    @Test
+    void testInvalidReloadKeepsCurrentRules() throws IOException {
+        Path rules = writeRules(directory.resolve("rules.json"), "\"version\": 1", "\"version\": 2");
+        RuleSetHolder holder = new RuleSetHolder(rules.toString(), objectMapper);
+
+        writeRules(rules, "\"loanAmountStep\": 100", "\"loanAmountStep\": 0");
+
+        assertFalse(holder.reload());
+        assertEquals(2, holder.getRuleSet().version());
+    }
+
+    @Test
+    void testListenersPrepareBeforeNewRulesComeIntoForce() {
+        RuleSetHolder holder = new RuleSetHolder();
+        RuleSet builtIn = holder.getRuleSet();
+        RuleSet updated = withVersion(builtIn, 2);
+        List<RuleSet> inForceDuringPreparation = new ArrayList<>();
+        holder.addListener(ruleSet -> inForceDuringPreparation.add(holder.getRuleSet()));
+
+        holder.update(updated);
+
+        assertEquals(List.of(builtIn), inForceDuringPreparation);
+        assertSame(updated, holder.getRuleSet());
+    }
+
+    @Test
+    void testFailingListenerRejectsNewRules() {
+        RuleSetHolder holder = new RuleSetHolder();
+        RuleSet builtIn = holder.getRuleSet();
+        RuleSet updated = withVersion(builtIn, 2);
+        List<RuleSet> prepared = new ArrayList<>();
+        holder.addListener(prepared::add);
+        holder.addListener(ruleSet -> {
+            throw new IllegalStateException("Preparation failed");
+        });
+
+        assertThrows(IllegalStateException.class, () -> holder.update(updated));
+        assertEquals(RuleSet.defaults(), holder.getRuleSet());
+        // The listener that prepared for the rejected rules prepared for the rules in force again.
+        assertEquals(List.of(updated, builtIn), prepared);
+    }
+
+    @Test
+    void testChangedRulesNeedNewVersion() {
+        RuleSetHolder holder = new RuleSetHolder();
+        RuleSet builtIn = holder.getRuleSet();
+        RuleSet changed = new RuleSet(builtIn.version(), builtIn.minimumLoanAmount(),
+                builtIn.maximumLoanAmount() - 1000, builtIn.loanAmountStep(), builtIn.minimumLoanPeriod(),
+                builtIn.maximumLoanPeriod(), builtIn.segments(), builtIn.approvalBaseline(), builtIn.scoreDivisor(),
+                builtIn.minimumAge(), builtIn.maximumAge());
+
+        assertThrows(IllegalArgumentException.class, () -> holder.update(changed));
+        assertSame(builtIn, holder.getRuleSet());
+        holder.update(withVersion(builtIn, builtIn.version()));
+        assertSame(builtIn, holder.getRuleSet());
+    }
+
+    @Test
+    void testFingerprintFollowsValues() throws IOException {
+        RuleSet builtIn = RuleSet.defaults();
+        Path rules = writeRules(directory.resolve("rules.json"), "\"approvalBaseline\": 0.1",
+                "\"approvalBaseline\": 0.2");
+
+        assertEquals(builtIn.fingerprint(), new RuleSetHolder(EXAMPLE_RULES.toString(), objectMapper).getRuleSet()
+                .fingerprint());
+        assertNotEquals(builtIn.fingerprint(), new RuleSetHolder(rules.toString(), objectMapper).getRuleSet()
+                .fingerprint());
+        assertNotEquals(builtIn.fingerprint(), withVersion(builtIn, 2).fingerprint());
+    }
+
+    @Test
+    void testReloadWithoutNewVersionKeepsCurrentRules() throws IOException {
+        Path rules = writeRules(directory.resolve("rules.json"), "\"version\": 1", "\"version\": 1");
+        RuleSetHolder holder = new RuleSetHolder(rules.toString(), objectMapper);
+
+        writeRules(rules, "\"maximumLoanAmount\": 10000", "\"maximumLoanAmount\": 9000");
+
+        assertFalse(holder.reload());
+        assertEquals(10000, holder.getRuleSet().maximumLoanAmount());
+    }
+
+    @Test
+    void testWatcherLoadsChangedFile() throws Exception {
+        Path rules = writeRules(directory.resolve("rules.json"), "\"version\": 1", "\"version\": 1");
+        RuleSetHolder holder = new RuleSetHolder(rules.toString(), objectMapper);
+        RuleSetWatcher watcher = new RuleSetWatcher(holder, true);
+        try {
+            // Replaced the way editors save files: written next to it and moved over it.
+            Path next = writeRules(directory.resolve("rules.json.tmp"), "\"version\": 1", "\"version\": 2");
+            Files.move(next, rules, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long deadline = System.currentTimeMillis() + WATCH_TIMEOUT_MILLIS;
+            while (holder.getRuleSet().version() != 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            assertEquals(2, holder.getRuleSet().version());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private static Path writeRules(Path target, String field, String replacement) throws IOException {
+        String rules = Files.readString(EXAMPLE_RULES);
+        assertTrue(rules.contains(field));
+        return Files.writeString(target, rules.replace(field, replacement));
+    }
+
+    private static RuleSet withVersion(RuleSet ruleSet, int version) {
+        return new RuleSet(version, ruleSet.minimumLoanAmount(), ruleSet.maximumLoanAmount(),
+                ruleSet.loanAmountStep(), ruleSet.minimumLoanPeriod(), ruleSet.maximumLoanPeriod(),
+                ruleSet.segments(), ruleSet.approvalBaseline(), ruleSet.scoreDivisor(), ruleSet.minimumAge(),
+                ruleSet.maximumAge());
+    }
+}
@@ -0,0 +1,76 @@
+package ee.taltech.inbankbackend.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpanFileExporterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testWritesSpansAsJsonLines() throws Exception {
+        Path file = directory.resolve("traces/spans.jsonl");
+        try (SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new SpanFileExporter(file, objectMapper)))
+                .build()) {
+            Tracer tracer = tracerProvider.get("test");
+            Span parent = tracer.spanBuilder("request").startSpan();
+            Scope scope = parent.makeCurrent();
+            try {
+                parent.addEvent("bound");
+                tracer.spanBuilder("decision").setAttribute(AttributeKey.stringKey("decision.country"), "estonia")
+                        .setAttribute(AttributeKey.longKey("decision.score_evaluations"), 7L)
+                        .startSpan()
+                        .end();
+            } finally {
+                scope.close();
+            }
+            parent.end();
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        JsonNode child = objectMapper.readTree(lines.get(0));
+        JsonNode parent = objectMapper.readTree(lines.get(1));
+        assertEquals("decision", child.get("name").asText());
+        assertEquals(parent.get("traceId").asText(), child.get("traceId").asText());
+        assertEquals(parent.get("spanId").asText(), child.get("parentSpanId").asText());
+        assertEquals("estonia", child.get("attributes").get("decision.country").asText());
+        assertEquals(7, child.get("attributes").get("decision.score_evaluations").asLong());
+        assertTrue(child.get("durationNanos").asLong() >= 0);
+        assertFalse(parent.has("parentSpanId"));
+        assertEquals("bound", parent.get("events").get(0).get("name").asText());
+    }
+
+    @Test
+    void testAppendsToExistingFile() throws Exception {
+        Path file = directory.resolve("spans.jsonl");
+        Files.writeString(file, "{}\n");
+        try (SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new SpanFileExporter(file, objectMapper)))
+                .build()) {
+            tracerProvider.get("test").spanBuilder("decision").startSpan().end();
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertEquals("decision", objectMapper.readTree(lines.get(1)).get("name").asText());
+    }
+}
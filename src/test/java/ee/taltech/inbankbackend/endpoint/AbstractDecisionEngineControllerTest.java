@@ -0,0 +1,619 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
+import ee.taltech.inbankbackend.service.DecisionTracing;
+import ee.taltech.inbankbackend.service.LoanOffers;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class holds integration tests for the loan decision endpoints, shared by the servlet and the reactive
+ * stack. Subclasses start the application on one of the stacks, with the rate limit properties below, and provide
+ * a client bound to it. The spans the application exports are kept in memory.
+ */
+@Import(AbstractDecisionEngineControllerTest.SpanCapture.class)
+abstract class AbstractDecisionEngineControllerTest {
+
+    // Rate limit of the API clients: a burst of two requests and next to no refill during a test.
+    static final int RATE_LIMIT_BURST = 2;
+    static final String RATE_LIMIT_BURST_PROPERTY = "decision-engine.admission.burst=" + RATE_LIMIT_BURST;
+    static final String RATE_LIMIT_RATE_PROPERTY = "decision-engine.admission.requests-per-second=0.001";
+
+    private static final String PERSONAL_CODE_1234 = "1234";
+    private static final String PERSONAL_CODE_34903254088 = "34903254088";
+    private static final int LOAN_AMOUNT_1000 = 1000;
+    private static final int LOAN_PERIOD_12 = 12;
+    private static final int LOAN_PERIOD_10 = 10;
+    private static final long LOAN_AMOUNT_10 = 10L;
+
+    @MockBean
+    private DecisionEngine decisionEngine;
+
+    @Autowired
+    private InMemorySpanExporter spanExporter;
+
+    @Autowired
+    private SdkTracerProvider tracerProvider;
+
+    private ObjectMapper objectMapper;
+
+    /**
+     * @return A client sending requests to the application under test
+     */
+    protected abstract WebTestClient webTestClient();
+
+    @BeforeEach
+    public void setup() {
+        objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * This method tests the /loan/decision endpoint with valid inputs.
+     */
+    @Test
+    public void givenValidRequest_whenRequestDecision_thenReturnsExpectedResponse() throws Exception {
+        Decision decision = Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12);
+        givenDecision(decision);
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.ESTONIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEqualTo(LOAN_AMOUNT_1000)
+                .jsonPath("$.loanPeriod").isEqualTo(LOAN_PERIOD_12)
+                .jsonPath("$.errorMessage").isEmpty()
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == LOAN_AMOUNT_1000;
+        assert response.getLoanPeriod() == LOAN_PERIOD_12;
+        assert response.getErrorMessage() == null;
+    }
+
+    /**
+     * This test ensures that if an invalid personal code is provided, the controller returns
+     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenInvalidAge_whenRequestDecision_thenReturnsBadRequest() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.INVALID_AGE));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_34903254088, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.LATVIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.INVALID_AGE_ERROR)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_AGE_ERROR);
+    }
+
+    /**
+     * This test ensures that if an invalid Personal Code is provided, the controller returns
+     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenInvalidPersonalCode_whenRequestDecision_thenReturnsBadRequest() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.INVALID_PERSONAL_CODE));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.LATVIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
+    }
+
+    /**
+     * This test ensures that if an invalid loan amount is provided, the controller returns
+     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenInvalidLoanAmount_whenRequestDecision_thenReturnsBadRequest() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.INVALID_LOAN_AMOUNT));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.LITHUANIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.INVALID_LOAN_AMOUNT)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_LOAN_AMOUNT);
+    }
+
+    /**
+     * This test ensures that if an invalid loan period is provided, the controller returns
+     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenInvalidLoanPeriod_whenRequestDecision_thenReturnsBadRequest() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.INVALID_LOAN_PERIOD));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.LITHUANIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.INVALID_LOAN_PERIOD)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_LOAN_PERIOD);
+    }
+
+    /**
+     * This test ensures that if no valid loan is found, the controller returns
+     * an HTTP Not Found (404) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenNoValidLoan_whenRequestDecision_thenReturnsNotFound() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.NO_VALID_LOAN));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, (long) LOAN_AMOUNT_1000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isNotFound()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage")
+                .isEqualTo(DecisionEngineConstants.NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants
+                .NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS);
+    }
+
+    /**
+     * This test ensures that if the credit registry cannot be reached, the controller returns
+     * an HTTP Service Unavailable (503) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenRegistryUnavailable_whenRequestDecision_thenReturnsServiceUnavailable() throws Exception {
+        givenDecision(Decision.rejected(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE));
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, (long) LOAN_AMOUNT_1000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.CREDIT_REGISTRY_UNAVAILABLE)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.CREDIT_REGISTRY_UNAVAILABLE);
+    }
+
+    /**
+     * This test ensures that if an unexpected error occurs when processing the request, the controller returns
+     * an HTTP Internal Server Error (500) response with the appropriate error message in the response body.
+     */
+    @Test
+    public void givenUnexpectedError_whenRequestDecision_thenReturnsInternalServerError() throws Exception {
+        givenUnexpectedError();
+
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.LATVIA);
+
+        byte[] body = postDecision(request)
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.loanPeriod").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED)
+                .returnResult().getResponseBody();
+
+        DecisionResponse response = objectMapper.readValue(body, DecisionResponse.class);
+        assert response.getLoanAmount() == null;
+        assert response.getLoanPeriod() == null;
+        assert response.getErrorMessage().equals(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+    }
+
+    /**
+     * This test ensures that a JSON array batch is answered with one NDJSON line per request, in input order,
+     * carrying the status code the single decision endpoint would have returned.
+     */
+    @Test
+    public void givenJsonArrayBatch_whenRequestBatchDecision_thenStreamsPerItemResults() throws Exception {
+        givenDecision(PERSONAL_CODE_34903254088, Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12));
+        givenDecision(PERSONAL_CODE_1234, Decision.rejected(DecisionOutcome.INVALID_PERSONAL_CODE));
+
+        List<DecisionRequest> requests = List.of(
+                new DecisionRequest(PERSONAL_CODE_34903254088, LOAN_AMOUNT_10, LOAN_PERIOD_10, Countries.ESTONIA),
+                new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10, Countries.ESTONIA));
+
+        List<BatchDecisionResponse> results = performBatch(objectMapper.writeValueAsString(requests),
+                MediaType.APPLICATION_JSON);
+
+        assert results.size() == 2;
+        assert results.get(0).getIndex() == 0;
+        assert results.get(0).getStatus() == HttpStatus.OK.value();
+        assert results.get(0).getLoanAmount() == LOAN_AMOUNT_1000;
+        assert results.get(0).getLoanPeriod() == LOAN_PERIOD_12;
+        assert results.get(1).getIndex() == 1;
+        assert results.get(1).getStatus() == HttpStatus.BAD_REQUEST.value();
+        assert results.get(1).getLoanAmount() == null;
+        assert results.get(1).getErrorMessage().equals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
+    }
+
+    /**
+     * This test ensures that in an NDJSON batch a malformed line gets a 400 result without ending the batch,
+     * and that the other error statuses are mapped per item.
+     */
+    @Test
+    public void givenNdjsonBatch_whenRequestBatchDecision_thenMapsErrorsPerItem() throws Exception {
+        givenDecision(PERSONAL_CODE_34903254088, Decision.rejected(DecisionOutcome.NO_VALID_LOAN));
+        givenUnexpectedError(PERSONAL_CODE_1234);
+
+        String body = objectMapper.writeValueAsString(new DecisionRequest(PERSONAL_CODE_34903254088, LOAN_AMOUNT_10,
+                LOAN_PERIOD_10, Countries.ESTONIA)) + "\n{not json\n\n"
+                + objectMapper.writeValueAsString(new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10,
+                LOAN_PERIOD_10, Countries.ESTONIA)) + "\n";
+
+        List<BatchDecisionResponse> results = performBatch(body, MediaType.APPLICATION_NDJSON);
+
+        assert results.size() == 3;
+        assert results.get(0).getStatus() == HttpStatus.NOT_FOUND.value();
+        assert results.get(0).getErrorMessage().equals(DecisionEngineConstants
+                .NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS);
+        assert results.get(1).getIndex() == 1;
+        assert results.get(1).getStatus() == HttpStatus.BAD_REQUEST.value();
+        assert results.get(1).getErrorMessage().equals(DecisionEngineConstants.INVALID_REQUEST_BODY);
+        assert results.get(2).getIndex() == 2;
+        assert results.get(2).getStatus() == HttpStatus.INTERNAL_SERVER_ERROR.value();
+        assert results.get(2).getErrorMessage().equals(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+    }
+
+    /**
+     * This test ensures that the decision endpoint latency and the decision engine metrics are exposed
+     * in Prometheus format.
+     */
+    @Test
+    public void givenDecisionRequest_whenScrapeMetrics_thenReturnsPrometheusFormat() throws Exception {
+        givenDecision(Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12));
+        postDecision(new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10, Countries.ESTONIA))
+                .expectStatus().isOk();
+
+        String metrics = webTestClient().get().uri("/actuator/prometheus").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        assert metrics.contains("http_server_requests_seconds_bucket{");
+        assert metrics.contains("uri=\"/loan/decision\"");
+        assert metrics.contains("decision_engine_latency_seconds_bucket{country=\"estonia\"");
+        assert metrics.contains("decision_outcomes_total{country=\"latvia\",outcome=\"debt\",}");
+        assert metrics.contains("decision_score_evaluations_count{country=\"lithuania\",}");
+    }
+
+    /**
+     * This test ensures that the shadow evaluation endpoint, which lists customer requests, is not exposed on the
+     * application port by default.
+     */
+    @Test
+    public void givenDefaultExposure_whenGetShadowEndpoint_thenNotFound() {
+        webTestClient().get().uri("/actuator/shadow").exchange()
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * This test ensures that an API client exceeding its rate limit gets an HTTP Too Many Requests (429) response
+     * with a Retry-After header, while other clients and requests without a client are still decided.
+     */
+    @Test
+    public void givenClientOverRateLimit_whenRequestDecision_thenReturnsTooManyRequests() throws Exception {
+        givenDecision(Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12));
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.ESTONIA);
+
+        for (int i = 0; i < RATE_LIMIT_BURST; i++) {
+            postDecision(request, "greedy-partner").expectStatus().isOk();
+        }
+        postDecision(request, "greedy-partner")
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().exists(HttpHeaders.RETRY_AFTER)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.RATE_LIMIT_EXCEEDED);
+
+        postDecision(request, "other-partner").expectStatus().isOk();
+        postDecision(request).expectStatus().isOk();
+    }
+
+    /**
+     * This test ensures that a retry with the same Idempotency-Key header gets the first response byte for byte,
+     * even if the decision would now be different, and that the key cannot be used for another request.
+     */
+    @Test
+    public void givenIdempotencyKey_whenRetryDecision_thenReturnsFirstResponse() throws Exception {
+        givenDecision(Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12));
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
+                Countries.ESTONIA);
+        String key = UUID.randomUUID().toString();
+
+        byte[] first = postDecisionWithKey(request, key)
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().doesNotExist(IdempotentDecisionCache.REPLAYED_HEADER)
+                .expectBody()
+                .jsonPath("$.loanAmount").isEqualTo(LOAN_AMOUNT_1000)
+                .returnResult().getResponseBody();
+
+        givenDecision(Decision.rejected(DecisionOutcome.NO_VALID_LOAN));
+        byte[] retry = postDecisionWithKey(request, key)
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().valueEquals(IdempotentDecisionCache.REPLAYED_HEADER, "true")
+                .expectBody().returnResult().getResponseBody();
+        assert Arrays.equals(first, retry);
+
+        request.setLoanAmount(LOAN_AMOUNT_10 * 2);
+        postDecisionWithKey(request, key)
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.IDEMPOTENCY_KEY_REUSED);
+        postDecisionWithKey(request, UUID.randomUUID().toString())
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * This test ensures that the /loan/offers endpoint returns the amounts of every period with an ETag and
+     * private caching, and answers a request with a matching If-None-Match header with HTTP Not Modified (304).
+     */
+    @Test
+    public void givenOffers_whenRequestOffers_thenReturnsAmountsWithETag() throws Exception {
+        int[] loanAmounts = {0, 2000, 2100, LOAN_AMOUNT_1000 * 10};
+        givenOffers(LoanOffers.approved(1, 0xabcL, 100, LOAN_PERIOD_12, loanAmounts));
+
+        byte[] body = getOffers(PERSONAL_CODE_34903254088)
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-abc-100\"")
+                .expectHeader().value(HttpHeaders.CACHE_CONTROL, value -> {
+                    assert value.contains("private");
+                    assert value.contains("max-age=");
+                })
+                .expectBody()
+                .jsonPath("$.firstLoanPeriod").isEqualTo(LOAN_PERIOD_12)
+                .jsonPath("$.errorMessage").isEmpty()
+                .returnResult().getResponseBody();
+        LoanOffersResponse response = objectMapper.readValue(body, LoanOffersResponse.class);
+        assert Arrays.equals(response.getLoanAmounts(), loanAmounts);
+
+        webTestClient().get().uri("/loan/offers?personalCode={code}&country=ESTONIA", PERSONAL_CODE_34903254088)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-abc-100\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    /**
+     * This test ensures that if no offers can be made, the /loan/offers endpoint reports the reason with the same
+     * statuses as the decision endpoint and without caching headers.
+     */
+    @Test
+    public void givenInvalidPersonalCode_whenRequestOffers_thenReturnsBadRequest() {
+        givenOffers(LoanOffers.rejected(DecisionOutcome.INVALID_PERSONAL_CODE));
+
+        getOffers(PERSONAL_CODE_1234)
+                .expectStatus().isBadRequest()
+                .expectHeader().doesNotExist(HttpHeaders.ETAG)
+                .expectBody()
+                .jsonPath("$.loanAmounts").isEmpty()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
+
+        givenOffers(LoanOffers.rejected(DecisionOutcome.APPLICANT_HAS_DEBT));
+        getOffers(PERSONAL_CODE_1234)
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.errorMessage").isEqualTo(DecisionEngineConstants.APPLICANT_HAS_DEBT);
+    }
+
+    /**
+     * This test ensures that a decision requested within a sampled trace is recorded in a span of that trace, as a
+     * child of the span of the request rather than of the caller's span, on either stack.
+     */
+    @Test
+    public void givenSampledTrace_whenRequestDecision_thenAuditIsTracedInRequest() throws Exception {
+        givenDecision(Decision.approved(LOAN_AMOUNT_1000, LOAN_PERIOD_12));
+        String traceId = UUID.randomUUID().toString().replace("-", "");
+        String callerSpanId = "b7ad6b7169203331";
+
+        webTestClient().post().uri("/loan/decision")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("traceparent", "00-" + traceId + "-" + callerSpanId + "-01")
+                .bodyValue(objectMapper.writeValueAsString(new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10,
+                        LOAN_PERIOD_10, Countries.ESTONIA)))
+                .exchange()
+                .expectStatus().isOk();
+        tracerProvider.forceFlush().join(10, TimeUnit.SECONDS);
+
+        List<SpanData> audits = spanExporter.getFinishedSpanItems().stream()
+                .filter(span -> span.getTraceId().equals(traceId))
+                .filter(span -> span.getName().equals(DecisionTracing.AUDIT))
+                .toList();
+        assert audits.size() == 1;
+        assert audits.get(0).getParentSpanContext().isValid();
+        assert !audits.get(0).getParentSpanId().equals(callerSpanId);
+    }
+
+    /**
+     * Makes the mocked engine return the given offers for every request, whichever stack asks for them.
+     */
+    private void givenOffers(LoanOffers offers) {
+        when(decisionEngine.calculateOffers(anyString(), any(Countries.class))).thenReturn(offers);
+        when(decisionEngine.calculateOffersAsync(anyString(), any(Countries.class)))
+                .thenReturn(CompletableFuture.completedFuture(offers));
+    }
+
+    /**
+     * Makes the mocked engine return the given decision for every request, whichever stack asks for it.
+     */
+    private void givenDecision(Decision decision) {
+        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(decision);
+        when(decisionEngine.calculateApprovedLoanAsync(anyString(), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(CompletableFuture.completedFuture(decision));
+    }
+
+    /**
+     * Makes the mocked engine return the given decision for requests with the given personal code.
+     */
+    private void givenDecision(String personalCode, Decision decision) {
+        when(decisionEngine.calculateApprovedLoan(eq(personalCode), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(decision);
+        when(decisionEngine.calculateApprovedLoanAsync(eq(personalCode), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(CompletableFuture.completedFuture(decision));
+    }
+
+    /**
+     * Makes the mocked engine fail unexpectedly for every request.
+     */
+    private void givenUnexpectedError() {
+        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
+                .thenThrow(new RuntimeException());
+        when(decisionEngine.calculateApprovedLoanAsync(anyString(), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException()));
+    }
+
+    /**
+     * Makes the mocked engine fail unexpectedly for requests with the given personal code.
+     */
+    private void givenUnexpectedError(String personalCode) {
+        when(decisionEngine.calculateApprovedLoan(eq(personalCode), anyLong(), anyInt(), any(Countries.class)))
+                .thenThrow(new RuntimeException());
+        when(decisionEngine.calculateApprovedLoanAsync(eq(personalCode), anyLong(), anyInt(), any(Countries.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException()));
+    }
+
+    private WebTestClient.ResponseSpec getOffers(String personalCode) {
+        return webTestClient().get().uri("/loan/offers?personalCode={code}&country=ESTONIA", personalCode)
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec postDecision(DecisionRequest request) throws Exception {
+        return webTestClient().post().uri("/loan/decision")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(objectMapper.writeValueAsString(request))
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec postDecision(DecisionRequest request, String client) throws Exception {
+        return webTestClient().post().uri("/loan/decision")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Client-Id", client)
+                .bodyValue(objectMapper.writeValueAsString(request))
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec postDecisionWithKey(DecisionRequest request, String key) throws Exception {
+        return webTestClient().post().uri("/loan/decision")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(IdempotentDecisionCache.KEY_HEADER, key)
+                .bodyValue(objectMapper.writeValueAsString(request))
+                .exchange();
+    }
+
+    private List<BatchDecisionResponse> performBatch(String body, MediaType contentType) throws Exception {
+        String content = webTestClient().post().uri("/loan/decisions/batch")
+                .contentType(contentType)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+
+        List<BatchDecisionResponse> results = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            results.add(objectMapper.readValue(line, BatchDecisionResponse.class));
+        }
+        return results;
+    }
+
+    /**
+     * Keeps the exported spans in memory, next to the exporters of the application.
+     */
+    @TestConfiguration
+    static class SpanCapture {
+
+        @Bean
+        InMemorySpanExporter inMemorySpanExporter() {
+            return InMemorySpanExporter.create();
+        }
+    }
+}
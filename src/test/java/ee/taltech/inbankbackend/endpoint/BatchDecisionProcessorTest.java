@@ -0,0 +1,183 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import ee.taltech.inbankbackend.audit.AuditJournal;
+import ee.taltech.inbankbackend.audit.DecisionStore;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.DecisionCoalescer;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import ee.taltech.inbankbackend.service.DecisionTracing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class holds tests for the streaming pipeline behind the batch decision endpoint.
+ */
+class BatchDecisionProcessorTest {
+
+    private static final String REQUEST_LINE = "{\"personalCode\":\"50307172740\",\"loanAmount\":4000,"
+            + "\"loanPeriod\":12,\"country\":\"ESTONIA\"}\n";
+    private static final int STREAMED_LINES = 100_000;
+    private static final long MAX_READ_AHEAD_BYTES = 1024 * 1024;
+    private static final long BACKPRESSURE_WAIT_MILLIS = 500;
+    private static final long COMPLETION_TIMEOUT_SECONDS = 60;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .modulesToInstall(new ParameterNamesModule(JsonCreator.Mode.DEFAULT))
+            .build();
+    private BatchDecisionProcessor processor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Decisions are neither journaled, stored nor traced.
+        AuditJournal auditJournal = new AuditJournal(false, null, DataSize.ofMegabytes(1), Duration.ZERO, 1);
+        DecisionStore decisionStore = new DecisionStore(new DecisionMetrics(), null, false, 1, Duration.ZERO, 1,
+                "block", null, Duration.ZERO);
+        processor = new BatchDecisionProcessor(new DecisionEvaluator(
+                new DecisionCoalescer(DecisionEngine.withDefaults()), auditJournal, decisionStore,
+                new DecisionTracing()), objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    void givenLocalFile_whenProcessFile_thenWritesResultPerLine(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("requests.ndjson");
+        Path output = directory.resolve("decisions.ndjson");
+        Files.writeString(input, REQUEST_LINE + "{not json\n"
+                + REQUEST_LINE.replace("50307172740", "12345678901"));
+
+        long written = processor.processFile(input, output);
+
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(3, written);
+        assertEquals(3, lines.size());
+        BatchDecisionResponse approved = objectMapper.readValue(lines.get(0), BatchDecisionResponse.class);
+        assertEquals(HttpStatus.OK.value(), approved.getStatus());
+        assertNotNull(approved.getLoanAmount());
+        BatchDecisionResponse malformed = objectMapper.readValue(lines.get(1), BatchDecisionResponse.class);
+        assertEquals(HttpStatus.BAD_REQUEST.value(), malformed.getStatus());
+        assertEquals(DecisionEngineConstants.INVALID_REQUEST_BODY, malformed.getErrorMessage());
+        BatchDecisionResponse invalidCode = objectMapper.readValue(lines.get(2), BatchDecisionResponse.class);
+        assertEquals(2, invalidCode.getIndex());
+        assertEquals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE, invalidCode.getErrorMessage());
+    }
+
+    @Test
+    void givenBlockedWriter_whenProcessNdjson_thenParserStopsReading() throws Exception {
+        GeneratedInput input = new GeneratedInput(STREAMED_LINES);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingOutput output = new BlockingOutput(release);
+
+        CompletableFuture<Long> written = CompletableFuture.supplyAsync(() -> {
+            try {
+                return processor.processNdjson(input, output);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(BACKPRESSURE_WAIT_MILLIS);
+        assertTrue(input.bytesRead.get() < MAX_READ_AHEAD_BYTES,
+                "read " + input.bytesRead.get() + " bytes while the writer was blocked");
+
+        release.countDown();
+        assertEquals(STREAMED_LINES, written.get(COMPLETION_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(STREAMED_LINES, output.lines());
+    }
+
+    /**
+     * Produces the same request line over and over without holding the input in memory.
+     */
+    private static final class GeneratedInput extends InputStream {
+
+        private final byte[] line = REQUEST_LINE.getBytes(StandardCharsets.UTF_8);
+        private final long totalBytes;
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        private GeneratedInput(int lines) {
+            this.totalBytes = (long) lines * line.length;
+        }
+
+        @Override
+        public int read() {
+            long position = bytesRead.get();
+            if (position >= totalBytes) {
+                return -1;
+            }
+            bytesRead.incrementAndGet();
+            return line[(int) (position % line.length)];
+        }
+    }
+
+    /**
+     * Blocks every write until released, then counts the written lines.
+     */
+    private static final class BlockingOutput extends OutputStream {
+
+        private final CountDownLatch release;
+        private long lines;
+
+        private BlockingOutput(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            awaitRelease();
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            awaitRelease();
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+
+        private void awaitRelease() throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        private long lines() {
+            // The last result has no trailing separator.
+            return lines + 1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.service.Countries;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the binary decision bodies survive a round trip, including missing fields, and that malformed
+ * bodies are rejected.
+ */
+class DecisionBinaryFormatTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+
+    @Test
+    void testRequestRoundTrip() {
+        DecisionRequest request = new DecisionRequest(PERSONAL_CODE, 4000L, 12, Countries.LITHUANIA);
+
+        byte[] body = DecisionBinaryFormat.encode(request);
+
+        assertEquals(14 + PERSONAL_CODE.length(), body.length);
+        assertEquals(request, DecisionBinaryFormat.decodeRequest(body, body.length));
+    }
+
+    @Test
+    void testRequestWithMissingFieldsRoundTrip() {
+        DecisionRequest request = new DecisionRequest(null, null, 0, null);
+
+        byte[] body = DecisionBinaryFormat.encode(request);
+
+        assertEquals(request, DecisionBinaryFormat.decodeRequest(body, body.length));
+    }
+
+    @Test
+    void testResponseRoundTrip() {
+        DecisionResponse approved = new DecisionResponse();
+        approved.setLoanAmount(4000);
+        approved.setLoanPeriod(12);
+        DecisionResponse rejected = new DecisionResponse();
+        rejected.setErrorMessage(DecisionEngineConstants.NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS);
+
+        byte[] approvedBody = DecisionBinaryFormat.encode(approved);
+        byte[] rejectedBody = DecisionBinaryFormat.encode(rejected);
+
+        assertEquals(10, approvedBody.length);
+        assertEquals(approved, DecisionBinaryFormat.decodeResponse(approvedBody, approvedBody.length));
+        assertEquals(rejected, DecisionBinaryFormat.decodeResponse(rejectedBody, rejectedBody.length));
+    }
+
+    @Test
+    void testMalformedRequestsAreRejected() {
+        byte[] body = DecisionBinaryFormat.encode(new DecisionRequest(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA));
+        byte[] unknownCountry = body.clone();
+        unknownCountry[12] = (byte) Countries.values().length;
+        byte[] negativeLength = body.clone();
+        negativeLength[13] = -2;
+
+        assertThrows(IllegalArgumentException.class, () -> DecisionBinaryFormat.decodeRequest(body, 13));
+        assertThrows(IllegalArgumentException.class, () -> DecisionBinaryFormat.decodeRequest(body, body.length - 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> DecisionBinaryFormat.decodeRequest(unknownCountry, unknownCountry.length));
+        assertThrows(IllegalArgumentException.class,
+                () -> DecisionBinaryFormat.decodeRequest(negativeLength, negativeLength.length));
+    }
+
+    @Test
+    void testTooLongPersonalCodeIsNotEncoded() {
+        char[] personalCode = new char[Byte.MAX_VALUE + 1];
+        Arrays.fill(personalCode, '1');
+
+        assertThrows(IllegalArgumentException.class, () -> DecisionBinaryFormat.encode(
+                new DecisionRequest(new String(personalCode), 4000L, 12, Countries.ESTONIA)));
+    }
+}
@@ -1,252 +1,107 @@
 package ee.taltech.inbankbackend.endpoint;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import ee.taltech.inbankbackend.exceptions.*;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
 import ee.taltech.inbankbackend.service.Countries;
 import ee.taltech.inbankbackend.service.Decision;
 import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionOutcome;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.http.MediaType;
-import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.test.web.servlet.MockMvc;
-import org.springframework.test.web.servlet.MvcResult;
-import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import org.springframework.test.web.servlet.client.MockMvcWebTestClient;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
-import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
- * This class holds integration tests for the DecisionEngineController endpoint.
+ * Runs the decision endpoint tests against DecisionEngineController on the servlet stack, and tests the binary
+ * wire format, which only the servlet stack offers.
  */
-@SpringBootTest
+@SpringBootTest(properties = {AbstractDecisionEngineControllerTest.RATE_LIMIT_BURST_PROPERTY,
+        AbstractDecisionEngineControllerTest.RATE_LIMIT_RATE_PROPERTY})
 @AutoConfigureMockMvc
-@ExtendWith(SpringExtension.class)
-@ExtendWith(MockitoExtension.class)
-public class DecisionEngineControllerTest {
-
-    private static final String PERSONAL_CODE_1234 = "1234";
-    private static final String PERSONAL_CODE_34903254088 = "34903254088";
-    private static final int LOAN_AMOUNT_1000 = 1000;
-    private static final int LOAN_PERIOD_12 = 12;
-    private static final int LOAN_PERIOD_10 = 10;
-    private static final long LOAN_AMOUNT_10 = 10L;
+@AutoConfigureObservability
+public class DecisionEngineControllerTest extends AbstractDecisionEngineControllerTest {
+
     @Autowired
     private MockMvc mockMvc;
 
-    @MockBean
+    // The mock created by the base class.
+    @Autowired
     private DecisionEngine decisionEngine;
 
-    private ObjectMapper objectMapper;
+    private WebTestClient webTestClient;
 
     @BeforeEach
-    public void setup() {
-        objectMapper = new ObjectMapper();
-    }
-
-    /**
-     * This method tests the /loan/decision endpoint with valid inputs.
-     */
-    @Test
-    public void givenValidRequest_whenRequestDecision_thenReturnsExpectedResponse() throws Exception {
-        Decision decision = new Decision(LOAN_AMOUNT_1000, LOAN_PERIOD_12, null);
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenReturn(decision);
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.ESTONIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").value(LOAN_AMOUNT_1000))
-                .andExpect(jsonPath("$.loanPeriod").value(LOAN_PERIOD_12))
-                .andExpect(jsonPath("$.errorMessage").isEmpty()).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse()
-                .getContentAsString(), DecisionResponse.class);
-        assert response.getLoanAmount() == LOAN_AMOUNT_1000;
-        assert response.getLoanPeriod() == LOAN_PERIOD_12;
-        assert response.getErrorMessage() == null;
+    public void bindClient() {
+        webTestClient = MockMvcWebTestClient.bindTo(mockMvc).build();
     }
 
-    /**
-     * This test ensures that if an invalid personal code is provided, the controller returns
-     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
-     */
-    @Test
-    public void givenInvalidAge_whenRequestDecision_thenReturnsBadRequest() throws Exception {
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new InvalidAgeException(DecisionEngineConstants.INVALID_AGE_ERROR));
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_34903254088, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.LATVIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isBadRequest())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants.INVALID_AGE_ERROR)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
-        assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
-        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_AGE_ERROR);
+    @Override
+    protected WebTestClient webTestClient() {
+        return webTestClient;
     }
 
     /**
-     * This test ensures that if an invalid Personal Code is provided, the controller returns
-     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     * This test ensures that a request in the binary format is answered in the binary format when the client
+     * accepts it.
      */
     @Test
-    public void givenInvalidPersonalCode_whenRequestDecision_thenReturnsBadRequest() throws Exception {
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new InvalidPersonalCodeException(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE));
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.LATVIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                        .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isBadRequest())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
-        assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
-        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE);
+    public void givenBinaryRequest_whenRequestDecision_thenReturnsBinaryResponse() {
+        when(decisionEngine.calculateApprovedLoan(eq("50307172740"), eq(4000L), eq(12), eq(Countries.LATVIA)))
+                .thenReturn(Decision.approved(3600, 12));
+
+        byte[] body = postBinaryDecision(DecisionBinaryFormat.encode(new DecisionRequest("50307172740", 4000L, 12,
+                Countries.LATVIA)))
+                .expectStatus().isOk()
+                .expectHeader().contentType(DecisionBinaryMessageConverter.MEDIA_TYPE)
+                .expectHeader().contentLength(10)
+                .expectBody().returnResult().getResponseBody();
+
+        DecisionResponse response = DecisionBinaryFormat.decodeResponse(body, body.length);
+        assert response.getLoanAmount() == 3600;
+        assert response.getLoanPeriod() == 12;
+        assert response.getErrorMessage() == null;
     }
 
     /**
-     * This test ensures that if an invalid loan amount is provided, the controller returns
-     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
+     * This test ensures that rejections keep their status and error message in the binary format.
      */
     @Test
-    public void givenInvalidLoanAmount_whenRequestDecision_thenReturnsBadRequest() throws Exception {
+    public void givenBinaryRequest_whenNoValidLoan_thenReturnsBinaryNotFound() {
         when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new InvalidLoanAmountException(DecisionEngineConstants.INVALID_LOAN_AMOUNT));
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.LITHUANIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isBadRequest())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants.INVALID_LOAN_AMOUNT)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
-        assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
-        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_LOAN_AMOUNT);
-    }
+                .thenReturn(Decision.rejected(DecisionOutcome.NO_VALID_LOAN));
 
-    /**
-     * This test ensures that if an invalid loan period is provided, the controller returns
-     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
-     */
-    @Test
-    public void givenInvalidLoanPeriod_whenRequestDecision_thenReturnsBadRequest() throws Exception {
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new InvalidLoanPeriodException(DecisionEngineConstants.INVALID_LOAN_PERIOD));
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.LITHUANIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isBadRequest())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants.INVALID_LOAN_PERIOD)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
-        assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
-        assert response.getErrorMessage().equals(DecisionEngineConstants.INVALID_LOAN_PERIOD);
-    }
+        byte[] body = postBinaryDecision(DecisionBinaryFormat.encode(new DecisionRequest("37605030299", 4000L, 12,
+                Countries.ESTONIA)))
+                .expectStatus().isNotFound()
+                .expectBody().returnResult().getResponseBody();
 
-    /**
-     * This test ensures that if no valid loan is found, the controller returns
-     * an HTTP Bad Request (400) response with the appropriate error message in the response body.
-     */
-    @Test
-    public void givenNoValidLoan_whenRequestDecision_thenReturnsBadRequest() throws Exception {
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new NoValidLoanException(DecisionEngineConstants
-                        .NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS));
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, (long) LOAN_AMOUNT_1000, LOAN_PERIOD_12,
-                Countries.ESTONIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isNotFound())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants
-                                .NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
+        DecisionResponse response = DecisionBinaryFormat.decodeResponse(body, body.length);
         assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
         assert response.getErrorMessage().equals(DecisionEngineConstants
                 .NO_VALID_LOAN_FOUND_FOR_THE_PROVIDED_PARAMETERS);
     }
 
     /**
-     * This test ensures that if an unexpected error occurs when processing the request, the controller returns
-     * an HTTP Internal Server Error (500) response with the appropriate error message in the response body.
+     * This test ensures that a truncated binary request is answered with an HTTP Bad Request (400).
      */
     @Test
-    public void givenUnexpectedError_whenRequestDecision_thenReturnsInternalServerError() throws Exception {
-        when(decisionEngine.calculateApprovedLoan(anyString(), anyLong(), anyInt(), any(Countries.class)))
-                .thenThrow(new RuntimeException());
-
-        DecisionRequest request = new DecisionRequest(PERSONAL_CODE_1234, LOAN_AMOUNT_10, LOAN_PERIOD_10,
-                Countries.LATVIA);
-
-        MvcResult result = mockMvc.perform(post("/loan/decision").content(objectMapper
-                .writeValueAsString(request)).contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isInternalServerError())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.loanAmount").isEmpty())
-                .andExpect(jsonPath("$.loanPeriod").isEmpty())
-                .andExpect(jsonPath("$.errorMessage")
-                        .value(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED)).andReturn();
-
-        DecisionResponse response = objectMapper.readValue(result.getResponse().getContentAsString(),
-                DecisionResponse.class);
-        assert response.getLoanAmount() == null;
-        assert response.getLoanPeriod() == null;
-        assert response.getErrorMessage().equals(DecisionEngineConstants.AN_UNEXPECTED_ERROR_OCCURRED);
+    public void givenTruncatedBinaryRequest_whenRequestDecision_thenReturnsBadRequest() {
+        postBinaryDecision(new byte[13])
+                .expectStatus().isBadRequest();
+    }
+
+    private WebTestClient.ResponseSpec postBinaryDecision(byte[] body) {
+        return webTestClient.post().uri("/loan/decision")
+                .contentType(DecisionBinaryMessageConverter.MEDIA_TYPE)
+                .accept(DecisionBinaryMessageConverter.MEDIA_TYPE)
+                .bodyValue(body)
+                .exchange();
     }
 }
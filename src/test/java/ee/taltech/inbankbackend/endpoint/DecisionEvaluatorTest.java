@@ -0,0 +1,187 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.audit.AuditJournal;
+import ee.taltech.inbankbackend.audit.DecisionStore;
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.CreditModifierProvider;
+import ee.taltech.inbankbackend.service.Decision;
+import ee.taltech.inbankbackend.service.DecisionCoalescer;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import ee.taltech.inbankbackend.service.DecisionTracing;
+import ee.taltech.inbankbackend.service.PersonalCodeCache;
+import ee.taltech.inbankbackend.service.ShadowEvaluator;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that recording decisions never blocks the thread completing an asynchronous decision, that it is traced
+ * within the request whichever thread completes the decision, and that a decision that cannot be recorded is still
+ * returned, with a mocked audit journal and decision store.
+ */
+class DecisionEvaluatorTest {
+
+    private static final DecisionRequest REQUEST = new DecisionRequest("50307172740", 4000L, 12, Countries.ESTONIA);
+    private static final long WAIT_SECONDS = 10;
+
+    private final AuditJournal auditJournal = mock(AuditJournal.class);
+    private final DecisionStore decisionStore = mock(DecisionStore.class);
+    private DecisionEvaluator evaluator;
+
+    @BeforeEach
+    void setUp() {
+        when(auditJournal.tryAppend(any(), any(), anyInt(), any(), any())).thenReturn(true);
+        when(decisionStore.trySave(any(), any(), anyInt(), any(), any())).thenReturn(true);
+        evaluator = new DecisionEvaluator(new DecisionCoalescer(DecisionEngine.withDefaults()), auditJournal,
+                decisionStore, new DecisionTracing());
+    }
+
+    @AfterEach
+    void tearDown() {
+        evaluator.shutdown();
+    }
+
+    @Test
+    void testAsyncDecisionIsRecordedWithoutWaiting() {
+        ResponseEntity<DecisionResponse> response = evaluator.evaluateAsync(REQUEST).join();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(auditJournal).tryAppend(eq(REQUEST.getPersonalCode()), eq(REQUEST.getLoanAmount()),
+                eq(REQUEST.getLoanPeriod()), eq(REQUEST.getCountry()), any(Decision.class));
+        verify(auditJournal, never()).append(any(), any(), anyInt(), any(), any());
+        verify(decisionStore, never()).save(any(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testFullQueueIsWaitedForOnAuditThread() throws Exception {
+        when(auditJournal.tryAppend(any(), any(), anyInt(), any(), any())).thenReturn(false);
+        CountDownLatch room = new CountDownLatch(1);
+        AtomicReference<String> waitingThread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            waitingThread.set(Thread.currentThread().getName());
+            room.await();
+            return null;
+        }).when(auditJournal).append(any(), any(), anyInt(), any(), any());
+
+        // The decision is completed on the calling thread, so this would not return if it waited for room.
+        CompletableFuture<ResponseEntity<DecisionResponse>> response = evaluator.evaluateAsync(REQUEST);
+        assertFalse(response.isDone());
+
+        room.countDown();
+        assertEquals(HttpStatus.OK, response.get(WAIT_SECONDS, TimeUnit.SECONDS).getStatusCode());
+        assertEquals("decision-audit-waiter", waitingThread.get());
+        verify(decisionStore, never()).save(any(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testAuditOfAsyncDecisionIsChildOfRequestSpan() {
+        InMemorySpanExporter exporter = InMemorySpanExporter.create();
+        OpenTelemetrySdk openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                        .build())
+                .build();
+        // The credit modifier arrives on another thread, which then completes the decision and records it.
+        CreditModifierProvider lateProvider = (personalCode, segment) -> CompletableFuture.supplyAsync(() -> 100,
+                CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        DecisionTracing decisionTracing = new DecisionTracing(openTelemetry, 0);
+        DecisionEvaluator tracedEvaluator = new DecisionEvaluator(new DecisionCoalescer(new DecisionEngine(
+                new PersonalCodeCache(), new DecisionMetrics(), lateProvider, new RuleSetHolder(),
+                new ShadowEvaluator(), decisionTracing)), auditJournal, decisionStore, decisionTracing);
+        Span request = openTelemetry.getTracer("test").spanBuilder("request").startSpan();
+        try {
+            CompletableFuture<ResponseEntity<DecisionResponse>> response;
+            Scope scope = request.makeCurrent();
+            try {
+                response = tracedEvaluator.evaluateAsync(REQUEST);
+            } finally {
+                scope.close();
+            }
+            assertEquals(HttpStatus.OK, response.join().getStatusCode());
+            request.end();
+
+            Map<String, SpanData> spans = exporter.getFinishedSpanItems().stream()
+                    .collect(Collectors.toMap(SpanData::getName, Function.identity()));
+            String requestSpanId = request.getSpanContext().getSpanId();
+            assertEquals(requestSpanId, spans.get(DecisionTracing.DECISION).getParentSpanId());
+            assertEquals(requestSpanId, spans.get(DecisionTracing.AUDIT).getParentSpanId());
+            assertEquals(request.getSpanContext().getTraceId(), spans.get(DecisionTracing.AUDIT).getTraceId());
+        } finally {
+            tracedEvaluator.shutdown();
+            openTelemetry.getSdkTracerProvider().close();
+        }
+    }
+
+    @Test
+    void testDecisionIsRecordedWithVersionOfRulesItWasMadeBy() {
+        RuleSetHolder ruleSetHolder = new RuleSetHolder();
+        RuleSet builtIn = ruleSetHolder.getRuleSet();
+        CompletableFuture<Integer> creditModifier = new CompletableFuture<>();
+        DecisionEvaluator ruledEvaluator = new DecisionEvaluator(new DecisionCoalescer(new DecisionEngine(
+                new PersonalCodeCache(), new DecisionMetrics(), (personalCode, segment) -> creditModifier,
+                ruleSetHolder, new ShadowEvaluator(), new DecisionTracing())), auditJournal, decisionStore,
+                new DecisionTracing());
+        try {
+            CompletableFuture<ResponseEntity<DecisionResponse>> response = ruledEvaluator.evaluateAsync(REQUEST);
+            // New rules come into force after the request read its rules but before its decision is recorded.
+            ruleSetHolder.update(new RuleSet(builtIn.version() + 1, builtIn.minimumLoanAmount(),
+                    builtIn.maximumLoanAmount(), builtIn.loanAmountStep(), builtIn.minimumLoanPeriod(),
+                    builtIn.maximumLoanPeriod(), builtIn.segments(), builtIn.approvalBaseline(),
+                    builtIn.scoreDivisor(), builtIn.minimumAge(), builtIn.maximumAge()));
+            creditModifier.complete(100);
+            assertEquals(HttpStatus.OK, response.join().getStatusCode());
+        } finally {
+            ruledEvaluator.shutdown();
+        }
+
+        ArgumentCaptor<Decision> journaled = ArgumentCaptor.forClass(Decision.class);
+        verify(auditJournal).tryAppend(any(), any(), anyInt(), any(), journaled.capture());
+        assertEquals(builtIn.version(), journaled.getValue().getRuleVersion());
+        ArgumentCaptor<Decision> stored = ArgumentCaptor.forClass(Decision.class);
+        verify(decisionStore).trySave(any(), any(), anyInt(), any(), stored.capture());
+        assertEquals(builtIn.version(), stored.getValue().getRuleVersion());
+    }
+
+    @Test
+    void testDecisionIsReturnedWhenRecordingFails() {
+        doThrow(new IllegalStateException("journal closed")).when(auditJournal)
+                .append(any(), any(), anyInt(), any(), any());
+        when(auditJournal.tryAppend(any(), any(), anyInt(), any(), any()))
+                .thenThrow(new IllegalStateException("journal closed"));
+
+        assertEquals(HttpStatus.OK, evaluator.evaluate(REQUEST).getStatusCode());
+        assertEquals(HttpStatus.OK, evaluator.evaluateAsync(REQUEST).join().getStatusCode());
+    }
+}
@@ -0,0 +1,152 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.inbankbackend.audit.AuditJournal;
+import ee.taltech.inbankbackend.audit.DecisionStore;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import ee.taltech.inbankbackend.service.Countries;
+import ee.taltech.inbankbackend.service.DecisionCoalescer;
+import ee.taltech.inbankbackend.service.DecisionEngine;
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import ee.taltech.inbankbackend.service.DecisionTracing;
+import ee.taltech.inbankbackend.service.PersonalCodeCache;
+import ee.taltech.inbankbackend.service.ShadowEvaluator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that retries with an idempotency key get the first response byte for byte and that concurrent duplicates
+ * wait for the first decision, using a credit modifier provider whose answers are held back until the test
+ * releases them. Request coalescing is disabled, so that only the idempotency cache can share decisions.
+ */
+class IdempotentDecisionCacheTest {
+
+    private static final String KEY = "6f1c2f0e-1b7a-4c55-9a55-3f1c1d2b7e10";
+    private static final DecisionRequest REQUEST = new DecisionRequest("50307172740", 4000L, 12, Countries.ESTONIA);
+    private static final int DUPLICATES = 20;
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicReference<CompletableFuture<Integer>> creditModifier = new AtomicReference<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotentDecisionCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        creditModifier.set(new CompletableFuture<>());
+        DecisionMetrics metrics = new DecisionMetrics(meterRegistry);
+        DecisionEngine engine = new DecisionEngine(new PersonalCodeCache(), metrics, (personalCode, segment) -> {
+            lookups.incrementAndGet();
+            return creditModifier.get();
+        }, new RuleSetHolder(), new ShadowEvaluator(), new DecisionTracing());
+        // Decisions are neither journaled, stored nor traced.
+        AuditJournal auditJournal = new AuditJournal(metrics, false, null, DataSize.ofMegabytes(1), Duration.ZERO, 1);
+        DecisionStore decisionStore = new DecisionStore(metrics, null, false, 1, Duration.ZERO, 1, "block", null,
+                Duration.ZERO);
+        DecisionEvaluator evaluator = new DecisionEvaluator(new DecisionCoalescer(engine, metrics, false),
+                auditJournal, decisionStore, new DecisionTracing());
+        cache = new IdempotentDecisionCache(evaluator, metrics, objectMapper, 1000, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testConcurrentDuplicatesWaitForFirstDecision() throws Exception {
+        List<CompletableFuture<ResponseEntity<?>>> responses = new ArrayList<>();
+        for (int i = 0; i < DUPLICATES; i++) {
+            responses.add(cache.evaluateAsync(KEY, REQUEST));
+        }
+        assertEquals(1, lookups.get());
+        assertTrue(responses.stream().noneMatch(CompletableFuture::isDone));
+
+        creditModifier.get().complete(1000);
+        ResponseEntity<?> first = responses.get(0).join();
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, first.getHeaders().getContentType());
+        assertNull(first.getHeaders().getFirst(IdempotentDecisionCache.REPLAYED_HEADER));
+        DecisionResponse decision = objectMapper.readValue((byte[]) first.getBody(), DecisionResponse.class);
+        assertEquals(12, decision.getLoanPeriod());
+        for (CompletableFuture<ResponseEntity<?>> response : responses.subList(1, DUPLICATES)) {
+            ResponseEntity<?> replayed = response.join();
+            assertEquals(HttpStatus.OK, replayed.getStatusCode());
+            assertArrayEquals((byte[]) first.getBody(), (byte[]) replayed.getBody());
+            assertEquals("true", replayed.getHeaders().getFirst(IdempotentDecisionCache.REPLAYED_HEADER));
+        }
+        assertEquals(DUPLICATES - 1, meterRegistry.get("decision.idempotent.replays").counter().count());
+    }
+
+    @Test
+    void testRetryGetsFirstResponseInItsFormat() {
+        creditModifier.get().complete(1000);
+        ResponseEntity<?> first = cache.evaluate(KEY, REQUEST, List.of(DecisionBinaryMessageConverter.MEDIA_TYPE));
+        ResponseEntity<?> retry = cache.evaluate(KEY, REQUEST, List.of(MediaType.APPLICATION_JSON));
+
+        assertEquals(1, lookups.get());
+        assertEquals(DecisionBinaryMessageConverter.MEDIA_TYPE, retry.getHeaders().getContentType());
+        byte[] body = (byte[]) retry.getBody();
+        assertArrayEquals((byte[]) first.getBody(), body);
+        assertEquals(12, DecisionBinaryFormat.decodeResponse(body, body.length).getLoanPeriod());
+    }
+
+    @Test
+    void testKeyUsedForAnotherRequestIsRefused() {
+        creditModifier.get().complete(1000);
+        cache.evaluate(KEY, REQUEST, List.of());
+        DecisionRequest other = new DecisionRequest("50307172740", 5000L, 12, Countries.ESTONIA);
+
+        ResponseEntity<?> response = cache.evaluate(KEY, other, List.of());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals(DecisionEngineConstants.IDEMPOTENCY_KEY_REUSED,
+                ((DecisionResponse) response.getBody()).getErrorMessage());
+        assertEquals(1, lookups.get());
+        assertEquals(1, meterRegistry.get("decision.idempotent.conflicts").counter().count());
+    }
+
+    @Test
+    void testServerErrorsAreNotKept() {
+        creditModifier.get().completeExceptionally(new IllegalStateException("Registry down"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, cache.evaluate(KEY, REQUEST, List.of()).getStatusCode());
+
+        creditModifier.set(CompletableFuture.completedFuture(1000));
+        assertEquals(HttpStatus.OK, cache.evaluate(KEY, REQUEST, List.of()).getStatusCode());
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void testInvalidKeyIsRefused() {
+        ResponseEntity<?> response = cache.evaluate("x".repeat(IdempotentDecisionCache.MAXIMUM_KEY_LENGTH + 1),
+                REQUEST, List.of());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(DecisionEngineConstants.INVALID_IDEMPOTENCY_KEY,
+                ((DecisionResponse) response.getBody()).getErrorMessage());
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    void testPreferredTypeFollowsAcceptHeader() {
+        MediaType binary = DecisionBinaryMessageConverter.MEDIA_TYPE;
+        assertEquals(MediaType.APPLICATION_JSON, IdempotentDecisionCache.preferredType(List.of()));
+        assertEquals(MediaType.APPLICATION_JSON, IdempotentDecisionCache.preferredType(List.of(MediaType.ALL)));
+        assertEquals(binary, IdempotentDecisionCache.preferredType(List.of(binary)));
+        assertEquals(binary, IdempotentDecisionCache.preferredType(List.of(binary, MediaType.ALL)));
+        assertEquals(MediaType.APPLICATION_JSON, IdempotentDecisionCache.preferredType(
+                MediaType.parseMediaTypes(binary + ";q=0.5, application/json")));
+    }
+}
@@ -0,0 +1,45 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the decision endpoint tests against ReactiveDecisionEngineController on WebFlux and Netty,
+ * started with the reactive profile.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {AbstractDecisionEngineControllerTest.RATE_LIMIT_BURST_PROPERTY,
+                AbstractDecisionEngineControllerTest.RATE_LIMIT_RATE_PROPERTY})
+@ActiveProfiles("reactive")
+@AutoConfigureObservability
+public class ReactiveDecisionEngineControllerTest extends AbstractDecisionEngineControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ReactiveWebServerApplicationContext context;
+
+    @Override
+    protected WebTestClient webTestClient() {
+        return webTestClient;
+    }
+
+    /**
+     * This test ensures that the reactive profile serves the endpoints on Netty rather than Tomcat.
+     */
+    @Test
+    public void givenReactiveProfile_whenStarted_thenServesOnNetty() {
+        assertInstanceOf(NettyWebServer.class, context.getWebServer());
+        assertFalse(context.getBeansOfType(ReactiveDecisionEngineController.class).isEmpty());
+        assertTrue(context.getBeansOfType(DecisionEngineController.class).isEmpty());
+    }
+}
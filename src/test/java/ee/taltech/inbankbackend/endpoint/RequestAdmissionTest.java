@@ -0,0 +1,138 @@
+package ee.taltech.inbankbackend.endpoint;
+
+import ee.taltech.inbankbackend.service.DecisionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the per-client token buckets and the concurrency limit of RequestAdmission against a manual clock.
+ */
+class RequestAdmissionTest {
+
+    private static final String CLIENT = "partner";
+    private static final double REQUESTS_PER_SECOND = 10;
+    private static final int BURST = 3;
+    private static final long TOKEN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+    private static final int THREADS = 8;
+
+    private final AtomicLong clock = new AtomicLong(42);
+    private SimpleMeterRegistry meterRegistry;
+    private RequestAdmission admission;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        admission = new RequestAdmission(new DecisionMetrics(meterRegistry), true, "X-Client-Id",
+                REQUESTS_PER_SECOND, BURST, 1000, MAX_CONCURRENT_REQUESTS, clock::get);
+    }
+
+    @Test
+    void testBurstIsAdmittedThenTokensComeBackAtTheRate() {
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(admitAndRelease(CLIENT).isAdmitted());
+        }
+        RequestAdmission.Admission throttled = admitAndRelease(CLIENT);
+        assertEquals(RequestAdmission.Admission.Status.THROTTLED, throttled.status());
+        assertEquals(1, throttled.retryAfterSeconds());
+
+        clock.addAndGet(TOKEN_NANOS - 1);
+        assertFalse(admitAndRelease(CLIENT).isAdmitted());
+        clock.incrementAndGet();
+        assertTrue(admitAndRelease(CLIENT).isAdmitted());
+        assertFalse(admitAndRelease(CLIENT).isAdmitted());
+
+        // A long pause refills the bucket up to the burst, not beyond.
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < BURST; i++) {
+            assertTrue(admitAndRelease(CLIENT).isAdmitted());
+        }
+        assertFalse(admitAndRelease(CLIENT).isAdmitted());
+        assertEquals(4, meterRegistry.get("decision.requests.throttled").counter().count());
+    }
+
+    @Test
+    void testClientsHaveTheirOwnLimits() {
+        for (int i = 0; i < BURST; i++) {
+            admitAndRelease(CLIENT);
+        }
+
+        assertFalse(admitAndRelease(CLIENT).isAdmitted());
+        assertTrue(admitAndRelease("other-partner").isAdmitted());
+        for (int i = 0; i < BURST * 10; i++) {
+            assertTrue(admitAndRelease(null).isAdmitted(), "Requests without a client are not rate limited");
+        }
+    }
+
+    @Test
+    void testRequestsBeyondConcurrencyLimitAreShed() {
+        assertTrue(admission.admit(null).isAdmitted());
+        assertTrue(admission.admit(null).isAdmitted());
+
+        RequestAdmission.Admission shed = admission.admit(null);
+        assertEquals(RequestAdmission.Admission.Status.SHED, shed.status());
+        assertEquals(1, meterRegistry.get("decision.requests.shed").counter().count());
+
+        admission.release();
+        assertTrue(admission.admit(null).isAdmitted());
+    }
+
+    @Test
+    void testConcurrentRequestsOfOneClientTakeExactlyTheBurst() throws Exception {
+        admission = new RequestAdmission(new DecisionMetrics(meterRegistry), true, "X-Client-Id",
+                REQUESTS_PER_SECOND, 1000, 1000, Integer.MAX_VALUE, clock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> admitted = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            admitted.add(executor.submit(() -> {
+                start.await();
+                int count = 0;
+                for (int i = 0; i < 500; i++) {
+                    if (admission.admit(CLIENT).isAdmitted()) {
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        start.countDown();
+
+        int total = 0;
+        for (Future<Integer> count : admitted) {
+            total += count.get();
+        }
+        executor.shutdown();
+        assertEquals(1000, total);
+    }
+
+    @Test
+    void testDisabledAdmissionAdmitsEverything() {
+        admission = new RequestAdmission(new DecisionMetrics(meterRegistry), false, "X-Client-Id",
+                REQUESTS_PER_SECOND, BURST, 1000, MAX_CONCURRENT_REQUESTS, clock::get);
+
+        for (int i = 0; i < BURST + MAX_CONCURRENT_REQUESTS; i++) {
+            assertTrue(admission.admit(CLIENT).isAdmitted());
+        }
+    }
+
+    private RequestAdmission.Admission admitAndRelease(String client) {
+        RequestAdmission.Admission result = admission.admit(client);
+        if (result.isAdmitted()) {
+            admission.release();
+        }
+        return result;
+    }
+}
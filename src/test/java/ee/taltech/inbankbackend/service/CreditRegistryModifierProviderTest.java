@@ -0,0 +1,165 @@
+package ee.taltech.inbankbackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ee.taltech.inbankbackend.config.DecisionEngineConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the credit registry provider against a local stub registry, including when the registry is slow
+ * or failing.
+ */
+class CreditRegistryModifierProviderTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+    private static final String OTHER_PERSONAL_CODE = "38411266610";
+    private static final int SEGMENT = 2740;
+    private static final Duration TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration OPEN_DURATION = Duration.ofMillis(500);
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long SLOW_REGISTRY_MILLIS = 150;
+    private static final int CONCURRENT_LOOKUPS = 50;
+
+    private CreditRegistryStub registry;
+    private CreditRegistryModifierProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        registry = new CreditRegistryStub();
+        registry.setCreditModifier(PERSONAL_CODE, DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER);
+        registry.setCreditModifier(OTHER_PERSONAL_CODE, 0);
+        provider = new CreditRegistryModifierProvider(registry.getUrl(), TIMEOUT, 1000, Duration.ofMinutes(1),
+                FAILURE_THRESHOLD, OPEN_DURATION, new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    void testAnswersAreCached() {
+        assertEquals(DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, lookup(PERSONAL_CODE));
+        assertEquals(DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, lookup(PERSONAL_CODE));
+        assertEquals(0, lookup(OTHER_PERSONAL_CODE));
+        assertEquals(2, registry.getRequests());
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneRequest() throws Exception {
+        registry.setDelayMillis(SLOW_REGISTRY_MILLIS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONCURRENT_LOOKUPS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return lookup(PERSONAL_CODE);
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, result.get());
+            }
+        }
+        assertEquals(1, registry.getRequests());
+    }
+
+    @Test
+    void testSlowRegistryTimesOut() {
+        registry.setDelayMillis(TIMEOUT.toMillis() * 3);
+
+        long start = System.nanoTime();
+        assertThrows(CompletionException.class, () -> lookup(PERSONAL_CODE));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < TIMEOUT.toMillis() * 2, "waited " + elapsedMillis + " ms");
+
+        // Failures are not cached, so the next lookup asks again.
+        registry.setDelayMillis(0);
+        assertEquals(DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, lookup(PERSONAL_CODE));
+    }
+
+    @Test
+    void testInvalidAnswerIsFailure() {
+        assertThrows(CompletionException.class, () -> lookup("unknown"));
+    }
+
+    @Test
+    void testCircuitBreakerOpensAndRecovers() throws Exception {
+        registry.setErrorStatus(500);
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThrows(CompletionException.class, () -> lookup(PERSONAL_CODE));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, provider.getCircuitState());
+
+        // While open, lookups fail without reaching the registry.
+        registry.setErrorStatus(0);
+        assertThrows(CompletionException.class, () -> lookup(PERSONAL_CODE));
+        assertEquals(FAILURE_THRESHOLD, registry.getRequests());
+
+        // After the open duration a trial lookup goes through and closes the breaker.
+        Thread.sleep(OPEN_DURATION.toMillis());
+        assertEquals(DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, lookup(PERSONAL_CODE));
+        assertEquals(CircuitBreaker.State.CLOSED, provider.getCircuitState());
+        assertEquals(FAILURE_THRESHOLD + 1, registry.getRequests());
+    }
+
+    @Test
+    void testFailedTrialReopensCircuit() throws Exception {
+        registry.setErrorStatus(500);
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThrows(CompletionException.class, () -> lookup(PERSONAL_CODE));
+        }
+        Thread.sleep(OPEN_DURATION.toMillis());
+
+        assertThrows(CompletionException.class, () -> lookup(PERSONAL_CODE));
+        assertEquals(CircuitBreaker.State.OPEN, provider.getCircuitState());
+        assertEquals(FAILURE_THRESHOLD + 1, registry.getRequests());
+    }
+
+    @Test
+    void testDecisionsWithSlowRegistry() {
+        registry.setDelayMillis(SLOW_REGISTRY_MILLIS);
+        DecisionEngine engine = DecisionEngine.builder().creditModifierProvider(provider).build();
+
+        long start = System.nanoTime();
+        CompletableFuture<Decision> pending = engine.calculateApprovedLoanAsync(PERSONAL_CODE, 4000L, 12,
+                Countries.ESTONIA);
+        // The async variant returns before the registry has answered.
+        assertFalse(pending.isDone());
+        Decision first = pending.join();
+        long firstMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        Decision second = engine.calculateApprovedLoan(PERSONAL_CODE, 4000L, 12, Countries.ESTONIA);
+        long secondMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(DecisionOutcome.APPROVED, first.getOutcome());
+        assertEquals(first, second);
+        assertTrue(firstMillis >= SLOW_REGISTRY_MILLIS, "first decision took " + firstMillis + " ms");
+        assertTrue(secondMillis < SLOW_REGISTRY_MILLIS, "cached decision took " + secondMillis + " ms");
+
+        // A registry slower than the timeout makes the decision fail fast with a reason code.
+        registry.setDelayMillis(TIMEOUT.toMillis() * 3);
+        assertEquals(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE, engine.calculateApprovedLoan(OTHER_PERSONAL_CODE,
+                4000L, 12, Countries.ESTONIA).getOutcome());
+    }
+
+    private int lookup(String personalCode) {
+        return provider.getCreditModifier(personalCode, SEGMENT).join();
+    }
+}
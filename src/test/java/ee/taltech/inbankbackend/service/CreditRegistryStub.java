@@ -0,0 +1,105 @@
+package ee.taltech.inbankbackend.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the external credit registry, answering GET /credit-modifiers/{personalCode} on a random
+ * port. Each answer can be delayed or replaced by an error status to simulate a slow or failing registry.
+ */
+class CreditRegistryStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Integer> creditModifiers = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile int errorStatus;
+
+    CreditRegistryStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(CreditRegistryModifierProvider.CREDIT_MODIFIERS_PATH, this::handle);
+        // Slow answers must not hold up the others, so every request gets a thread of its own.
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return Base URL of the stub, to be used as decision-engine.credit-registry.url
+     */
+    String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    void setCreditModifier(String personalCode, int creditModifier) {
+        creditModifiers.put(personalCode, creditModifier);
+    }
+
+    /**
+     * @param delayMillis Time every answer is held back for
+     */
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * @param errorStatus Status every request is answered with, or 0 to answer normally
+     */
+    void setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * @return Number of requests received so far
+     */
+    int getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            String personalCode = exchange.getRequestURI().getPath()
+                    .substring(CreditRegistryModifierProvider.CREDIT_MODIFIERS_PATH.length());
+            Integer creditModifier = creditModifiers.get(personalCode);
+            if (errorStatus != 0 || creditModifier == null) {
+                exchange.sendResponseHeaders(errorStatus != 0 ? errorStatus : 404, -1);
+                return;
+            }
+
+            byte[] body = ("{\"" + CreditRegistryModifierProvider.CREDIT_MODIFIER_FIELD + "\":" + creditModifier
+                    + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package ee.taltech.inbankbackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that identical requests in flight at the same time are decided once, using a credit modifier provider
+ * whose answers are held back until the test releases them.
+ */
+class DecisionCoalescerTest {
+
+    private static final String PERSONAL_CODE = "50307172740";
+    private static final long LOAN_AMOUNT_4000 = 4000L;
+    private static final int LOAN_PERIOD_12 = 12;
+    private static final int IDENTICAL_REQUESTS = 20;
+    private static final long WAIT_MILLIS = 10_000;
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicReference<CompletableFuture<Integer>> creditModifier = new AtomicReference<>();
+    private SimpleMeterRegistry meterRegistry;
+    private DecisionCoalescer decisionCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        creditModifier.set(new CompletableFuture<>());
+        DecisionMetrics metrics = new DecisionMetrics(meterRegistry);
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(metrics)
+                .creditModifierProvider((personalCode, segment) -> {
+                    lookups.incrementAndGet();
+                    return creditModifier.get();
+                })
+                .build();
+        decisionCoalescer = new DecisionCoalescer(engine, metrics, true);
+    }
+
+    @Test
+    void testIdenticalAsyncRequestsShareOneDecision() {
+        List<CompletableFuture<Decision>> decisions = new ArrayList<>();
+        for (int i = 0; i < IDENTICAL_REQUESTS; i++) {
+            decisions.add(decideAsync(LOAN_AMOUNT_4000));
+        }
+        assertEquals(1, lookups.get());
+        assertEquals(1, decisionCoalescer.inFlightCount());
+
+        creditModifier.get().complete(1000);
+        Decision expected = decisions.get(0).join();
+        assertEquals(DecisionOutcome.APPROVED, expected.getOutcome());
+        for (CompletableFuture<Decision> decision : decisions) {
+            assertSame(expected, decision.join());
+        }
+        assertEquals(0, decisionCoalescer.inFlightCount());
+        assertEquals(IDENTICAL_REQUESTS - 1, coalescedCount());
+    }
+
+    @Test
+    void testIdenticalBlockingRequestsShareOneDecision() throws Exception {
+        List<Future<Decision>> decisions = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < IDENTICAL_REQUESTS; i++) {
+                decisions.add(executor.submit(() -> decisionCoalescer.calculateApprovedLoan(PERSONAL_CODE,
+                        LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA)));
+            }
+            // Every request has either started the lookup or joined it once all but one are counted as coalesced.
+            long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+            while (coalescedCount() < IDENTICAL_REQUESTS - 1 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            creditModifier.get().complete(1000);
+
+            Decision expected = decisions.get(0).get();
+            for (Future<Decision> decision : decisions) {
+                assertSame(expected, decision.get());
+            }
+        }
+        assertEquals(1, lookups.get());
+        assertEquals(0, decisionCoalescer.inFlightCount());
+    }
+
+    @Test
+    void testDifferentRequestsAreNotShared() {
+        CompletableFuture<Decision> first = decideAsync(LOAN_AMOUNT_4000);
+        CompletableFuture<Decision> second = decideAsync(LOAN_AMOUNT_4000 + 100);
+        assertEquals(2, lookups.get());
+
+        creditModifier.get().complete(1000);
+        assertEquals(first.join(), second.join());
+        assertNotSame(first.join(), second.join());
+        assertEquals(0, coalescedCount());
+    }
+
+    @Test
+    void testDecisionsAreNotKeptAfterCompletion() {
+        creditModifier.get().complete(1000);
+        Decision first = decideAsync(LOAN_AMOUNT_4000).join();
+        Decision second = decideAsync(LOAN_AMOUNT_4000).join();
+
+        assertEquals(2, lookups.get());
+        assertEquals(first, second);
+        assertEquals(0, decisionCoalescer.inFlightCount());
+    }
+
+    @Test
+    void testFailureReachesEveryWaitingRequest() {
+        CompletableFuture<Decision> first = decideAsync(LOAN_AMOUNT_4000);
+        CompletableFuture<Decision> second = decideAsync(LOAN_AMOUNT_4000);
+
+        // A failed lookup is reported as a rejection; a null modifier makes the shared engine call itself fail.
+        creditModifier.get().complete(null);
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(1, lookups.get());
+        assertEquals(0, decisionCoalescer.inFlightCount());
+    }
+
+    @Test
+    void testErrorDoesNotLeaveRequestInFlight() {
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(new DecisionMetrics(meterRegistry))
+                .creditModifierProvider((personalCode, segment) -> {
+                    if (lookups.incrementAndGet() <= 2) {
+                        throw new NoClassDefFoundError("registry client");
+                    }
+                    return CompletableFuture.completedFuture(1000);
+                })
+                .build();
+        DecisionCoalescer failing = new DecisionCoalescer(engine, new DecisionMetrics(meterRegistry), true);
+
+        assertThrows(NoClassDefFoundError.class, () -> failing.calculateApprovedLoan(PERSONAL_CODE,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA));
+        assertEquals(0, failing.inFlightCount());
+        CompletionException failure = assertThrows(CompletionException.class, () -> failing
+                .calculateApprovedLoanAsync(PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA)
+                .join());
+        assertInstanceOf(NoClassDefFoundError.class, failure.getCause());
+        assertEquals(0, failing.inFlightCount());
+        assertEquals(DecisionOutcome.APPROVED, failing.calculateApprovedLoan(PERSONAL_CODE, LOAN_AMOUNT_4000,
+                LOAN_PERIOD_12, Countries.ESTONIA).getOutcome());
+    }
+
+    @Test
+    void testDisabledDecidesEveryRequest() {
+        DecisionMetrics metrics = new DecisionMetrics(meterRegistry);
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(metrics)
+                .creditModifierProvider((personalCode, segment) -> {
+                    lookups.incrementAndGet();
+                    return creditModifier.get();
+                })
+                .build();
+        DecisionCoalescer disabled = new DecisionCoalescer(engine, metrics, false);
+
+        disabled.calculateApprovedLoanAsync(PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        disabled.calculateApprovedLoanAsync(PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        assertEquals(2, lookups.get());
+        assertEquals(0, disabled.inFlightCount());
+    }
+
+    private CompletableFuture<Decision> decideAsync(long loanAmount) {
+        return decisionCoalescer.calculateApprovedLoanAsync(PERSONAL_CODE, loanAmount, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+    }
+
+    private double coalescedCount() {
+        return meterRegistry.get(DecisionMetrics.COALESCED).counter().count();
+    }
+}
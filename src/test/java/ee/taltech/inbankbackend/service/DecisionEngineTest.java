@@ -1,16 +1,28 @@
 package ee.taltech.inbankbackend.service;
 
 import ee.taltech.inbankbackend.config.DecisionEngineConstants;
-import ee.taltech.inbankbackend.exceptions.InvalidLoanAmountException;
-import ee.taltech.inbankbackend.exceptions.InvalidLoanPeriodException;
-import ee.taltech.inbankbackend.exceptions.InvalidPersonalCodeException;
-import ee.taltech.inbankbackend.exceptions.NoValidLoanException;
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,7 +37,16 @@ class DecisionEngineTest {
     private static final int EXPECTED_PERIOD_20 = 20;
     private static final int EXPECTED_PERIOD_12 = 12;
     private static final int EXPECTED_10000 = 10000;
-    @InjectMocks
+    private static final int SCAN_AMOUNT_STEP = 25;
+    private static final int CONCURRENT_AMOUNT_STEP = 500;
+    private static final int TABLE_AMOUNT_STEP = 50;
+    private static final int CONCURRENT_ROUNDS = 5;
+    private static final int CONCURRENT_THREADS = 16;
+    private static final long CONCURRENT_SHUFFLE_SEED = 42L;
+    private static final int REGISTRY_CREDIT_MODIFIER = 500;
+    private static final int UPDATED_MAXIMUM_LOAN_AMOUNT = 8000;
+    private static final int UPDATED_SEGMENT_1_CREDIT_MODIFIER = 200;
+    private SimpleMeterRegistry meterRegistry;
     private DecisionEngine decisionEngine;
     private String debtorPersonalCode;
     private String segment1PersonalCode;
@@ -35,8 +56,15 @@ class DecisionEngineTest {
     private String overagePersonalCodeEstonia;
     private String overagePersonalCodeLatvia;
     private String overagePersonalCodeLithuania;
+    private String segment2PersonalCodeFinland;
+    private String segment3PersonalCodeFinland;
+    private String underagePersonalCodeFinland;
+    private String overagePersonalCodeFinland;
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        decisionEngine = DecisionEngine.builder().decisionMetrics(new DecisionMetrics(meterRegistry))
+                .creditModifierProvider(new SegmentCreditModifierProvider()).build();
         debtorPersonalCode = "37605030299";
         segment1PersonalCode = "50307172740";
         segment2PersonalCode = "38411266610";
@@ -45,18 +73,24 @@ class DecisionEngineTest {
         overagePersonalCodeEstonia = "34403255473";
         overagePersonalCodeLatvia = "34903254088";
         overagePersonalCodeLithuania = "33903255845";
+        segment2PersonalCodeFinland = "010185-500H";
+        segment3PersonalCodeFinland = "150689-750N";
+        underagePersonalCodeFinland = "010110A5005";
+        overagePersonalCodeFinland = "010140-002U";
     }
 
     @Test
     void testDebtorPersonalCode() {
-        assertThrows(NoValidLoanException.class,
-                () -> decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
-                        Countries.ESTONIA));
+        Decision decision = decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_4000,
+                LOAN_PERIOD_12, Countries.ESTONIA);
+
+        assertEquals(DecisionOutcome.APPLICANT_HAS_DEBT, decision.getOutcome());
+        assertNull(decision.getLoanAmount());
+        assertNull(decision.getLoanPeriod());
     }
 
     @Test
-    void testSegment1PersonalCode() throws InvalidLoanPeriodException, NoValidLoanException,
-            InvalidPersonalCodeException, InvalidLoanAmountException {
+    void testSegment1PersonalCode() {
         Decision decision = decisionEngine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000,
                 LOAN_PERIOD_12, Countries.ESTONIA);
         assertEquals(EXPECTED_2000, decision.getLoanAmount());
@@ -64,8 +98,7 @@ class DecisionEngineTest {
     }
 
     @Test
-    void testSegment2PersonalCode() throws InvalidLoanPeriodException, NoValidLoanException,
-            InvalidPersonalCodeException, InvalidLoanAmountException {
+    void testSegment2PersonalCode() {
         Decision decision = decisionEngine.calculateApprovedLoan(segment2PersonalCode, LOAN_AMOUNT_4000,
                 LOAN_PERIOD_12, Countries.ESTONIA);
         assertEquals(EXPECTED_3600, decision.getLoanAmount());
@@ -73,8 +106,7 @@ class DecisionEngineTest {
     }
 
     @Test
-    void testSegment3PersonalCode() throws InvalidLoanPeriodException, NoValidLoanException,
-            InvalidPersonalCodeException, InvalidLoanAmountException {
+    void testSegment3PersonalCode() {
         Decision decision = decisionEngine.calculateApprovedLoan(segment3PersonalCode, LOAN_AMOUNT_4000,
                 LOAN_PERIOD_12, Countries.ESTONIA);
 
@@ -91,9 +123,22 @@ class DecisionEngineTest {
 
         assertNull(decision.getLoanAmount());
         assertNull(decision.getLoanPeriod());
+        assertEquals(DecisionOutcome.INVALID_PERSONAL_CODE, decision.getOutcome());
         assertEquals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE, decision.getErrorMessage());
     }
 
+    @Test
+    void testRejectionsAreShared() {
+        Decision first = decisionEngine.calculateApprovedLoan("12345678901", LOAN_AMOUNT_4000,
+                LOAN_PERIOD_12, Countries.ESTONIA);
+        Decision second = decisionEngine.calculateApprovedLoan("not a code", LOAN_AMOUNT_4000,
+                LOAN_PERIOD_12, Countries.ESTONIA);
+
+        assertSame(Decision.rejected(DecisionOutcome.INVALID_PERSONAL_CODE), first);
+        assertSame(first, second);
+        assertThrows(IllegalArgumentException.class, () -> Decision.rejected(DecisionOutcome.APPROVED));
+    }
+
     @Test
     void testInvalidLoanAmountTooLow() {
         Long tooLowLoanAmount = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT - 1L;
@@ -131,8 +176,7 @@ class DecisionEngineTest {
     }
 
     @Test
-    void testFindSuitableLoanPeriod() throws InvalidLoanPeriodException, NoValidLoanException,
-            InvalidPersonalCodeException, InvalidLoanAmountException {
+    void testFindSuitableLoanPeriod() {
         Decision decision = decisionEngine.calculateApprovedLoan(segment2PersonalCode, LOAN_AMOUNT_2000,
                 LOAN_PERIOD_12, Countries.ESTONIA);
         assertEquals(EXPECTED_3600, decision.getLoanAmount());
@@ -141,11 +185,11 @@ class DecisionEngineTest {
 
     @Test
     void testNoValidLoanFound() {
-        NoValidLoanException exception = assertThrows(NoValidLoanException.class,
-                () -> decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_10000,
-                        LOAN_PERIOD_12, Countries.ESTONIA));
+        Decision decision = decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_10000,
+                LOAN_PERIOD_12, Countries.ESTONIA);
 
-        assertEquals(DecisionEngineConstants.APPLICANT_HAS_DEBT, exception.getMessage());
+        assertFalse(decision.isApproved());
+        assertEquals(DecisionEngineConstants.APPLICANT_HAS_DEBT, decision.getErrorMessage());
     }
 
     @Test
@@ -219,9 +263,379 @@ class DecisionEngineTest {
     }
 
     @Test
-    void testNotValidCountry() {
-        Decision decision = decisionEngine.calculateApprovedLoan(overagePersonalCodeLithuania,
+    void testValidLoanFoundInFinland() {
+        Decision decision = decisionEngine.calculateApprovedLoan(segment3PersonalCodeFinland,
+                LOAN_AMOUNT_2000, LOAN_PERIOD_12, Countries.FINLAND);
+        assertEquals(EXPECTED_10000, decision.getLoanAmount());
+        assertEquals(LOAN_PERIOD_12, decision.getLoanPeriod());
+
+        decision = decisionEngine.calculateApprovedLoan(segment2PersonalCodeFinland,
                 LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.FINLAND);
-        assertEquals(DecisionEngineConstants.INVALID_AGE_ERROR, decision.getErrorMessage());
+        assertEquals(EXPECTED_3600, decision.getLoanAmount());
+    }
+
+    @Test
+    void testAgeLimitsInFinland() {
+        assertEquals(DecisionOutcome.INVALID_AGE, decisionEngine.calculateApprovedLoan(underagePersonalCodeFinland,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.FINLAND).getOutcome());
+        assertEquals(DecisionOutcome.INVALID_AGE, decisionEngine.calculateApprovedLoan(overagePersonalCodeFinland,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.FINLAND).getOutcome());
+    }
+
+    @Test
+    void testPersonalCodeFormatOfCountry() {
+        Decision decision = decisionEngine.calculateApprovedLoan(segment2PersonalCode,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.FINLAND);
+        assertEquals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE, decision.getErrorMessage());
+
+        decision = decisionEngine.calculateApprovedLoan(segment2PersonalCodeFinland,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        assertEquals(DecisionEngineConstants.INVALID_PERSONAL_ID_CODE, decision.getErrorMessage());
+    }
+
+    @Test
+    void testOutcomesAreCountedByCountry() {
+        decisionEngine.calculateApprovedLoan(segment2PersonalCode, LOAN_AMOUNT_2000, LOAN_PERIOD_12, Countries.ESTONIA);
+        decisionEngine.calculateApprovedLoan(segment2PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        decisionEngine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA);
+        decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.LATVIA);
+        decisionEngine.calculateApprovedLoan("12345678901", LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.LATVIA);
+        decisionEngine.calculateApprovedLoan(underagePersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, null);
+
+        assertEquals(1, outcomeCount("estonia", DecisionMetrics.Result.APPROVED_HIGHER));
+        assertEquals(1, outcomeCount("estonia", DecisionMetrics.Result.APPROVED_LOWER));
+        assertEquals(1, outcomeCount("estonia", DecisionMetrics.Result.EXTENDED_PERIOD));
+        assertEquals(1, outcomeCount("latvia", DecisionMetrics.Result.DEBT));
+        assertEquals(1, outcomeCount("latvia", DecisionMetrics.Result.INVALID_CODE));
+        assertEquals(1, outcomeCount(DecisionMetrics.UNKNOWN_COUNTRY, DecisionMetrics.Result.INVALID_AGE));
+        assertEquals(3, meterRegistry.get(DecisionMetrics.LATENCY).tag(DecisionMetrics.COUNTRY_TAG, "estonia")
+                .timer().count());
+    }
+
+    @Test
+    void testScoreEvaluationsAreCounted() {
+        decisionEngine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.LITHUANIA);
+        decisionEngine.calculateApprovedLoan(debtorPersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.LITHUANIA);
+
+        DistributionSummary evaluations = meterRegistry.get(DecisionMetrics.SCORE_EVALUATIONS)
+                .tag(DecisionMetrics.COUNTRY_TAG, "lithuania").summary();
+        assertEquals(2, evaluations.count());
+        // The debtor is refused before any score is computed, so every evaluation belongs to the search.
+        assertTrue(evaluations.totalAmount() > 1);
+        assertEquals(evaluations.totalAmount(), evaluations.max());
+    }
+
+    @Test
+    void testSearchMatchesLinearScan() {
+        String[] personalCodes = {segment1PersonalCode, segment2PersonalCode, segment3PersonalCode};
+        int[] creditModifiers = {DecisionEngineConstants.SEGMENT_1_CREDIT_MODIFIER,
+                DecisionEngineConstants.SEGMENT_2_CREDIT_MODIFIER, DecisionEngineConstants.SEGMENT_3_CREDIT_MODIFIER};
+
+        for (int i = 0; i < personalCodes.length; i++) {
+            for (int amount = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
+                 amount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT; amount += SCAN_AMOUNT_STEP) {
+                for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+                     period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+                    Decision expected = linearScan(creditModifiers[i], amount, period);
+                    Decision actual = decisionEngine.calculateApprovedLoan(personalCodes[i], (long) amount,
+                            period, Countries.ESTONIA);
+                    assertEquals(expected, actual, "amount " + amount + ", period " + period);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testDecisionTableMatchesSearch() {
+        DecisionEngine tableEngine = DecisionEngine.withDefaults();
+        DecisionTable table = tableEngine.buildDecisionTable();
+        tableEngine.setDecisionTable(table);
+        assertTrue(table.getEstimatedSizeBytes() > 0);
+
+        String[] personalCodes = {segment1PersonalCode, segment2PersonalCode, segment3PersonalCode};
+        for (String personalCode : personalCodes) {
+            // Steps of 50 cover both amounts on the table grid and amounts that fall back to the search.
+            for (int amount = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
+                 amount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT; amount += TABLE_AMOUNT_STEP) {
+                for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+                     period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+                    Object[] request = {personalCode, (long) amount, period};
+                    assertEquals(decide(request), decide(tableEngine, request), Arrays.toString(request));
+                }
+            }
+        }
+        assertEquals(DecisionOutcome.APPLICANT_HAS_DEBT, tableEngine.calculateApprovedLoan(debtorPersonalCode,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA).getOutcome());
+    }
+
+    @Test
+    void testAsyncMatchesSync() {
+        String[] personalCodes = {debtorPersonalCode, segment1PersonalCode, segment2PersonalCode,
+                segment3PersonalCode, "12345678901"};
+        for (String personalCode : personalCodes) {
+            assertEquals(decisionEngine.calculateApprovedLoan(personalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                            Countries.ESTONIA),
+                    decisionEngine.calculateApprovedLoanAsync(personalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                            Countries.ESTONIA).join(), personalCode);
+        }
+    }
+
+    @Test
+    void testOffersMatchSingleDecisions() {
+        String[] personalCodes = {segment1PersonalCode, segment2PersonalCode, segment3PersonalCode};
+        for (String personalCode : personalCodes) {
+            LoanOffers offers = decisionEngine.calculateOffers(personalCode, Countries.ESTONIA);
+            assertTrue(offers.isApproved());
+            assertEquals(DecisionEngineConstants.MINIMUM_LOAN_PERIOD, offers.getFirstLoanPeriod());
+            assertEquals(DecisionEngineConstants.MAXIMUM_LOAN_PERIOD - DecisionEngineConstants.MINIMUM_LOAN_PERIOD
+                    + 1, offers.getLoanAmounts().length);
+
+            for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+                 period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+                Decision decision = decisionEngine.calculateApprovedLoan(personalCode, LOAN_AMOUNT_2000, period,
+                        Countries.ESTONIA);
+                int expected = decision.isApproved() && decision.getLoanPeriod() == period
+                        ? decision.getLoanAmount() : 0;
+                assertEquals(expected, offers.getLoanAmounts()[period - offers.getFirstLoanPeriod()],
+                        personalCode + ", period " + period);
+            }
+            assertEquals(offers, decisionEngine.calculateOffersAsync(personalCode, Countries.ESTONIA).join());
+        }
+    }
+
+    @Test
+    void testOffersRejections() {
+        assertEquals(DecisionOutcome.APPLICANT_HAS_DEBT,
+                decisionEngine.calculateOffers(debtorPersonalCode, Countries.ESTONIA).getOutcome());
+        assertEquals(DecisionOutcome.INVALID_PERSONAL_CODE,
+                decisionEngine.calculateOffers("12345678901", Countries.ESTONIA).getOutcome());
+        assertEquals(DecisionOutcome.INVALID_AGE,
+                decisionEngine.calculateOffers(underagePersonalCode, Countries.ESTONIA).getOutcome());
+        assertNull(decisionEngine.calculateOffers(debtorPersonalCode, Countries.ESTONIA).getLoanAmounts());
+
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(new DecisionMetrics(meterRegistry))
+                .creditModifierProvider((personalCode, segment) ->
+                        CompletableFuture.failedFuture(new IllegalStateException()))
+                .build();
+        assertEquals(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE,
+                engine.calculateOffers(segment1PersonalCode, Countries.ESTONIA).getOutcome());
+        assertEquals(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE,
+                engine.calculateOffersAsync(segment1PersonalCode, Countries.ESTONIA).join().getOutcome());
+    }
+
+    @Test
+    void testRegistryUnavailable() {
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(new DecisionMetrics(meterRegistry))
+                .creditModifierProvider((personalCode, segment) ->
+                        CompletableFuture.failedFuture(new IllegalStateException()))
+                .build();
+
+        Decision decision = engine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+        assertEquals(DecisionOutcome.CREDIT_REGISTRY_UNAVAILABLE, decision.getOutcome());
+        assertNull(decision.getLoanAmount());
+        assertEquals(decision, engine.calculateApprovedLoanAsync(segment1PersonalCode, LOAN_AMOUNT_4000,
+                LOAN_PERIOD_12, Countries.ESTONIA).join());
+        assertEquals(2.0, outcomeCount("estonia", DecisionMetrics.Result.REGISTRY_UNAVAILABLE));
+
+        // Invalid input is rejected without asking the registry.
+        assertEquals(DecisionOutcome.INVALID_LOAN_PERIOD, engine.calculateApprovedLoan(segment1PersonalCode,
+                LOAN_AMOUNT_4000, 0, Countries.ESTONIA).getOutcome());
+    }
+
+    @Test
+    void testUnknownCreditModifierIsSearched() {
+        // A registry may report modifiers outside the segments, which the decision table does not hold.
+        CreditModifierProvider registry =
+                (personalCode, segment) -> CompletableFuture.completedFuture(REGISTRY_CREDIT_MODIFIER);
+        DecisionEngine searchEngine = DecisionEngine.builder().creditModifierProvider(registry).build();
+        DecisionEngine tableEngine = DecisionEngine.builder().creditModifierProvider(registry).build();
+        tableEngine.setDecisionTable(decisionEngine.buildDecisionTable());
+
+        for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+             period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+            Object[] request = {debtorPersonalCode, LOAN_AMOUNT_4000, period};
+            assertEquals(linearScan(REGISTRY_CREDIT_MODIFIER, (int) LOAN_AMOUNT_4000, period),
+                    decide(searchEngine, request));
+            assertEquals(decide(searchEngine, request), decide(tableEngine, request), Arrays.toString(request));
+        }
+    }
+
+    @Test
+    void testNewRulesApplyToNextRequest() {
+        RuleSetHolder ruleSetHolder = new RuleSetHolder();
+        DecisionEngine engine = DecisionEngine.builder().ruleSetHolder(ruleSetHolder).build();
+        assertEquals(Decision.approved(EXPECTED_2000, EXPECTED_PERIOD_20), engine.calculateApprovedLoan(
+                segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA));
+
+        ruleSetHolder.update(updatedRules());
+
+        Decision segment1 = engine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+        assertEquals(linearScan(UPDATED_SEGMENT_1_CREDIT_MODIFIER, (int) LOAN_AMOUNT_4000, LOAN_PERIOD_12), segment1);
+        assertEquals(EXPECTED_PERIOD_12, segment1.getLoanPeriod());
+        assertEquals(Decision.approved(UPDATED_MAXIMUM_LOAN_AMOUNT, EXPECTED_PERIOD_12), engine.calculateApprovedLoan(
+                segment3PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA));
+        assertEquals(DecisionOutcome.INVALID_LOAN_AMOUNT, engine.calculateApprovedLoan(segment3PersonalCode,
+                LOAN_AMOUNT_10000, LOAN_PERIOD_12, Countries.ESTONIA).getOutcome());
+    }
+
+    @Test
+    void testRequestOnPreviousRulesUsesTheirSegments() {
+        RuleSetHolder ruleSetHolder = new RuleSetHolder();
+        DecisionEngine engine = DecisionEngine.builder().ruleSetHolder(ruleSetHolder).build();
+        List<Decision> duringPreparation = new ArrayList<>();
+        // Registered after the provider, so it runs once the provider has prepared for the new rules.
+        ruleSetHolder.addListener(ruleSet -> duringPreparation.add(engine.calculateApprovedLoan(segment1PersonalCode,
+                LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA)));
+
+        ruleSetHolder.update(updatedRules());
+
+        assertEquals(List.of(Decision.approved(EXPECTED_2000, EXPECTED_PERIOD_20)), duringPreparation);
+        assertEquals(linearScan(UPDATED_SEGMENT_1_CREDIT_MODIFIER, (int) LOAN_AMOUNT_4000, LOAN_PERIOD_12),
+                engine.calculateApprovedLoan(segment1PersonalCode, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                        Countries.ESTONIA));
+    }
+
+    @Test
+    void testDecisionTableIsRebuiltForNewRules() {
+        RuleSetHolder ruleSetHolder = new RuleSetHolder();
+        DecisionEngine searchEngine = DecisionEngine.builder().ruleSetHolder(ruleSetHolder).build();
+        DecisionEngine tableEngine = DecisionEngine.builder().decisionMetrics(new DecisionMetrics(meterRegistry))
+                .ruleSetHolder(ruleSetHolder).build();
+        tableEngine.setDecisionTable(tableEngine.buildDecisionTable());
+
+        ruleSetHolder.update(updatedRules());
+
+        String[] personalCodes = {segment1PersonalCode, segment2PersonalCode, segment3PersonalCode};
+        for (String personalCode : personalCodes) {
+            for (int amount = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT; amount <= UPDATED_MAXIMUM_LOAN_AMOUNT;
+                 amount += CONCURRENT_AMOUNT_STEP) {
+                for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+                     period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+                    Object[] request = {personalCode, (long) amount, period};
+                    assertEquals(decide(searchEngine, request), decide(tableEngine, request),
+                            Arrays.toString(request));
+                }
+            }
+        }
+        // Every amount above is on the grid, so the table for the new rules answered without computing a score.
+        assertEquals(0, meterRegistry.get(DecisionMetrics.SCORE_EVALUATIONS)
+                .tag(DecisionMetrics.COUNTRY_TAG, "estonia").summary().max());
+    }
+
+    @Test
+    void testConcurrentMixedSegmentRequests() throws Exception {
+        String[] personalCodes = {debtorPersonalCode, segment1PersonalCode, segment2PersonalCode,
+                segment3PersonalCode};
+        List<Object[]> requests = new ArrayList<>();
+        for (String personalCode : personalCodes) {
+            for (int amount = DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
+                 amount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT; amount += CONCURRENT_AMOUNT_STEP) {
+                for (int period = DecisionEngineConstants.MINIMUM_LOAN_PERIOD;
+                     period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+                    requests.add(new Object[]{personalCode, (long) amount, period});
+                }
+            }
+        }
+        // Interleave the segments so that concurrently running requests belong to different applicants.
+        Collections.shuffle(requests, new Random(CONCURRENT_SHUFFLE_SEED));
+
+        Map<Integer, Decision> expected = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            expected.put(i, decide(requests.get(i)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Decision>> results = new ArrayList<>();
+            for (int round = 0; round < CONCURRENT_ROUNDS; round++) {
+                for (Object[] request : requests) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return decide(request);
+                    }));
+                }
+            }
+            start.countDown();
+
+            for (int i = 0; i < results.size(); i++) {
+                int index = i % requests.size();
+                assertEquals(expected.get(index), results.get(i).get(), Arrays.toString(requests.get(index)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Built-in rules with a lower maximum amount and a higher credit modifier for segment 1.
+     */
+    private static RuleSet updatedRules() {
+        RuleSet builtIn = RuleSet.defaults();
+        List<RuleSet.Segment> segments = new ArrayList<>(builtIn.segments());
+        segments.set(1, new RuleSet.Segment(segments.get(1).ceiling(), UPDATED_SEGMENT_1_CREDIT_MODIFIER));
+        return new RuleSet(builtIn.version() + 1, builtIn.minimumLoanAmount(), UPDATED_MAXIMUM_LOAN_AMOUNT,
+                builtIn.loanAmountStep(), builtIn.minimumLoanPeriod(), builtIn.maximumLoanPeriod(), segments,
+                builtIn.approvalBaseline(), builtIn.scoreDivisor(), builtIn.minimumAge(), builtIn.maximumAge());
+    }
+
+    private double outcomeCount(String country, DecisionMetrics.Result result) {
+        return meterRegistry.get(DecisionMetrics.OUTCOMES).tag(DecisionMetrics.COUNTRY_TAG, country)
+                .tag(DecisionMetrics.OUTCOME_TAG, result.getTag()).counter().count();
+    }
+
+    private Decision decide(Object[] request) {
+        return decide(decisionEngine, request);
+    }
+
+    private static Decision decide(DecisionEngine engine, Object[] request) {
+        return engine.calculateApprovedLoan((String) request[0], (Long) request[1], (int) request[2],
+                Countries.ESTONIA);
+    }
+
+    /**
+     * Reference implementation of the original search, which walks the amounts in steps of 100
+     * and the periods one month at a time.
+     */
+    private static Decision linearScan(int creditModifier, int requestedAmount, int requestedPeriod) {
+        if (linearScore(creditModifier, requestedAmount, requestedPeriod)
+                >= DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
+            for (int amount = requestedAmount + DecisionEngineConstants.CHANGE_AMOUNT_BY_100;
+                 amount <= DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT;
+                 amount += DecisionEngineConstants.CHANGE_AMOUNT_BY_100) {
+                if (linearScore(creditModifier, amount, requestedPeriod)
+                        < DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
+                    return Decision.approved(amount - DecisionEngineConstants.CHANGE_AMOUNT_BY_100, requestedPeriod);
+                }
+            }
+            return Decision.approved(DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT, requestedPeriod);
+        }
+
+        Decision result = linearFindAmount(creditModifier, requestedPeriod,
+                requestedAmount - DecisionEngineConstants.CHANGE_AMOUNT_BY_100);
+        for (int period = requestedPeriod + 1;
+             result == null && period <= DecisionEngineConstants.MAXIMUM_LOAN_PERIOD; period++) {
+            result = linearFindAmount(creditModifier, period, DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT);
+        }
+        return result != null ? result : Decision.rejected(DecisionOutcome.NO_VALID_LOAN);
+    }
+
+    private static Decision linearFindAmount(int creditModifier, int period, int startAmount) {
+        for (int amount = Math.min(startAmount, DecisionEngineConstants.MAXIMUM_LOAN_AMOUNT);
+             amount >= DecisionEngineConstants.MINIMUM_LOAN_AMOUNT;
+             amount -= DecisionEngineConstants.CHANGE_AMOUNT_BY_100) {
+            if (linearScore(creditModifier, amount, period) >= DecisionEngineConstants.BASELINE_FOR_LOAN_APPROVAL) {
+                return Decision.approved(amount, period);
+            }
+        }
+        return null;
+    }
+
+    private static double linearScore(int creditModifier, int amount, int period) {
+        return ((double) creditModifier / amount) * period / DecisionEngineConstants.SCORE_DIVISOR;
     }
 }
@@ -0,0 +1,153 @@
+package ee.taltech.inbankbackend.service;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the spans of decisions with an in-memory exporter and a sampler that samples every root span, so that
+ * only DecisionTracing decides what is traced.
+ */
+class DecisionTracingTest {
+
+    private static final String SEGMENT_1_PERSONAL_CODE = "50307172740";
+    private static final String DEBTOR_PERSONAL_CODE = "37605030299";
+    private static final long LOAN_AMOUNT = 4000L;
+    private static final int LOAN_PERIOD = 12;
+
+    private InMemorySpanExporter exporter;
+    private OpenTelemetrySdk openTelemetry;
+
+    @BeforeEach
+    void setUp() {
+        exporter = InMemorySpanExporter.create();
+        openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .setSampler(Sampler.alwaysOn())
+                        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                        .build())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        openTelemetry.getSdkTracerProvider().close();
+    }
+
+    @Test
+    void testTracesPhasesOfDecision() {
+        Decision decision = engine(1.0).calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD,
+                Countries.ESTONIA);
+
+        Map<String, SpanData> spans = spansByName();
+        assertEquals(Set.of(DecisionTracing.DECISION, DecisionTracing.PARSE, DecisionTracing.VERIFY,
+                DecisionTracing.CREDIT_MODIFIER, DecisionTracing.SEARCH), spans.keySet());
+        SpanData decisionSpan = spans.get(DecisionTracing.DECISION);
+        assertFalse(decisionSpan.getParentSpanContext().isValid());
+        assertEquals("estonia", decisionSpan.getAttributes().get(DecisionTracing.COUNTRY));
+        assertEquals(DecisionMetrics.outcomeTag(LOAN_AMOUNT, LOAN_PERIOD, decision),
+                decisionSpan.getAttributes().get(DecisionTracing.OUTCOME));
+        assertTrue(decisionSpan.getAttributes().get(DecisionTracing.SCORE_EVALUATIONS) > 0);
+        for (SpanData phase : spans.values()) {
+            if (phase != decisionSpan) {
+                assertEquals(decisionSpan.getSpanId(), phase.getParentSpanId(), phase.getName());
+                assertTrue(phase.getEndEpochNanos() <= decisionSpan.getEndEpochNanos(), phase.getName());
+            }
+        }
+    }
+
+    @Test
+    void testRejectedDecisionHasNoSearch() {
+        engine(1.0).calculateApprovedLoan(DEBTOR_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA);
+        engine(1.0).calculateApprovedLoan("12345678901", LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA);
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertTrue(spans.stream().noneMatch(span -> span.getName().equals(DecisionTracing.SEARCH)));
+        assertEquals(List.of("debt", "invalid_code"), spans.stream()
+                .filter(span -> span.getName().equals(DecisionTracing.DECISION))
+                .map(span -> span.getAttributes().get(DecisionTracing.OUTCOME))
+                .toList());
+        assertEquals(1, spans.stream()
+                .filter(span -> span.getName().equals(DecisionTracing.CREDIT_MODIFIER)).count());
+    }
+
+    @Test
+    void testTracesAsyncDecision() {
+        engine(1.0).calculateApprovedLoanAsync(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA)
+                .join();
+
+        Map<String, SpanData> spans = spansByName();
+        assertEquals(5, spans.size());
+        assertEquals(spans.get(DecisionTracing.DECISION).getSpanId(),
+                spans.get(DecisionTracing.SEARCH).getParentSpanId());
+    }
+
+    @Test
+    void testNothingTracedWithSamplingOff() {
+        engine(0).calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA);
+
+        assertTrue(exporter.getFinishedSpanItems().isEmpty());
+    }
+
+    @Test
+    void testDecisionIsChildOfRecordedSpan() {
+        DecisionEngine engine = engine(0);
+        Span request = openTelemetry.getTracer("test").spanBuilder("request").startSpan();
+        Scope scope = request.makeCurrent();
+        try {
+            engine.calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, null);
+        } finally {
+            scope.close();
+        }
+        request.end();
+
+        SpanData decisionSpan = spansByName().get(DecisionTracing.DECISION);
+        assertEquals(request.getSpanContext().getSpanId(), decisionSpan.getParentSpanId());
+        assertEquals(request.getSpanContext().getTraceId(), decisionSpan.getTraceId());
+        assertEquals(DecisionMetrics.UNKNOWN_COUNTRY, decisionSpan.getAttributes().get(DecisionTracing.COUNTRY));
+    }
+
+    @Test
+    void testNothingTracedUnderSpanThatIsNotRecorded() {
+        DecisionEngine engine = engine(1.0);
+        Span request = Span.wrap(SpanContext.create("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331",
+                TraceFlags.getDefault(), TraceState.getDefault()));
+        Scope scope = request.makeCurrent();
+        try {
+            engine.calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT, LOAN_PERIOD, Countries.ESTONIA);
+        } finally {
+            scope.close();
+        }
+
+        assertTrue(exporter.getFinishedSpanItems().isEmpty());
+    }
+
+    private DecisionEngine engine(double samplingProbability) {
+        return DecisionEngine.builder().decisionTracing(new DecisionTracing(openTelemetry, samplingProbability))
+                .build();
+    }
+
+    private Map<String, SpanData> spansByName() {
+        return exporter.getFinishedSpanItems().stream()
+                .collect(Collectors.toMap(SpanData::getName, Function.identity()));
+    }
+}
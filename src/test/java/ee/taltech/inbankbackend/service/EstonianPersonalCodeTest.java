@@ -0,0 +1,136 @@
+package ee.taltech.inbankbackend.service;
+
+import com.github.vladislavgoltjajev.personalcode.exception.PersonalCodeException;
+import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeParser;
+import com.github.vladislavgoltjajev.personalcode.locale.estonia.EstonianPersonalCodeValidator;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the in-house parser against the java-personal-code library on a generated corpus.
+ */
+class EstonianPersonalCodeTest {
+
+    private static final int CORPUS_SIZE = 500_000;
+    private static final long CORPUS_SEED = 20240229L;
+    private static final int[] FIRST_WEIGHTS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 1};
+    private static final int[] SECOND_WEIGHTS = {3, 4, 5, 6, 7, 8, 9, 1, 2, 3};
+
+    private final EstonianPersonalCodeValidator validator = new EstonianPersonalCodeValidator();
+    private final EstonianPersonalCodeParser parser = new EstonianPersonalCodeParser();
+
+    @Test
+    void testKnownCodes() {
+        long parsed = EstonianPersonalCode.parse("50307172740");
+
+        assertEquals(20030717, EstonianPersonalCode.dateOfBirth(parsed));
+        assertEquals(2740, EstonianPersonalCode.segment(parsed));
+        assertEquals(EstonianPersonalCode.INVALID, EstonianPersonalCode.parse("12345678901"));
+        assertEquals(EstonianPersonalCode.INVALID, EstonianPersonalCode.parse(null));
+        assertEquals(EstonianPersonalCode.INVALID, EstonianPersonalCode.parse("5030717274"));
+        assertEquals(EstonianPersonalCode.INVALID, EstonianPersonalCode.parse("503071727400"));
+    }
+
+    @Test
+    void testMatchesLibraryOnGeneratedCorpus() throws PersonalCodeException {
+        Random random = new Random(CORPUS_SEED);
+        int valid = 0;
+
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            String code = generate(random);
+            long parsed = EstonianPersonalCode.parse(code);
+            boolean expectedValid = validator.isValid(code);
+
+            assertEquals(expectedValid, parsed != EstonianPersonalCode.INVALID, code);
+            if (expectedValid) {
+                valid++;
+                LocalDate dateOfBirth = parser.getDateOfBirth(code);
+                assertEquals(dateOfBirth, CompactDate.toLocalDate(EstonianPersonalCode.dateOfBirth(parsed)), code);
+                assertEquals(Integer.parseInt(code.substring(code.length() - 4)),
+                        EstonianPersonalCode.segment(parsed), code);
+                if (!dateOfBirth.isAfter(LocalDate.now())) {
+                    assertEquals(parser.getAge(code).getYears(), CompactDate.yearsBetween(
+                            EstonianPersonalCode.dateOfBirth(parsed), CompactDate.today()), code);
+                }
+            }
+        }
+
+        // Make sure the corpus is not dominated by either outcome.
+        assertTrue(valid > CORPUS_SIZE / 10, "valid codes: " + valid);
+        assertTrue(valid < CORPUS_SIZE * 9 / 10, "valid codes: " + valid);
+    }
+
+    @Test
+    void testYearsBetweenMatchesPeriod() {
+        Random random = new Random(CORPUS_SEED);
+        LocalDate epoch = LocalDate.of(1800, 1, 1);
+
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            LocalDate from = epoch.plusDays(random.nextInt(100_000));
+            LocalDate to = from.plusDays(random.nextInt(40_000));
+
+            assertEquals(Period.between(from, to).getYears(),
+                    CompactDate.yearsBetween(compact(from), compact(to)), from + " - " + to);
+        }
+    }
+
+    @Test
+    void testTodayMatchesLocalDate() {
+        assertEquals(compact(LocalDate.now()), CompactDate.today());
+    }
+
+    /**
+     * Generates mostly well-formed codes around the edges of the format: unusual century digits,
+     * months 0 and 13, days up to 32, and about a third with a wrong check digit or a stray character.
+     */
+    private static String generate(Random random) {
+        char[] code = new char[11];
+        code[0] = (char) ('0' + random.nextInt(10));
+        int year = random.nextInt(100);
+        int month = random.nextInt(14);
+        int day = random.nextInt(33);
+        code[1] = (char) ('0' + year / 10);
+        code[2] = (char) ('0' + year % 10);
+        code[3] = (char) ('0' + month / 10);
+        code[4] = (char) ('0' + month % 10);
+        code[5] = (char) ('0' + day / 10);
+        code[6] = (char) ('0' + day % 10);
+        for (int i = 7; i < 10; i++) {
+            code[i] = (char) ('0' + random.nextInt(10));
+        }
+        code[10] = (char) ('0' + checkDigit(code));
+
+        int variant = random.nextInt(12);
+        if (variant < 3) {
+            code[10] = (char) ('0' + random.nextInt(10));
+        } else if (variant == 3) {
+            code[random.nextInt(11)] = "x /-".charAt(random.nextInt(4));
+        } else if (variant == 4) {
+            return new String(code, 0, random.nextInt(11));
+        }
+        return new String(code);
+    }
+
+    private static int checkDigit(char[] code) {
+        int firstSum = 0;
+        int secondSum = 0;
+        for (int i = 0; i < 10; i++) {
+            firstSum += (code[i] - '0') * FIRST_WEIGHTS[i];
+            secondSum += (code[i] - '0') * SECOND_WEIGHTS[i];
+        }
+        int remainder = firstSum % 11;
+        if (remainder == 10) {
+            remainder = secondSum % 11;
+        }
+        return remainder == 10 ? 0 : remainder;
+    }
+
+    private static int compact(LocalDate date) {
+        return CompactDate.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+}
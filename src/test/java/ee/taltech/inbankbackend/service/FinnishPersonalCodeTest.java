@@ -0,0 +1,94 @@
+package ee.taltech.inbankbackend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the Finnish personal identity code parser on known codes and on a generated corpus, against a
+ * straightforward check built on java.time.
+ */
+class FinnishPersonalCodeTest {
+
+    private static final int CORPUS_SIZE = 200_000;
+    private static final long CORPUS_SEED = 20240229L;
+    private static final String CONTROL_CHARACTERS = "0123456789ABCDEFHJKLMNPRSTUVWXY";
+    private static final String CENTURY_SIGNS = "+-YXWVUABCDEF";
+
+    @Test
+    void testKnownCodes() {
+        long parsed = FinnishPersonalCode.parse("131052-308T");
+        assertNotEquals(FinnishPersonalCode.INVALID, parsed);
+        assertEquals(19521013, FinnishPersonalCode.dateOfBirth(parsed));
+        assertEquals(2308, FinnishPersonalCode.segment(parsed));
+
+        assertEquals(20050101, FinnishPersonalCode.dateOfBirth(FinnishPersonalCode.parse("010105A500V")));
+        assertEquals(18990101, FinnishPersonalCode.dateOfBirth(FinnishPersonalCode.parse("010199+5015")));
+        assertEquals(20000229, FinnishPersonalCode.dateOfBirth(FinnishPersonalCode.parse("290200A1239")));
+    }
+
+    @Test
+    void testInvalidCodes() {
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse(null));
+        // Wrong control character, wrong length, unknown century sign and an Estonian code.
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("131052-308U"));
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("131052-308"));
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("131052Z308T"));
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("50307172740"));
+        // February 29 of a year that is not a leap year, and a temporary identity.
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("290201A123J"));
+        assertEquals(FinnishPersonalCode.INVALID, FinnishPersonalCode.parse("150689-900H"));
+    }
+
+    @Test
+    void testGeneratedCorpus() {
+        Random random = new Random(CORPUS_SEED);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            String code = generate(random);
+            LocalDate expected = expectedDateOfBirth(code);
+            long parsed = FinnishPersonalCode.parse(code);
+
+            assertEquals(expected != null, parsed != FinnishPersonalCode.INVALID, code);
+            if (expected != null) {
+                assertEquals(expected, CompactDate.toLocalDate(FinnishPersonalCode.dateOfBirth(parsed)), code);
+                assertEquals(Integer.parseInt(code.substring(4, 6) + code.substring(7, 10)) % 10000,
+                        FinnishPersonalCode.segment(parsed), code);
+            }
+        }
+    }
+
+    /**
+     * Generates a code with a correct control character most of the time, and dates that are sometimes invalid.
+     */
+    private static String generate(Random random) {
+        String digits = String.format("%02d%02d%02d", 1 + random.nextInt(31), 1 + random.nextInt(13),
+                random.nextInt(100));
+        String individualNumber = String.format("%03d", random.nextInt(1000));
+        char sign = CENTURY_SIGNS.charAt(random.nextInt(CENTURY_SIGNS.length()));
+        char control = random.nextInt(10) == 0
+                ? CONTROL_CHARACTERS.charAt(random.nextInt(CONTROL_CHARACTERS.length()))
+                : CONTROL_CHARACTERS.charAt(Integer.parseInt(digits + individualNumber) % 31);
+        return digits + sign + individualNumber + control;
+    }
+
+    private static LocalDate expectedDateOfBirth(String code) {
+        int number = Integer.parseInt(code.substring(0, 6) + code.substring(7, 10));
+        int individualNumber = number % 1000;
+        if (code.charAt(10) != CONTROL_CHARACTERS.charAt(number % 31)
+                || individualNumber < 2 || individualNumber > 899) {
+            return null;
+        }
+        char sign = code.charAt(6);
+        int century = sign == '+' ? 1800 : "-YXWVU".indexOf(sign) >= 0 ? 1900 : 2000;
+        try {
+            return LocalDate.of(century + Integer.parseInt(code.substring(4, 6)),
+                    Integer.parseInt(code.substring(2, 4)), Integer.parseInt(code.substring(0, 2)));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ee.taltech.inbankbackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonalCodeCacheTest {
+
+    private static final String SEGMENT_1_PERSONAL_CODE = "50307172740";
+    private static final String SEGMENT_3_PERSONAL_CODE = "35006069515";
+    private static final int SEGMENT_2740 = 2740;
+    private static final int DATE_OF_BIRTH = 20030717;
+    private static final String FINNISH_PERSONAL_CODE = "131052-308T";
+    private static final int SEGMENT_2308 = 2308;
+    private static final int FINNISH_DATE_OF_BIRTH = 19521013;
+    private static final int REPEATS = 5;
+
+    @Test
+    void testParsesValidCode() {
+        ParsedPersonalCode parsed = new PersonalCodeCache().get(SEGMENT_1_PERSONAL_CODE);
+
+        assertTrue(parsed.isValid());
+        assertEquals(DATE_OF_BIRTH, parsed.getDateOfBirth());
+        assertEquals(SEGMENT_2740, parsed.getSegment());
+    }
+
+    @Test
+    void testInvalidCodes() {
+        PersonalCodeCache cache = new PersonalCodeCache();
+
+        assertSame(ParsedPersonalCode.INVALID, cache.get(null));
+        assertSame(ParsedPersonalCode.INVALID, cache.get("12345678901"));
+        assertSame(ParsedPersonalCode.INVALID, cache.get("1234"));
+    }
+
+    @Test
+    void testInvalidCodesAreNotCached() {
+        PersonalCodeCache cache = new PersonalCodeCache();
+
+        for (int i = 0; i < REPEATS; i++) {
+            assertSame(ParsedPersonalCode.INVALID, cache.get("1234567890" + i));
+            assertSame(ParsedPersonalCode.INVALID, cache.get(SEGMENT_1_PERSONAL_CODE + "0".repeat(i + 1)));
+        }
+        assertSame(ParsedPersonalCode.INVALID, cache.get(SEGMENT_1_PERSONAL_CODE, Countries.FINLAND));
+        cache.cleanUp();
+
+        assertEquals(0, cache.size());
+        cache.get(SEGMENT_1_PERSONAL_CODE);
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testCodesAreParsedInFormatOfCountry() {
+        PersonalCodeCache cache = new PersonalCodeCache();
+
+        assertSame(ParsedPersonalCode.INVALID, cache.get(SEGMENT_1_PERSONAL_CODE, Countries.FINLAND));
+        assertTrue(cache.get(SEGMENT_1_PERSONAL_CODE, Countries.LITHUANIA).isValid());
+        ParsedPersonalCode finnish = cache.get(FINNISH_PERSONAL_CODE, Countries.FINLAND);
+        assertTrue(finnish.isValid());
+        assertEquals(FINNISH_DATE_OF_BIRTH, finnish.getDateOfBirth());
+        assertEquals(SEGMENT_2308, finnish.getSegment());
+        assertSame(ParsedPersonalCode.INVALID, cache.get(FINNISH_PERSONAL_CODE, Countries.ESTONIA));
+    }
+
+    @Test
+    void testRepeatApplicantHitsCache() {
+        PersonalCodeCache cache = new PersonalCodeCache();
+
+        for (int i = 0; i < REPEATS; i++) {
+            cache.get(SEGMENT_1_PERSONAL_CODE);
+        }
+
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(REPEATS - 1, cache.stats().hitCount());
+    }
+
+    @Test
+    void testEvictsBeyondMaximumSize() {
+        PersonalCodeCache cache = new PersonalCodeCache(1, Duration.ofMinutes(1), new DecisionMetrics());
+
+        cache.get(SEGMENT_1_PERSONAL_CODE);
+        cache.get(SEGMENT_3_PERSONAL_CODE);
+        cache.cleanUp();
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    void testStatisticsAreReportedPerFormat() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PersonalCodeCache cache = new PersonalCodeCache(PersonalCodeCache.DEFAULT_MAXIMUM_SIZE,
+                PersonalCodeCache.DEFAULT_TIME_TO_LIVE, new DecisionMetrics(registry));
+
+        for (int i = 0; i < REPEATS; i++) {
+            cache.get(SEGMENT_1_PERSONAL_CODE, Countries.ESTONIA);
+        }
+        cache.get(FINNISH_PERSONAL_CODE, Countries.FINLAND);
+
+        assertEquals(REPEATS - 1, registry.get("cache.gets").tag("cache", DecisionMetrics.PERSONAL_CODE_CACHE)
+                .tag(DecisionMetrics.FORMAT_TAG, "estonian").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag("cache", DecisionMetrics.PERSONAL_CODE_CACHE)
+                .tag(DecisionMetrics.FORMAT_TAG, "estonian").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag(DecisionMetrics.FORMAT_TAG, "finnish").tag("result", "miss")
+                .functionCounter().count());
+        assertEquals(1, registry.get("cache.size").tag(DecisionMetrics.FORMAT_TAG, "finnish").gauge().value());
+    }
+}
@@ -0,0 +1,182 @@
+package ee.taltech.inbankbackend.service;
+
+import ee.taltech.inbankbackend.config.RuleSet;
+import ee.taltech.inbankbackend.config.RuleSetHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that decisions are compared with a candidate rule set off the request thread, and that shadow work is
+ * shed instead of queued without bound.
+ */
+class ShadowEvaluatorTest {
+
+    private static final String SEGMENT_1_PERSONAL_CODE = "50307172740";
+    private static final String SEGMENT_2_PERSONAL_CODE = "38411266610";
+    private static final String SEGMENT_3_PERSONAL_CODE = "35006069515";
+    private static final String DEBTOR_PERSONAL_CODE = "37605030299";
+    private static final long LOAN_AMOUNT_4000 = 4000L;
+    private static final long LOAN_AMOUNT_2000 = 2000L;
+    private static final int LOAN_PERIOD_12 = 12;
+    private static final int CANDIDATE_MAXIMUM_LOAN_AMOUNT = 8000;
+    private static final int CANDIDATE_SEGMENT_1_CREDIT_MODIFIER = 200;
+    private static final int QUEUE_CAPACITY = 100;
+    private static final int HISTORY_SIZE = 10;
+    private static final long WAIT_MILLIS = 10_000;
+    private static final long POLL_MILLIS = 10;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DecisionMetrics decisionMetrics;
+    private final List<ShadowEvaluator> evaluators = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        decisionMetrics = new DecisionMetrics(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (ShadowEvaluator evaluator : evaluators) {
+            evaluator.close();
+        }
+    }
+
+    @Test
+    void testDifferencesAreRecordedAndCounted() throws Exception {
+        RuleSetHolder rules = new RuleSetHolder();
+        ShadowEvaluator evaluator = evaluator(new SegmentCreditModifierProvider(rules), 1, QUEUE_CAPACITY,
+                HISTORY_SIZE);
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(decisionMetrics).ruleSetHolder(rules)
+                .shadowEvaluator(evaluator).build();
+
+        Decision segment1 = engine.calculateApprovedLoan(SEGMENT_1_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+        Decision segment3 = engine.calculateApprovedLoan(SEGMENT_3_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                Countries.ESTONIA);
+        engine.calculateApprovedLoan(SEGMENT_2_PERSONAL_CODE, LOAN_AMOUNT_2000, LOAN_PERIOD_12, Countries.ESTONIA);
+        engine.calculateApprovedLoanAsync(DEBTOR_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12, Countries.ESTONIA)
+                .join();
+        awaitComparisons(4);
+
+        // The primary decisions still follow the rules in force.
+        assertEquals(Decision.approved(10000, LOAN_PERIOD_12), segment3);
+        assertEquals(2, comparisons(ShadowDifference.Kind.MATCH));
+        assertEquals(1, comparisons(ShadowDifference.Kind.AMOUNT));
+        assertEquals(1, comparisons(ShadowDifference.Kind.AMOUNT_AND_PERIOD));
+
+        List<ShadowDifference> differences = evaluator.recentDifferences();
+        assertEquals(2, differences.size());
+        ShadowDifference first = differences.get(0);
+        // Only the digits the segment is chosen by are kept.
+        assertEquals("*******2740", first.getPersonalCode());
+        assertEquals(segment1, first.getPrimary());
+        assertEquals(LOAN_PERIOD_12, first.getCandidate().getLoanPeriod());
+        assertEquals(ShadowDifference.Kind.AMOUNT_AND_PERIOD, first.getKind());
+        assertEquals(Decision.approved(CANDIDATE_MAXIMUM_LOAN_AMOUNT, LOAN_PERIOD_12),
+                differences.get(1).getCandidate());
+    }
+
+    @Test
+    void testOnlyTheLatestDifferencesAreKept() throws Exception {
+        RuleSetHolder rules = new RuleSetHolder();
+        ShadowEvaluator evaluator = evaluator(new SegmentCreditModifierProvider(rules), 1, QUEUE_CAPACITY, 2);
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(decisionMetrics).ruleSetHolder(rules)
+                .shadowEvaluator(evaluator).build();
+
+        int[] periods = {12, 13, 14};
+        for (int period : periods) {
+            engine.calculateApprovedLoan(SEGMENT_3_PERSONAL_CODE, LOAN_AMOUNT_4000, period, Countries.ESTONIA);
+        }
+        awaitComparisons(periods.length);
+
+        List<ShadowDifference> differences = evaluator.recentDifferences();
+        assertEquals(2, differences.size());
+        assertEquals(13, differences.get(0).getLoanPeriod());
+        assertEquals(14, differences.get(1).getLoanPeriod());
+    }
+
+    @Test
+    void testFullQueueShedsShadowWork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Only the candidate lookups, made on the shadow thread, are held back.
+        CreditModifierProvider provider = (personalCode, segment) -> Thread.currentThread().getName()
+                .equals("decision-shadow")
+                ? CompletableFuture.runAsync(() -> awaitQuietly(release)).thenApply(ignored -> 1000)
+                : CompletableFuture.completedFuture(1000);
+        ShadowEvaluator evaluator = evaluator(provider, 1, 1, HISTORY_SIZE);
+        DecisionEngine engine = DecisionEngine.builder().decisionMetrics(decisionMetrics)
+                .creditModifierProvider(provider).shadowEvaluator(evaluator).build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(engine.calculateApprovedLoan(SEGMENT_3_PERSONAL_CODE, LOAN_AMOUNT_4000, LOAN_PERIOD_12,
+                    Countries.ESTONIA).isApproved());
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        release.countDown();
+
+        // One request is being compared and one waits in the queue; the others are shed at once.
+        awaitComparisons(2);
+        assertEquals(3, meterRegistry.get(DecisionMetrics.SHADOW_SHED).counter().count());
+        assertTrue(elapsedMillis < WAIT_MILLIS, "Primary decisions waited for shadow work");
+    }
+
+    private ShadowEvaluator evaluator(CreditModifierProvider provider, int threads, int queueCapacity,
+                                      int historySize) throws Exception {
+        RuleSetHolder candidate = new RuleSetHolder();
+        candidate.update(candidateRules());
+        ShadowEvaluator evaluator = new ShadowEvaluator(candidate, new PersonalCodeCache(), provider,
+                decisionMetrics, threads, queueCapacity, historySize);
+        evaluators.add(evaluator);
+        return evaluator;
+    }
+
+    /**
+     * Built-in rules with a lower maximum amount and a higher credit modifier for segment 1.
+     */
+    private static RuleSet candidateRules() {
+        RuleSet builtIn = RuleSet.defaults();
+        List<RuleSet.Segment> segments = new ArrayList<>(builtIn.segments());
+        segments.set(1, new RuleSet.Segment(segments.get(1).ceiling(), CANDIDATE_SEGMENT_1_CREDIT_MODIFIER));
+        return new RuleSet(builtIn.version() + 1, builtIn.minimumLoanAmount(), CANDIDATE_MAXIMUM_LOAN_AMOUNT,
+                builtIn.loanAmountStep(), builtIn.minimumLoanPeriod(), builtIn.maximumLoanPeriod(), segments,
+                builtIn.approvalBaseline(), builtIn.scoreDivisor(), builtIn.minimumAge(), builtIn.maximumAge());
+    }
+
+    private double comparisons(ShadowDifference.Kind kind) {
+        return meterRegistry.get(DecisionMetrics.SHADOW_COMPARISONS)
+                .tag(DecisionMetrics.DIFFERENCE_TAG, kind.getTag()).counter().count();
+    }
+
+    private void awaitComparisons(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (totalComparisons() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        assertEquals(expected, totalComparisons());
+    }
+
+    private double totalComparisons() {
+        return meterRegistry.get(DecisionMetrics.SHADOW_COMPARISONS).counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}